@@ -2,10 +2,10 @@ package de.tum.i13.ECS;
 
 import de.tum.i13.shared.DataMap;
 import de.tum.i13.shared.Metadata;
+import de.tum.i13.shared.Token;
 import de.tum.i13.shared.Utility;
 
 import java.io.*;
-import java.math.BigInteger;
 import java.net.BindException;
 import java.net.ServerSocket;
 import java.net.Socket;
@@ -241,9 +241,7 @@ public class ECS implements ECSInterface, Runnable {
                 DataMap successorValue = successor.getValue();
                 // Send the lock request to the successor then wait for the ack
                 // from the new server and then release the lock on the successor
-                BigInteger succStart = new BigInteger(successorValue.getEndIndex(), 16);
-                succStart = succStart.add(BigInteger.ONE);
-                String successorStart = succStart.toString(16);
+                String successorStart = Token.fromHex(successorValue.getEndIndex()).next().toHex();
 
                 if (!successorKey.equals(newHash)) {
                     if (remoteIn != null) {
@@ -2,18 +2,18 @@ package de.tum.i13.ECS;
 
 import de.tum.i13.shared.*;
 
-import java.math.BigInteger;
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Map;
 import java.util.TreeMap;
 
-import static de.tum.i13.shared.Utility.byteToHex;
-
 /**
+ * This class is the index of the ECS, the servers are sorted by their Token.
+ *
  * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
  */
 public class Index {
-    private TreeMap<String, DataMap> map = new TreeMap<>(new ComparatorMetadata());
+    private TreeMap<Token, DataMap> map = new TreeMap<>();
 
     /**
      * This function returns the successor of a server in the ring
@@ -22,9 +22,14 @@ public class Index {
      * @return successor of the server passed as parameter
      */
     synchronized Map.Entry<String, DataMap> getSuccessor(String hash) {
-        Map.Entry<String, DataMap> successor = map.higherEntry(hash);
+        Map.Entry<Token, DataMap> successor = successorEntry(Token.fromHex(hash));
+        return successor == null ? null : new AbstractMap.SimpleImmutableEntry<>(successor.getKey().toHex(), successor.getValue());
+    }
+
+    private Map.Entry<Token, DataMap> successorEntry(Token hash) {
+        Map.Entry<Token, DataMap> successor = map.higherEntry(hash);
         if (successor == null) {
-            successor = map.ceilingEntry(Constants.HEX_START_INDEX);
+            successor = map.firstEntry();
         }
         return successor;
     }
@@ -37,7 +42,7 @@ public class Index {
      */
     synchronized ArrayList<Pair<String, Pair<String, Integer>>> getServers() {
         ArrayList<Pair<String, Pair<String, Integer>>> list = new ArrayList<>();
-        map.forEach((h, dm) -> list.add(new Pair<>(h, new Pair<String, Integer>(dm.getIp(), dm.getIntraPort()))));
+        map.forEach((h, dm) -> list.add(new Pair<>(h.toHex(), new Pair<String, Integer>(dm.getIp(), dm.getIntraPort()))));
         return list;
     }
 
@@ -50,7 +55,7 @@ public class Index {
      */
     synchronized ArrayList<Pair<String, Pair<String, Integer>>> getServersPing() {
         ArrayList<Pair<String, Pair<String, Integer>>> list = new ArrayList<>();
-        map.forEach((h, dm) -> list.add(new Pair<>(h, new Pair<String, Integer>(dm.getIp(), dm.getPingPort()))));
+        map.forEach((h, dm) -> list.add(new Pair<>(h.toHex(), new Pair<String, Integer>(dm.getIp(), dm.getPingPort()))));
         return list;
     }
 
@@ -67,30 +72,23 @@ public class Index {
      * @return true if we add the server false otherwise
      */
     public synchronized boolean addServer(String hashNewServer, String ip, int intraPort, int port, int pingPort) {
+        Token token = Token.fromHex(hashNewServer);
+        String nextHex = token.next().toHex();
 
         if (map.isEmpty()) {
-            BigInteger v = new BigInteger(hashNewServer, 16);
-            v = v.add(BigInteger.ONE);
-            String start = byteToHex(v.toByteArray());
-
-            map.put(hashNewServer, new DataMap(ip, port, start, hashNewServer, intraPort, pingPort));
+            map.put(token, new DataMap(ip, port, nextHex, hashNewServer, intraPort, pingPort));
             return true;
         } else {
-            Map.Entry<String, DataMap> successor = getSuccessor(hashNewServer);
+            Map.Entry<Token, DataMap> successor = successorEntry(token);
 
             // Get start value
             DataMap successorDataMap = successor.getValue();
             String newServerStartIndex = successorDataMap.getStartIndex();
 
-            BigInteger value = new BigInteger(hashNewServer, 16);
-            value = value.add(BigInteger.ONE);
-            String nextHex = byteToHex(value.toByteArray());
-
-
             // Update the successor
-            map.get(successor.getKey()).setStartIndex(nextHex);
+            successorDataMap.setStartIndex(nextHex);
             // Add the new server
-            map.putIfAbsent(hashNewServer, new DataMap(ip, port, newServerStartIndex, hashNewServer, intraPort, pingPort));
+            map.putIfAbsent(token, new DataMap(ip, port, newServerStartIndex, hashNewServer, intraPort, pingPort));
             return true;
         }
     }
@@ -111,7 +109,7 @@ public class Index {
      * @return true or false
      */
     public boolean contains(String hash) {
-        return map.containsKey(hash);
+        return map.containsKey(Token.fromHex(hash));
     }
 
     /**
@@ -122,16 +120,17 @@ public class Index {
      * @return Datamap of the server that we removed
      */
     synchronized DataMap removeServer(String oldHash) {
-        DataMap oldServer = map.get(oldHash);
-        Map.Entry<String, DataMap> successor = map.higherEntry(oldHash);
+        Token oldToken = Token.fromHex(oldHash);
+        DataMap oldServer = map.get(oldToken);
+        Map.Entry<Token, DataMap> successor = map.higherEntry(oldToken);
         if (successor != null) {
             successor.getValue().setStartIndex(oldServer.getStartIndex());
         } else {
             successor = map.firstEntry();
-            if (!successor.getKey().equals(oldHash))
+            if (!successor.getKey().equals(oldToken))
                 successor.getValue().setStartIndex(oldServer.getStartIndex());
         }
-        return map.remove(oldHash);
+        return map.remove(oldToken);
     }
 
 
@@ -1,14 +1,19 @@
 package de.tum.i13.server.Cache;
 
+import de.tum.i13.server.CacheDisplacement.ARC;
+import de.tum.i13.server.CacheDisplacement.CLOCK;
 import de.tum.i13.server.CacheDisplacement.CacheDisplacement;
 import de.tum.i13.server.CacheDisplacement.FIFO;
 import de.tum.i13.server.CacheDisplacement.LFU;
 import de.tum.i13.server.CacheDisplacement.LRU;
+import de.tum.i13.server.CacheDisplacement.TinyLFU;
 import de.tum.i13.shared.Constants;
 import de.tum.i13.shared.InvalidPasswordException;
 import de.tum.i13.shared.Pair;
 
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 import java.util.logging.Logger;
 
 /**
@@ -16,10 +21,16 @@ import java.util.logging.Logger;
  */
 public class Cache implements CacheInterface {
     private int maxSize;
+    // Maximum number of bytes of the keys, values and passwords in the cache, 0 if there is no limit
+    private long maxBytes;
     private ConcurrentHashMap<String, Pair<String, String>> storage;
     private String displacementStrategy;
     private int currentSize;
+    private long currentBytes;
+    // Number of puts, removes and invalidations, warm drops a value loaded while one of them happened
+    private long writes;
     private CacheDisplacement displacement;
+    private final CacheStatistics statistics;
     private Logger logger;
 
     /**
@@ -29,24 +40,50 @@ public class Cache implements CacheInterface {
      * @throws NullPointerException
      */
     public Cache(int maxSize, String displacementStrategy, Logger logger) throws IllegalArgumentException, NullPointerException {
-        if (maxSize <= 0) {
+        this(maxSize, 0, displacementStrategy, logger);
+    }
+
+    /**
+     * @param maxSize              maximum number of pairs that we want to store in the cache
+     * @param maxBytes             maximum number of bytes of the pairs (key, value and password)
+     *                             that we want to store in the cache, 0 if there is no limit
+     * @param displacementStrategy cache replacement policy
+     * @throws IllegalArgumentException
+     * @throws NullPointerException
+     */
+    public Cache(int maxSize, long maxBytes, String displacementStrategy, Logger logger) throws IllegalArgumentException, NullPointerException {
+        if (maxSize <= 0 || maxBytes < 0) {
             throw new IllegalArgumentException();
         }
         if (displacementStrategy == null) {
             throw new NullPointerException();
         }
-        if (!(displacementStrategy.equals(Constants.LFU) || displacementStrategy.equals(Constants.LRU) || displacementStrategy.equals(Constants.FIFO))) {
+        if (!(displacementStrategy.equals(Constants.LFU) || displacementStrategy.equals(Constants.LFU_AGING)
+                || displacementStrategy.equals(Constants.LRU) || displacementStrategy.equals(Constants.FIFO)
+                || displacementStrategy.equals(Constants.CLOCK) || displacementStrategy.equals(Constants.TINYLFU)
+                || displacementStrategy.equals(Constants.ARC))) {
             throw new IllegalArgumentException();
         }
         this.logger = logger;
+        this.statistics = new CacheStatistics(displacementStrategy);
         this.maxSize = maxSize;
+        this.maxBytes = maxBytes;
         this.displacementStrategy = displacementStrategy;
         this.currentSize = 0;
+        this.currentBytes = 0;
         this.storage = new ConcurrentHashMap<>(maxSize);
         if (displacementStrategy.equals(Constants.LFU))
             displacement = new LFU(maxSize);
+        else if (displacementStrategy.equals(Constants.LFU_AGING))
+            displacement = new LFU(maxSize, true);
         else if (displacementStrategy.equals(Constants.LRU))
             displacement = new LRU(maxSize);
+        else if (displacementStrategy.equals(Constants.CLOCK))
+            displacement = new CLOCK(maxSize);
+        else if (displacementStrategy.equals(Constants.TINYLFU))
+            displacement = new TinyLFU(maxSize);
+        else if (displacementStrategy.equals(Constants.ARC))
+            displacement = new ARC(maxSize);
         else displacement = new FIFO(maxSize);
     }
 
@@ -64,6 +101,7 @@ public class Cache implements CacheInterface {
      */
     public synchronized String put(String key, String value, Object... p) throws InvalidPasswordException {
         String retValue = key;
+        writes++;
 
         try {
             Pair<String, String> obj = storage.get(key);
@@ -96,14 +134,21 @@ public class Cache implements CacheInterface {
             return key;
         }
 
+        // A pair bigger than the whole cache is never stored, we only drop the old value
+        if (maxBytes > 0 && weight(key, value, p.length == 0 ? null : (String) p[0]) > maxBytes) {
+            this.remove(key, p);
+            return null;
+        }
+
         // We check if exists a pair with key in the cache. If it does not exists and the
         // cache is full we need to remove an element from the cache to add the new pair.
         if (this.currentSize == this.maxSize && !storage.containsKey(key)) {
             String toRemove = displacement.put(key);
 
             try {
-                storage.remove(toRemove);
+                discard(toRemove);
                 this.currentSize--;
+                statistics.recordEviction();
             } catch (NullPointerException | IllegalArgumentException e) {
                 logger.warning("Parameter key not valid\n");
                 return key;
@@ -130,14 +175,25 @@ public class Cache implements CacheInterface {
                     if (p.length == 0)
                         throw new InvalidPasswordException();
                     else if (p[0].equals(obj.getSecond()))
-                        storage.put(key, toAdd);
+                        store(key, toAdd);
                     else
                         throw new InvalidPasswordException();
                 } else {
-                    storage.put(key, toAdd);
+                    store(key, toAdd);
                 }
-            } else if (storage.put(key, toAdd) == null) {
+            } else if (store(key, toAdd) == null) {
                 this.currentSize++;
+                statistics.recordInsertion();
+            }
+            // The policy chooses the pairs that we remove to respect the limit of bytes,
+            // the new pair is the last one that it would choose
+            while (maxBytes > 0 && currentBytes > maxBytes) {
+                String toRemove = displacement.evict();
+                if (toRemove == null)
+                    break;
+                discard(toRemove);
+                this.currentSize--;
+                statistics.recordEviction();
             }
             retValue = null;
         } catch (InvalidPasswordException e) {
@@ -157,13 +213,111 @@ public class Cache implements CacheInterface {
     }
 
 
+    @Override
+    public synchronized String update(String key, String value, Object... p) throws InvalidPasswordException {
+        if (key == null || !storage.containsKey(key))
+            return null;
+        return put(key, value, p);
+    }
+
+    @Override
+    public synchronized void invalidate(String key) {
+        writes++;
+        if (key != null && discard(key) != null) {
+            displacement.remove(key);
+            this.currentSize--;
+        }
+    }
+
+    @Override
+    public List<String> hotKeys() {
+        return displacement.hotKeys();
+    }
+
+    @Override
+    public boolean warm(String key, Function<String, String> loader) {
+        long start;
+        synchronized (this) {
+            if (key == null || storage.containsKey(key) || currentSize == maxSize)
+                return false;
+            start = writes;
+        }
+        // We read the disk without the lock, the other operations on the cache don't wait for the load
+        String value = loader.apply(key);
+        if (value == null)
+            return false;
+        synchronized (this) {
+            // A write in the meantime may have changed the value on disk after we read it
+            if (writes != start || storage.containsKey(key) || currentSize == maxSize)
+                return false;
+            try {
+                return put(key, value) == null;
+            } catch (InvalidPasswordException e) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * This function adds the pair to the storage and updates the number of bytes in the cache
+     *
+     * @return the pair previously associated with the key, null if there was no pair
+     */
+    private Pair<String, String> store(String key, Pair<String, String> pair) {
+        Pair<String, String> old = storage.put(key, pair);
+        currentBytes += weight(key, pair.getFirst(), pair.getSecond());
+        if (old != null)
+            currentBytes -= weight(key, old.getFirst(), old.getSecond());
+        return old;
+    }
+
+    /**
+     * This function removes the pair from the storage and updates the number of bytes in the cache
+     *
+     * @return the removed pair, null if there was no pair
+     */
+    private Pair<String, String> discard(String key) {
+        Pair<String, String> old = storage.remove(key);
+        if (old != null)
+            currentBytes -= weight(key, old.getFirst(), old.getSecond());
+        return old;
+    }
+
+    /**
+     * This function returns the number of bytes of a pair. The clients send ISO-8859-1 strings,
+     * so every character is a byte (also in memory, with the compact strings of Java).
+     */
+    private static long weight(String key, String value, String password) {
+        return key.length() + (value == null ? 0 : value.length()) + (password == null ? 0 : password.length());
+    }
+
+    /**
+     * @return the number of pairs in the cache
+     */
+    public synchronized int getCurrentSize() {
+        return currentSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return the number of bytes of the keys, values and passwords in the cache
+     */
+    public synchronized long getCurrentBytes() {
+        return currentBytes;
+    }
+
+    @Override
+    public CacheStatistics getStatistics() {
+        return statistics;
+    }
+
     private void updateCache(Pair<String, String> get, String key) {
         if (get != null) {
-            if (displacementStrategy.equals(Constants.LRU)) {
-                ((LRU) displacement).access(key);
-            } else if (displacementStrategy.equals(Constants.LFU)) {
-                ((LFU) displacement).access(key);
-            }
+            displacement.access(key);
+            statistics.recordHit();
         }
     }
 
@@ -179,6 +333,8 @@ public class Cache implements CacheInterface {
         Pair<String, String> get = null;
         try {
             get = storage.get(key);
+            if (get == null)
+                statistics.recordMiss();
 
             if (get.getSecond() == null) {
                 updateCache(get, key);
@@ -194,6 +350,7 @@ public class Cache implements CacheInterface {
             }
 
         } catch (InvalidPasswordException e) {
+            statistics.recordPasswordRejection();
             throw new InvalidPasswordException();
         } catch (NullPointerException | IllegalArgumentException e) {
             logger.warning("Parameter key not valid\n");
@@ -216,18 +373,19 @@ public class Cache implements CacheInterface {
      */
     public synchronized String remove(String key, Object... p) throws InvalidPasswordException {
         String removed = null;
+        writes++;
         try {
             Pair<String, String> toBeRemoved = storage.get(key);
             if (toBeRemoved != null) {
                 if (toBeRemoved.getSecond() == null) {
-                    removed = storage.remove(key).getFirst();
+                    removed = discard(key).getFirst();
                     displacement.remove(key);
                     this.currentSize--;
                 } else {
                     if (p.length == 0)
                         throw new InvalidPasswordException();
                     if (toBeRemoved.getSecond().equals(p[0])) {
-                        removed = storage.remove(key).getFirst();
+                        removed = discard(key).getFirst();
                         displacement.remove(key);
                         this.currentSize--;
                     } else
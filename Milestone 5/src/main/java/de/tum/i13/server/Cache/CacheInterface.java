@@ -1,7 +1,11 @@
 package de.tum.i13.server.Cache;
 
+import de.tum.i13.shared.Constants;
 import de.tum.i13.shared.InvalidPasswordException;
 
+import java.util.List;
+import java.util.function.Function;
+
 /**
  * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
  */
@@ -37,4 +41,75 @@ public interface CacheInterface {
      * null if the key is not present in the concurrentHashMap
      */
     String remove(String key, Object... p) throws InvalidPasswordException;
+
+    /**
+     * This function updates the pair <key,value> only if the key is already in the cache.
+     *
+     * @param key   the key that we want to update
+     * @param value the new value
+     * @return null in case of successfull update or if the key is not in the cache, key otherwise
+     */
+    String update(String key, String value, Object... p) throws InvalidPasswordException;
+
+    /**
+     * This function removes the key from the cache without checking the password,
+     * we use it after the key was written on disk.
+     *
+     * @param key the key that we want to remove
+     */
+    void invalidate(String key);
+
+    /**
+     * This function applies to the cache a write that we already did on disk:
+     * with THROUGH we add the pair to the cache, with AROUND we update the pair only if the key
+     * is already in the cache (so a bulk write does not remove the hot keys) and with INVALIDATE
+     * we remove the key, the next get reads it from disk.
+     *
+     * @param policy the write policy, one of the WRITE_ constants
+     * @return null in case of successfull write, key otherwise
+     */
+    default String write(String policy, String key, String value, Object... p) throws InvalidPasswordException {
+        if (Constants.WRITE_AROUND.equals(policy))
+            return update(key, value, p);
+        if (Constants.WRITE_INVALIDATE.equals(policy)) {
+            invalidate(key);
+            return null;
+        }
+        return put(key, value, p);
+    }
+
+    /**
+     * @return the policy if it is a valid write policy
+     * @throws IllegalArgumentException if the policy is not valid
+     */
+    static String checkWritePolicy(String policy) {
+        if (!(Constants.WRITE_THROUGH.equals(policy) || Constants.WRITE_AROUND.equals(policy)
+                || Constants.WRITE_INVALIDATE.equals(policy)))
+            throw new IllegalArgumentException("Unknown cache write policy " + policy);
+        return policy;
+    }
+
+    /**
+     * This function returns the keys of the cache from the most to the least important
+     * for the displacement policy, we save them to warm up the cache after a restart.
+     *
+     * @return the keys of the cache
+     */
+    List<String> hotKeys();
+
+    /**
+     * This function adds a pair read by the loader, only if the key is not in the cache and the
+     * cache is not full. The loader reads the disk without the lock of the cache, if a put, remove or
+     * invalidation happens during the load we don't add the pair because it may be stale.
+     *
+     * @param key    the key that we want to load
+     * @param loader returns the value of the key, null if we can't load it
+     * @return true if we added the pair
+     */
+    boolean warm(String key, Function<String, String> loader);
+
+    /**
+     * @return the counters of the hits, misses, evictions and loads of the cache
+     */
+    CacheStatistics getStatistics();
 }
@@ -0,0 +1,92 @@
+package de.tum.i13.server.Cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * This class saves the keys of the cache in the data directory and loads them after a restart.
+ * We save only the keys, from the most to the least important for the displacement policy:
+ * the values (and the passwords) stay on disk and we read them again when we warm up the cache.
+ * The file is written in a temporary file and then renamed, so after a crash we find the old
+ * snapshot or the new one.
+ *
+ * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
+ */
+public class CacheSnapshot {
+    static final String NAME = "CACHE_SNAPSHOT";
+
+    private CacheSnapshot() {
+    }
+
+    /**
+     * This function writes the keys of the cache in the snapshot
+     *
+     * @param path  the data directory
+     * @param cache the cache that we want to save
+     * @return the number of keys that we saved
+     */
+    public static int save(Path path, CacheInterface cache) throws IOException {
+        List<String> keys = cache.hotKeys();
+        Path tmp = Paths.get(path.toAbsolutePath().toString(), NAME + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp.toFile())))) {
+            out.writeInt(keys.size());
+            for (String key : keys)
+                out.writeUTF(key);
+        }
+        Files.move(tmp, Paths.get(path.toAbsolutePath().toString(), NAME), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return keys.size();
+    }
+
+    /**
+     * This function reads the keys of the snapshot
+     *
+     * @param path the data directory
+     * @return the keys from the most to the least important, an empty list if there is no snapshot
+     */
+    public static List<String> read(Path path) throws IOException {
+        ArrayList<String> keys = new ArrayList<>();
+        Path file = Paths.get(path.toAbsolutePath().toString(), NAME);
+        if (!Files.exists(file))
+            return keys;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file.toFile())))) {
+            int size = in.readInt();
+            for (int i = 0; i < size; i++)
+                keys.add(in.readUTF());
+        } catch (EOFException e) {
+            // A truncated snapshot is still useful, we load the keys that we read
+        }
+        return keys;
+    }
+
+    /**
+     * This function loads the keys of the snapshot in the cache. We start from the least
+     * important key, so at the end the most important keys are the newest for the policy.
+     *
+     * @param path   the data directory
+     * @param cache  the cache that we want to warm up
+     * @param loader reads the value of a key from the storage
+     * @return the number of pairs that we added to the cache
+     */
+    public static int warmUp(Path path, CacheInterface cache, Function<String, String> loader) throws IOException {
+        List<String> keys = read(path);
+        int loaded = 0;
+        for (int i = keys.size() - 1; i >= 0; i--) {
+            if (cache.warm(keys.get(i), loader))
+                loaded++;
+        }
+        return loaded;
+    }
+}
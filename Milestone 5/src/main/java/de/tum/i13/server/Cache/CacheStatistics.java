@@ -0,0 +1,204 @@
+package de.tum.i13.server.Cache;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+/**
+ * This class counts what happens in the cache. The counters are LongAdders: every thread
+ * increments its own cell, so the gets of different threads don't compete for the same counter
+ * and we pay the sum only when we read the statistics.
+ * Every shard of a ShardedCache has its own statistics, the statistics of the ShardedCache
+ * add up the counters of the shards.
+ *
+ * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
+ */
+public class CacheStatistics implements CacheStatisticsMXBean {
+    private static final String DOMAIN = "de.tum.i13.server";
+    private final String policy;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder insertions = new LongAdder();
+    private final LongAdder passwordRejections = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+    // Statistics of the shards, we add their counters to ours
+    private final CacheStatistics[] shards;
+
+    /**
+     * @param policy the displacement policy of the cache
+     */
+    public CacheStatistics(String policy) {
+        this(policy, new CacheStatistics[0]);
+    }
+
+    /**
+     * @param policy the displacement policy of the cache
+     * @param shards the statistics of the shards of the cache
+     */
+    CacheStatistics(String policy, CacheStatistics[] shards) {
+        this.policy = policy;
+        this.shards = shards.clone();
+    }
+
+    /**
+     * This function adds the counter of the shards to our counter
+     */
+    private long sum(LongAdder counter, ToLongFunction<CacheStatistics> shardCounter) {
+        long sum = counter.sum();
+        for (CacheStatistics shard : shards)
+            sum += shardCounter.applyAsLong(shard);
+        return sum;
+    }
+
+    /**
+     * @return the statistics of the shard with index i
+     */
+    public CacheStatistics getShard(int i) {
+        return shards[i];
+    }
+
+    /**
+     * @return the number of shards, 0 if the cache is not sharded
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    void recordHit() {
+        hits.increment();
+    }
+
+    void recordMiss() {
+        misses.increment();
+    }
+
+    void recordEviction() {
+        evictions.increment();
+    }
+
+    void recordInsertion() {
+        insertions.increment();
+    }
+
+    void recordPasswordRejection() {
+        passwordRejections.increment();
+    }
+
+    /**
+     * This function is called after we read a key from disk because it was not in the cache
+     *
+     * @param nanos the time of the read
+     */
+    public void recordLoad(long nanos) {
+        loads.increment();
+        loadNanos.add(nanos);
+    }
+
+    @Override
+    public String getPolicy() {
+        return policy;
+    }
+
+    @Override
+    public long getHits() {
+        return sum(hits, CacheStatistics::getHits);
+    }
+
+    @Override
+    public long getMisses() {
+        return sum(misses, CacheStatistics::getMisses);
+    }
+
+    @Override
+    public double getHitRatio() {
+        long hits = getHits();
+        long total = hits + getMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public long getEvictions() {
+        return sum(evictions, CacheStatistics::getEvictions);
+    }
+
+    @Override
+    public long getInsertions() {
+        return sum(insertions, CacheStatistics::getInsertions);
+    }
+
+    @Override
+    public long getPasswordRejections() {
+        return sum(passwordRejections, CacheStatistics::getPasswordRejections);
+    }
+
+    @Override
+    public long getLoads() {
+        return sum(loads, CacheStatistics::getLoads);
+    }
+
+    @Override
+    public double getAverageLoadMillis() {
+        long loads = getLoads();
+        return loads == 0 ? 0 : sum(loadNanos, shard -> shard.loadNanos.sum()) / 1e6 / loads;
+    }
+
+    @Override
+    public void reset() {
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+        insertions.reset();
+        passwordRejections.reset();
+        loads.reset();
+        loadNanos.reset();
+        for (CacheStatistics shard : shards)
+            shard.reset();
+    }
+
+    /**
+     * This function publishes the statistics in the platform MBean server.
+     * The statistics of every shard are published in the bean with the key shard=i.
+     *
+     * @param name the name of the server, the bean is de.tum.i13.server:type=CacheStatistics,name=name
+     * @return the name of the bean, we use it to unregister the bean and the beans of the shards
+     */
+    public ObjectName register(String name) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName(DOMAIN + ":type=CacheStatistics,name=" + ObjectName.quote(name));
+        // A server restarted in the same JVM replaces its old beans
+        unregister(objectName);
+        server.registerMBean(this, objectName);
+        for (int i = 0; i < shards.length; i++)
+            server.registerMBean(shards[i], new ObjectName(objectName + ",shard=" + i));
+        return objectName;
+    }
+
+    /**
+     * This function removes the bean and the beans of its shards from the platform MBean server
+     */
+    public static void unregister(ObjectName objectName) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName registered : server.queryNames(new ObjectName(objectName + ",*"), null))
+            server.unregisterMBean(registered);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(String.format(Locale.ROOT,
+                "policy=%s hits=%d misses=%d hitRatio=%.3f evictions=%d insertions=%d passwordRejections=%d loads=%d averageLoadMs=%.3f",
+                policy, getHits(), getMisses(), getHitRatio(), getEvictions(), getInsertions(),
+                getPasswordRejections(), getLoads(), getAverageLoadMillis()));
+        for (int i = 0; i < shards.length; i++) {
+            CacheStatistics shard = shards[i];
+            sb.append(String.format(Locale.ROOT, " | shard%d hits=%d misses=%d hitRatio=%.3f evictions=%d insertions=%d",
+                    i, shard.getHits(), shard.getMisses(), shard.getHitRatio(), shard.getEvictions(), shard.getInsertions()));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,59 @@
+package de.tum.i13.server.Cache;
+
+/**
+ * This interface contains the statistics of the cache that we publish with JMX
+ *
+ * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
+ */
+public interface CacheStatisticsMXBean {
+
+    /**
+     * @return the displacement policy of the cache
+     */
+    String getPolicy();
+
+    /**
+     * @return the number of gets that found the key in the cache
+     */
+    long getHits();
+
+    /**
+     * @return the number of gets that didn't find the key in the cache
+     */
+    long getMisses();
+
+    /**
+     * @return hits / (hits + misses), 0 if there was no get
+     */
+    double getHitRatio();
+
+    /**
+     * @return the number of pairs that the displacement policy removed to make space
+     */
+    long getEvictions();
+
+    /**
+     * @return the number of new pairs added to the cache
+     */
+    long getInsertions();
+
+    /**
+     * @return the number of gets refused because of a wrong password
+     */
+    long getPasswordRejections();
+
+    /**
+     * @return the number of values that we read from disk after a miss
+     */
+    long getLoads();
+
+    /**
+     * @return the average time of the reads from disk after a miss, in milliseconds
+     */
+    double getAverageLoadMillis();
+
+    /**
+     * This function sets all the counters to 0
+     */
+    void reset();
+}
@@ -0,0 +1,86 @@
+package de.tum.i13.server.Cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class remembers the last keys that we searched on disk without finding them, so a client
+ * that asks again for a missing key gets the answer without reading the storage.
+ * It contains at most maxSize keys, when it is full we forget the key that was asked least recently.
+ * <p>
+ * Every write of a key must invalidate it after the write on disk. A search that didn't find a key
+ * adds it only if nobody invalidated a key during the search, in this way a put that happens while
+ * we are reading the disk can't leave a wrong miss in the cache.
+ *
+ * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
+ */
+public class NegativeCache {
+    private final LinkedHashMap<String, Boolean> keys;
+    private final int maxSize;
+    // Incremented at every invalidation
+    private long version;
+
+    /**
+     * @param maxSize maximum number of missing keys that we remember, 0 to disable the cache
+     */
+    public NegativeCache(int maxSize) {
+        if (maxSize < 0)
+            throw new IllegalArgumentException();
+        this.maxSize = maxSize;
+        this.version = 0;
+        this.keys = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > NegativeCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * This function must be called before searching a key on disk
+     *
+     * @return the version that we pass to add if we don't find the key
+     */
+    public synchronized long version() {
+        return version;
+    }
+
+    /**
+     * @return true if we know that the key is missing
+     */
+    public synchronized boolean contains(String key) {
+        return keys.get(key) != null;
+    }
+
+    /**
+     * This function remembers that the key is missing, if no key was invalidated since
+     * we read the version
+     *
+     * @param key     the key that we didn't find
+     * @param version the version that we read before searching the key
+     */
+    public synchronized void add(String key, long version) {
+        if (maxSize > 0 && this.version == version)
+            keys.put(key, Boolean.TRUE);
+    }
+
+    /**
+     * This function is called after a write of the key on disk
+     */
+    public synchronized void invalidate(String key) {
+        version++;
+        keys.remove(key);
+    }
+
+    /**
+     * This function is called after we receive many pairs from another server, like in a rebalancing
+     */
+    public synchronized void clear() {
+        version++;
+        keys.clear();
+    }
+
+    public synchronized int size() {
+        return keys.size();
+    }
+}
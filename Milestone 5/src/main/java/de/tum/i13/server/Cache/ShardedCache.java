@@ -0,0 +1,199 @@
+package de.tum.i13.server.Cache;
+
+import de.tum.i13.shared.InvalidPasswordException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/**
+ * This class splits the cache in shards, every shard is a Cache with its own displacement policy
+ * and its own lock. The shard of a pair depends on the hash of the key, so the threads that use
+ * different keys usually don't wait for each other.
+ * The capacity (number of pairs and bytes) is divided between the shards, the sum of the capacities
+ * of the shards is the capacity of the whole cache.
+ *
+ * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
+ */
+public class ShardedCache implements CacheInterface {
+    private final Cache[] shards;
+    private final int maxSize;
+    private final long maxBytes;
+    private final CacheStatistics statistics;
+    private Logger logger;
+
+    /**
+     * @param shards               number of shards, at most maxSize (and maxBytes if there is a limit)
+     * @param maxSize              maximum number of pairs that we want to store in the cache
+     * @param maxBytes             maximum number of bytes of the pairs that we want to store in the cache,
+     *                             0 if there is no limit
+     * @param displacementStrategy cache replacement policy of every shard
+     * @throws IllegalArgumentException
+     * @throws NullPointerException
+     */
+    public ShardedCache(int shards, int maxSize, long maxBytes, String displacementStrategy, Logger logger) throws IllegalArgumentException, NullPointerException {
+        if (shards <= 0 || maxSize <= 0 || maxBytes < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.logger = logger;
+        this.maxSize = maxSize;
+        this.maxBytes = maxBytes;
+        // Every shard must have space for at least a pair and a byte
+        int count = Math.min(shards, maxSize);
+        if (maxBytes > 0)
+            count = (int) Math.min(count, maxBytes);
+        this.shards = new Cache[count];
+        for (int i = 0; i < count; i++) {
+            int size = maxSize / count + (i < maxSize % count ? 1 : 0);
+            long bytes = maxBytes / count + (i < maxBytes % count ? 1 : 0);
+            this.shards[i] = new Cache(size, bytes, displacementStrategy, logger);
+        }
+        CacheStatistics[] parts = new CacheStatistics[count];
+        for (int i = 0; i < count; i++)
+            parts[i] = this.shards[i].getStatistics();
+        this.statistics = new CacheStatistics(displacementStrategy, parts);
+    }
+
+    /**
+     * This function returns the shard of the key, it spreads the bits of the hash
+     * because the strings with the same suffix have similar hashes
+     */
+    private Cache shardOf(String key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return shards[Math.floorMod(hash, shards.length)];
+    }
+
+    @Override
+    /**
+     *  This function add the pair <key,value> to the shard of the key.
+     *
+     * @param   key    the key that we want to add
+     * @param   value  the value that we want to add
+     * @return null in case of successfull insertion/update, key otherwise
+     */
+    public String put(String key, String value, Object... p) throws InvalidPasswordException {
+        if (key == null) {
+            logger.warning("Parameter key not valid\n");
+            return null;
+        }
+        return shardOf(key).put(key, value, p);
+    }
+
+    @Override
+    /**
+     *  This function return the element with key=key from the shard of the key.
+     *
+     * @param   key the key that we are searching for
+     * @return The value to which the key is mapped, null if the key is not present
+     */
+    public String get(String key, Object... p) throws InvalidPasswordException {
+        if (key == null) {
+            logger.warning("Parameter key not valid\n");
+            return null;
+        }
+        return shardOf(key).get(key, p);
+    }
+
+    @Override
+    /**
+     *  This function remove the element with key=key from the shard of the key.
+     *
+     * @param   key the key that we are searching for
+     * @return The value previously associated with the key, null if the key is not present
+     */
+    public String remove(String key, Object... p) throws InvalidPasswordException {
+        if (key == null) {
+            logger.warning("Parameter key not valid\n");
+            return null;
+        }
+        return shardOf(key).remove(key, p);
+    }
+
+    @Override
+    public String update(String key, String value, Object... p) throws InvalidPasswordException {
+        if (key == null)
+            return null;
+        return shardOf(key).update(key, value, p);
+    }
+
+    @Override
+    public void invalidate(String key) {
+        if (key != null)
+            shardOf(key).invalidate(key);
+    }
+
+    @Override
+    /**
+     * This function merges the keys of the shards, it takes a key from every shard
+     * in turn so the most important keys of all the shards come first.
+     */
+    public List<String> hotKeys() {
+        ArrayList<List<String>> lists = new ArrayList<>();
+        int size = 0;
+        for (Cache shard : shards) {
+            List<String> keys = shard.hotKeys();
+            lists.add(keys);
+            size += keys.size();
+        }
+        ArrayList<String> keys = new ArrayList<>(size);
+        for (int i = 0; keys.size() < size; i++) {
+            for (List<String> list : lists) {
+                if (i < list.size())
+                    keys.add(list.get(i));
+            }
+        }
+        return keys;
+    }
+
+    @Override
+    public boolean warm(String key, Function<String, String> loader) {
+        if (key == null)
+            return false;
+        return shardOf(key).warm(key, loader);
+    }
+
+    /**
+     * @return the number of pairs in the cache, the sum of the pairs of the shards
+     */
+    public int getCurrentSize() {
+        int size = 0;
+        for (Cache shard : shards)
+            size += shard.getCurrentSize();
+        return size;
+    }
+
+    /**
+     * @return the number of bytes in the cache, the sum of the bytes of the shards
+     */
+    public long getCurrentBytes() {
+        long bytes = 0;
+        for (Cache shard : shards)
+            bytes += shard.getCurrentBytes();
+        return bytes;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return the counters of the whole cache, the sums of the counters of the shards
+     */
+    @Override
+    public CacheStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * @return the shards of the cache, in the order of their index
+     */
+    public Cache[] getShards() {
+        return shards.clone();
+    }
+}
@@ -0,0 +1,209 @@
+package de.tum.i13.server.CacheDisplacement;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * This class implements the Adaptive Replacement Cache.
+ * The keys in the cache are in two LRU lists: recent contains the keys that were used once and
+ * frequent the keys that were used at least twice. The keys that we remove from the lists are
+ * remembered (without value) in two ghost lists, recentGhosts and frequentGhosts.
+ * The target is the number of keys that we want to keep in recent: when we read again a key that
+ * we removed from recent the target grows, when we read again a key that we removed from
+ * frequent the target decreases. In this way the cache moves alone between LRU and LFU
+ * following the workload. The ghost lists together contain at most maxSize keys.
+ *
+ * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
+ */
+public class ARC implements CacheDisplacement {
+    // Every list goes from the oldest key to the newest
+    private final LinkedHashSet<String> recent;
+    private final LinkedHashSet<String> frequent;
+    private final LinkedHashSet<String> recentGhosts;
+    private final LinkedHashSet<String> frequentGhosts;
+    // Number of keys that we want in recent, between 0 and maxSize
+    private int target;
+    int maxSize;
+
+    public ARC(int size) {
+        this.maxSize = size;
+        this.target = 0;
+        this.recent = new LinkedHashSet<>();
+        this.frequent = new LinkedHashSet<>();
+        this.recentGhosts = new LinkedHashSet<>();
+        this.frequentGhosts = new LinkedHashSet<>();
+    }
+
+    @Override
+    public synchronized int access(String key) {
+        try {
+            if (key == null)
+                throw new NullPointerException();
+            if (recent.remove(key) || frequent.remove(key)) {
+                frequent.add(key);
+                return 1;
+            }
+        } catch (NullPointerException | IllegalArgumentException e) {
+            System.out.print("Parameter key not valid\n");
+        } catch (Exception e) {
+            System.out.print("An error occurred\n");
+        }
+        return 0;
+    }
+
+    @Override
+    /**
+     * This function is used when the server need to add a new pair
+     * to the cache. This allow us to understand which pairs we need to
+     * mantain in the cache.
+     * @param key the key that we want to add in the cache
+     * @return The string to be removed (when the cache is full) null otherwise
+     */
+    public synchronized String put(String key) {
+        try {
+            if (key == null)
+                throw new NullPointerException();
+            if (recent.contains(key) || frequent.contains(key))
+                return null;
+
+            String toRemove;
+            if (recentGhosts.remove(key)) {
+                // We removed the key too early from recent, recent needs more space
+                target = Math.min(maxSize, target + Math.max(1, frequentGhosts.size() / (recentGhosts.size() + 1)));
+                toRemove = replace(false);
+                frequent.add(key);
+            } else if (frequentGhosts.remove(key)) {
+                // We removed the key too early from frequent, frequent needs more space
+                target = Math.max(0, target - Math.max(1, recentGhosts.size() / (frequentGhosts.size() + 1)));
+                toRemove = replace(true);
+                frequent.add(key);
+            } else {
+                if (recent.size() + recentGhosts.size() >= maxSize) {
+                    if (recent.size() < maxSize) {
+                        removeOldest(recentGhosts);
+                        toRemove = replace(false);
+                    } else
+                        toRemove = removeOldest(recent);
+                } else {
+                    if (recent.size() + frequent.size() + recentGhosts.size() + frequentGhosts.size() >= 2 * maxSize)
+                        removeOldest(frequentGhosts);
+                    toRemove = replace(false);
+                }
+                recent.add(key);
+            }
+            trimGhosts();
+            return toRemove;
+        } catch (NullPointerException | IllegalArgumentException e) {
+            System.out.print("Parameter not valid\n");
+        } catch (Exception e) {
+            System.out.print("An error occurred\n");
+        }
+        return null;
+    }
+
+    /**
+     * This function removes a key from recent if recent has more keys than the target,
+     * otherwise from frequent, and adds it to the corresponding ghost list.
+     * If the cache is not full we don't need to remove any key.
+     *
+     * @param frequentGhost true if the new key was in frequentGhosts
+     * @return the key that we removed, null if the cache is not full
+     */
+    private String replace(boolean frequentGhost) {
+        if (recent.size() + frequent.size() < maxSize)
+            return null;
+        return demote(frequentGhost);
+    }
+
+    /**
+     * This function moves a key of the cache to its ghost list, the cache must contain at least a key
+     *
+     * @param frequentGhost true if the new key was in frequentGhosts
+     * @return the key that we removed
+     */
+    private String demote(boolean frequentGhost) {
+        String toRemove;
+        if (!recent.isEmpty() && (recent.size() > target || (frequentGhost && recent.size() == target) || frequent.isEmpty())) {
+            toRemove = removeOldest(recent);
+            recentGhosts.add(toRemove);
+        } else {
+            toRemove = removeOldest(frequent);
+            frequentGhosts.add(toRemove);
+        }
+        return toRemove;
+    }
+
+    /**
+     * After some removes the cache is not full and the ghosts can grow more,
+     * this function removes the oldest ghosts until they are at most maxSize
+     */
+    private void trimGhosts() {
+        while (recentGhosts.size() + frequentGhosts.size() > maxSize)
+            removeOldest(recentGhosts.size() > frequentGhosts.size() ? recentGhosts : frequentGhosts);
+    }
+
+    private String removeOldest(LinkedHashSet<String> list) {
+        String oldest = list.iterator().next();
+        list.remove(oldest);
+        return oldest;
+    }
+
+    @Override
+    /**
+     * This function is used to delete a specified key from the cache
+     * @param key the key that we want to remove from the cache
+     * @return true if the keys was removed false otherwise
+     */
+    public synchronized boolean remove(String key) {
+        try {
+            if (key == null)
+                throw new NullPointerException();
+            return recent.remove(key) || frequent.remove(key);
+        } catch (NullPointerException e) {
+            System.out.print("Parameter key not valid\n");
+        } catch (Exception e) {
+            System.out.print("An error occurred\n");
+        }
+        return false;
+    }
+
+    @Override
+    /**
+     * This function removes a key like a put of a new key when the cache is full
+     * @return the key that we removed, null if the cache is empty
+     */
+    public synchronized String evict() {
+        if (recent.isEmpty() && frequent.isEmpty())
+            return null;
+        String toRemove = demote(false);
+        trimGhosts();
+        return toRemove;
+    }
+
+    @Override
+    public synchronized List<String> hotKeys() {
+        ArrayList<String> keys = new ArrayList<>(recent.size() + frequent.size());
+        for (LinkedHashSet<String> list : List.of(frequent, recent)) {
+            ArrayList<String> listKeys = new ArrayList<>(list);
+            Collections.reverse(listKeys);
+            keys.addAll(listKeys);
+        }
+        return keys;
+    }
+
+    /**
+     * @return the number of keys that the cache wants to keep in the list of the recent keys
+     */
+    public synchronized int getTarget() {
+        return target;
+    }
+
+    /**
+     * @return the number of keys in the ghost lists
+     */
+    public synchronized int getGhosts() {
+        return recentGhosts.size() + frequentGhosts.size();
+    }
+}
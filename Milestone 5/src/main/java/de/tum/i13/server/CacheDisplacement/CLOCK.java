@@ -0,0 +1,170 @@
+package de.tum.i13.server.CacheDisplacement;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class approximates LRU with the CLOCK algorithm.
+ * The keys are stored in a circular array of maxSize slots and every key has a reference bit.
+ * An access only sets the reference bit of the key, without locks, so the gets of different
+ * threads don't wait for each other. When the cache is full the hand of the clock moves over
+ * the slots: it clears the bit of the keys that were accessed and it removes the first key
+ * whose bit is already clear. Every access gives a key a second chance, so the hand moves
+ * at most once around the clock and on average a few slots for each put.
+ *
+ * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
+ */
+public class CLOCK implements CacheDisplacement {
+    private final ConcurrentHashMap<String, Entry> cache;
+    private final Entry[] slots;
+    // Slots that are empty because we removed their key
+    private final ArrayDeque<Integer> free;
+    // Position of the hand of the clock
+    private int hand;
+    int maxSize;
+    int currentSize;
+
+    /**
+     * This class contains a key, its slot and its reference bit
+     */
+    private static class Entry {
+        private final String key;
+        private final int slot;
+        private volatile boolean referenced;
+
+        private Entry(String key, int slot) {
+            this.key = key;
+            this.slot = slot;
+        }
+    }
+
+    public CLOCK(int size) {
+        this.maxSize = size;
+        this.currentSize = 0;
+        this.cache = new ConcurrentHashMap<>(size);
+        this.slots = new Entry[size];
+        this.free = new ArrayDeque<>();
+        for (int i = 0; i < size; i++)
+            free.add(i);
+        this.hand = 0;
+    }
+
+    @Override
+    public int access(String key) {
+        try {
+            Entry entry = cache.get(key);
+            if (entry != null) {
+                entry.referenced = true;
+                return 1;
+            }
+        } catch (NullPointerException e) {
+            System.out.print("Parameter key not valid\n");
+        }
+        return 0;
+    }
+
+    @Override
+    /**
+     * This function is used when the server need to add a new pair
+     * to the cache. This allow us to understand which pairs we need to
+     * mantain in the cache.
+     * @param key the key that we want to add in the cache
+     * @return The strig to be removed (when the cache is full) null otherwise
+     */
+    public synchronized String put(String key) {
+        try {
+            if (!cache.containsKey(key)) {
+                String toRemove = null;
+                int slot;
+                if (currentSize == maxSize) {
+                    slot = victim();
+                    toRemove = slots[slot].key;
+                    cache.remove(toRemove);
+                    currentSize--;
+                } else
+                    slot = free.poll();
+                Entry entry = new Entry(key, slot);
+                slots[slot] = entry;
+                cache.put(key, entry);
+                currentSize++;
+                return toRemove;
+            }
+        } catch (NullPointerException e) {
+            System.out.print("Parameter key not valid\n");
+        }
+        return null;
+    }
+
+    /**
+     * This function moves the hand until it finds a key that was not accessed since the last time
+     * that the hand passed over it, the cache must contain at least a key
+     *
+     * @return the slot of the key that we remove
+     */
+    private int victim() {
+        while (true) {
+            Entry entry = slots[hand];
+            int slot = hand;
+            hand = (hand + 1) % maxSize;
+            if (entry == null)
+                continue;
+            if (!entry.referenced)
+                return slot;
+            entry.referenced = false;
+        }
+    }
+
+    @Override
+    /**
+     * This function removes the key that the hand of the clock selects
+     * @return the key that we removed, null if the cache is empty
+     */
+    public synchronized String evict() {
+        if (currentSize == 0)
+            return null;
+        int slot = victim();
+        String toRemove = slots[slot].key;
+        cache.remove(toRemove);
+        slots[slot] = null;
+        free.push(slot);
+        currentSize--;
+        return toRemove;
+    }
+
+    @Override
+    public synchronized List<String> hotKeys() {
+        ArrayList<String> keys = new ArrayList<>(currentSize);
+        ArrayList<String> notReferenced = new ArrayList<>();
+        // The hand removes first the keys without reference bit, starting from its position
+        for (int i = 1; i <= maxSize; i++) {
+            Entry entry = slots[(hand - i + maxSize) % maxSize];
+            if (entry != null)
+                (entry.referenced ? keys : notReferenced).add(entry.key);
+        }
+        keys.addAll(notReferenced);
+        return keys;
+    }
+
+    @Override
+    /**
+     * This function is used to delete a specified key from the cache
+     * @param key the key that we want to remove from the cache
+     * @return true if the keys was removed false otherwise
+     */
+    public synchronized boolean remove(String key) {
+        try {
+            Entry entry = cache.remove(key);
+            if (entry != null) {
+                slots[entry.slot] = null;
+                free.push(entry.slot);
+                currentSize--;
+                return true;
+            }
+        } catch (NullPointerException e) {
+            System.out.print("Parameter key not valid\n");
+        }
+        return false;
+    }
+}
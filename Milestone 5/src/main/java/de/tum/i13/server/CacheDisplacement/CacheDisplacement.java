@@ -1,5 +1,7 @@
 package de.tum.i13.server.CacheDisplacement;
 
+import java.util.List;
+
 /**
  * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
  */
@@ -15,6 +17,17 @@ public interface CacheDisplacement {
      */
     String put(String key);
 
+    /**
+     * This function is used when the server reads a pair from the cache,
+     * the policies that don't care about the reads do nothing.
+     *
+     * @param key the key that we read
+     * @return 1 if the key is in the cache, 0 otherwise
+     */
+    default int access(String key) {
+        return 0;
+    }
+
     /**
      * This function is used to delete a specified key from the cache
      *
@@ -22,4 +35,22 @@ public interface CacheDisplacement {
      * @return true if the keys was removed false otherwise
      */
     boolean remove(String key);
+
+    /**
+     * This function is used when the cache needs space for a reason that is not the number
+     * of pairs, for example the limit of bytes. It removes the key that the policy would
+     * replace first.
+     *
+     * @return the key that we removed, null if the cache is empty
+     */
+    String evict();
+
+    /**
+     * This function is used to save the keys of the cache, so after a restart we can load
+     * them again. The keys are sorted from the one that the policy would remove last
+     * to the one that it would remove first.
+     *
+     * @return the keys of the cache, from the most to the least important
+     */
+    List<String> hotKeys();
 }
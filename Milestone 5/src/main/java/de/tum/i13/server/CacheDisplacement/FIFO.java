@@ -1,5 +1,8 @@
 package de.tum.i13.server.CacheDisplacement;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
@@ -66,4 +69,23 @@ public class FIFO implements CacheDisplacement {
         }
         return retValue;
     }
+
+    @Override
+    /**
+     * This function removes the oldest key of the cache
+     * @return the key that we removed, null if the cache is empty
+     */
+    public String evict() {
+        String toRemove = cache.poll();
+        if (toRemove != null)
+            this.currentSize--;
+        return toRemove;
+    }
+
+    @Override
+    public List<String> hotKeys() {
+        ArrayList<String> keys = new ArrayList<>(cache);
+        Collections.reverse(keys);
+        return keys;
+    }
 }
@@ -0,0 +1,88 @@
+package de.tum.i13.server.CacheDisplacement;
+
+/**
+ * This class estimates how many times a key was used with a count-min sketch.
+ * The sketch has 4 rows of 4 bit counters, 16 counters in a long, and every key increments one
+ * counter in each row. The estimate is the smallest of the 4 counters, so it can be higher than
+ * the real frequency only when the key collides with other keys in all the rows.
+ * After a number of increments proportional to the size of the cache all the counters are halved,
+ * in this way the keys that were popular a long time ago lose their frequency.
+ *
+ * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
+ */
+class FrequencySketch {
+    private static final int DEPTH = 4;
+    private static final int MAX_COUNT = 15;
+    private static final long[] SEEDS = {0x97cb3127L, 0xb1fa1ed5L, 0x6a09e667L, 0xbb67ae85L};
+    // Every long contains 16 counters of 4 bits
+    private final long[][] table;
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+
+    /**
+     * @param size number of keys in the cache, the rows have 4 counters for each key
+     *             (rounded to a power of two) so the keys of the cache rarely collide
+     */
+    FrequencySketch(int size) {
+        int width = Integer.highestOneBit(Math.max(4, size) - 1) << 3;
+        this.table = new long[DEPTH][width / 16];
+        this.mask = width - 1;
+        this.sampleSize = 10 * Math.max(1, size);
+        this.additions = 0;
+    }
+
+    /**
+     * This function returns the estimated frequency of the key, between 0 and 15
+     */
+    int frequency(String key) {
+        int hash = key.hashCode();
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < DEPTH; row++) {
+            int counter = index(hash, row);
+            int count = (int) (table[row][counter >>> 4] >>> ((counter & 15) << 2)) & MAX_COUNT;
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * This function increments the counters of the key and halves all the counters
+     * when the sketch received sampleSize increments
+     */
+    void increment(String key) {
+        int hash = key.hashCode();
+        boolean added = false;
+        for (int row = 0; row < DEPTH; row++) {
+            int counter = index(hash, row);
+            int shift = (counter & 15) << 2;
+            long word = table[row][counter >>> 4];
+            if (((word >>> shift) & MAX_COUNT) < MAX_COUNT) {
+                table[row][counter >>> 4] = word + (1L << shift);
+                added = true;
+            }
+        }
+        if (added && ++additions == sampleSize)
+            reset();
+    }
+
+    /**
+     * This function halves all the counters
+     */
+    private void reset() {
+        for (long[] row : table)
+            for (int i = 0; i < row.length; i++)
+                row[i] = (row[i] >>> 1) & 0x7777777777777777L;
+        additions /= 2;
+    }
+
+    /**
+     * This function returns the counter of the key in the row, every row uses another seed
+     * so two keys that collide in a row usually don't collide in the others
+     */
+    private int index(int hash, int row) {
+        long h = (hash + SEEDS[row]) * 0x9e3779b97f4a7c15L;
+        h ^= h >>> 32;
+        return (int) h & mask;
+    }
+}
@@ -1,25 +1,79 @@
 package de.tum.i13.server.CacheDisplacement;
 
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 
 /**
+ * This class keeps the keys of the cache in buckets, one bucket for each frequency.
+ * The buckets are in a doubly linked list sorted by frequency, so the first bucket
+ * contains the keys with the lowest frequency. An access moves the key in the bucket that
+ * follows its bucket, a put adds the key to the first bucket and the key that we remove is the
+ * oldest key of the first bucket: all the operations take constant time.
+ * <p>
+ * With aging a new key does not start from 1 but from the frequency of the last key that we
+ * removed plus 1 (LFU with dynamic aging). In this way a key that was hot a long time ago and
+ * is not accessed anymore is removed when the new keys reach its frequency.
+ *
  * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
  */
 public class LFU implements CacheDisplacement {
-    private ConcurrentHashMap<String, Integer> cache;
+    private final HashMap<String, Bucket> cache;
+    // Sentinel of the list of the buckets, head.next is the bucket with the lowest frequency
+    private final Bucket head;
+    private final boolean aging;
+    // Frequency of the last key that we removed to make space, used only with aging
+    private long age;
     int maxSize;
     int currentSize;
 
+    /**
+     * This class contains the keys with the same frequency, from the oldest to the newest
+     */
+    private static class Bucket {
+        private final long frequency;
+        private final LinkedHashSet<String> keys = new LinkedHashSet<>();
+        private Bucket prev;
+        private Bucket next;
+
+        private Bucket(long frequency) {
+            this.frequency = frequency;
+        }
+    }
+
     public LFU(int size) {
+        this(size, false);
+    }
+
+    /**
+     * @param aging true if the frequency of a new key starts from the frequency of the last key that we removed
+     */
+    public LFU(int size, boolean aging) {
         this.maxSize = size;
         this.currentSize = 0;
-        cache = new ConcurrentHashMap<>();
+        this.aging = aging;
+        this.age = 0;
+        cache = new HashMap<>();
+        head = new Bucket(Long.MIN_VALUE);
+        head.prev = head;
+        head.next = head;
     }
 
-    public int access(String key) {
+    @Override
+    public synchronized int access(String key) {
         try {
-            if (cache.computeIfPresent(key, (k, v) -> v += 1) == null)
+            if (key == null)
+                throw new NullPointerException();
+            Bucket bucket = cache.get(key);
+            if (bucket == null)
                 return 0;
+            Bucket next = bucketAfter(bucket, bucket.frequency + 1);
+            next.keys.add(key);
+            cache.put(key, next);
+            removeFrom(bucket, key);
         } catch (NullPointerException | IllegalArgumentException e) {
             System.out.print("Parameter key not valid\n");
         } catch (IllegalStateException e) {
@@ -40,27 +94,21 @@ public class LFU implements CacheDisplacement {
      * @param key the key that we want to add in the cache
      * @return The string to be removed (when the cache is full) null otherwise
      */
-    public String put(String key) {
+    public synchronized String put(String key) {
         try {
+            if (key == null)
+                throw new NullPointerException();
             // If the cache contains the new key I can't insert it again
             if (!cache.containsKey(key)) {
                 String toRemove = null;
-                if (currentSize == maxSize) {
-                    var wrapper = new Object() {
-                        String key = null;
-                        int min = Integer.MAX_VALUE;
-                    };
-                    cache.forEach((k, v) -> {
-                        if (v < wrapper.min) {
-                            wrapper.min = v;
-                            wrapper.key = k;
-                        }
-                    });
-                    cache.remove(wrapper.key);
-                    currentSize--;
-                    toRemove = wrapper.key;
-                }
-                cache.putIfAbsent(key, 1);
+                if (currentSize == maxSize)
+                    toRemove = evict();
+                long frequency = aging ? age + 1 : 1;
+                // With aging the first bucket can have frequency age, the new key goes after it
+                Bucket before = head.next != head && head.next.frequency < frequency ? head.next : head;
+                Bucket bucket = bucketAfter(before, frequency);
+                bucket.keys.add(key);
+                cache.put(key, bucket);
                 currentSize++;
                 return toRemove;
             }
@@ -81,10 +129,14 @@ public class LFU implements CacheDisplacement {
      * @param key the key that we want to remove from the cache
      * @return true if the keys was removed false otherwise
      */
-    public boolean remove(String key) {
+    public synchronized boolean remove(String key) {
         boolean retValue = false;
         try {
-            if (cache.remove(key) != null) {
+            if (key == null)
+                throw new NullPointerException();
+            Bucket bucket = cache.remove(key);
+            if (bucket != null) {
+                removeFrom(bucket, key);
                 this.currentSize--;
                 retValue = true;
             }
@@ -96,4 +148,70 @@ public class LFU implements CacheDisplacement {
 
         return retValue;
     }
+
+    @Override
+    /**
+     * This function removes the oldest key with the lowest frequency
+     * @return the key that we removed, null if the cache is empty
+     */
+    public synchronized String evict() {
+        Bucket first = head.next;
+        if (first == head)
+            return null;
+        Iterator<String> oldest = first.keys.iterator();
+        String toRemove = oldest.next();
+        cache.remove(toRemove);
+        if (aging)
+            age = first.frequency;
+        removeFrom(first, toRemove);
+        currentSize--;
+        return toRemove;
+    }
+
+    @Override
+    public synchronized List<String> hotKeys() {
+        ArrayList<String> keys = new ArrayList<>(currentSize);
+        // From the highest frequency, in every bucket from the newest key
+        for (Bucket bucket = head.prev; bucket != head; bucket = bucket.prev) {
+            ArrayList<String> bucketKeys = new ArrayList<>(bucket.keys);
+            Collections.reverse(bucketKeys);
+            keys.addAll(bucketKeys);
+        }
+        return keys;
+    }
+
+    /**
+     * @return the frequency of the key, 0 if the key is not in the cache
+     */
+    public synchronized long getFrequency(String key) {
+        Bucket bucket = cache.get(key);
+        return bucket == null ? 0 : bucket.frequency;
+    }
+
+    /**
+     * This function returns the bucket with the frequency, it must follow bucket in the list.
+     * The frequency is at most the frequency of the bucket after bucket, so if that bucket has
+     * another frequency we add a new bucket between them.
+     */
+    private Bucket bucketAfter(Bucket bucket, long frequency) {
+        if (bucket.next != head && bucket.next.frequency == frequency)
+            return bucket.next;
+        Bucket created = new Bucket(frequency);
+        created.prev = bucket;
+        created.next = bucket.next;
+        bucket.next.prev = created;
+        bucket.next = created;
+        return created;
+    }
+
+    /**
+     * This function removes the key from the bucket and the bucket from the list if it is empty
+     */
+    private void removeFrom(Bucket bucket, String key) {
+        bucket.keys.remove(key);
+        if (bucket.keys.isEmpty()) {
+            bucket.prev.next = bucket.next;
+            bucket.next.prev = bucket.prev;
+        }
+    }
 }
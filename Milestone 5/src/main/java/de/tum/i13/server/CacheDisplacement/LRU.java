@@ -1,5 +1,7 @@
 package de.tum.i13.server.CacheDisplacement;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.concurrent.ConcurrentLinkedDeque;
 
@@ -17,7 +19,8 @@ public class LRU implements CacheDisplacement {
         this.cache = new ConcurrentLinkedDeque<>();
     }
 
-    public int access(String key) {
+    @Override
+    public synchronized int access(String key) {
         try {
             if (key == null) {
                 throw new IllegalArgumentException();
@@ -44,7 +47,7 @@ public class LRU implements CacheDisplacement {
      * @param key the key that we want to add in the cache
      * @return The strig to be removed (when the cache is full) null otherwise
      */
-    public String put(String key) {
+    public synchronized String put(String key) {
         try {
             if (key == null) {
                 throw new IllegalArgumentException();
@@ -78,7 +81,7 @@ public class LRU implements CacheDisplacement {
      * @param key the key that we want to remove from the cache
      * @return true if the keys was removed false otherwise
      */
-    public boolean remove(String key) {
+    public synchronized boolean remove(String key) {
         boolean retValue = false;
         try {
             if (cache.remove(key)) {
@@ -92,4 +95,22 @@ public class LRU implements CacheDisplacement {
         }
         return retValue;
     }
+
+    @Override
+    /**
+     * This function removes the least recently used key of the cache
+     * @return the key that we removed, null if the cache is empty
+     */
+    public synchronized String evict() {
+        String toRemove = cache.pollLast();
+        if (toRemove != null)
+            this.currentSize--;
+        return toRemove;
+    }
+
+    @Override
+    public synchronized List<String> hotKeys() {
+        // The most recently used key is the first one
+        return new ArrayList<>(cache);
+    }
 }
@@ -0,0 +1,191 @@
+package de.tum.i13.server.CacheDisplacement;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * This class implements W-TinyLFU. A new key always enters a small LRU window (1% of the cache),
+ * when the window is full its oldest key becomes a candidate for the main part of the cache.
+ * The candidate enters the main part only if a count-min sketch says that it was used more
+ * times than the key that it would replace, otherwise the candidate is removed.
+ * In this way the keys that are read only once, like the keys of a rebalancing or of the
+ * replicas that we receive, pass through the window without removing the popular keys.
+ * <p>
+ * The main part is a segmented LRU: the keys start in the probation segment and move to the
+ * protected segment (80% of the main part) when they are accessed again. The key that we
+ * compare with the candidate is the oldest key of the probation segment.
+ *
+ * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
+ */
+public class TinyLFU implements CacheDisplacement {
+    private enum Region {WINDOW, PROBATION, PROTECTED}
+
+    private final HashMap<String, Region> cache;
+    // Every segment goes from the oldest key to the newest
+    private final LinkedHashSet<String> window;
+    private final LinkedHashSet<String> probation;
+    private final LinkedHashSet<String> protectedKeys;
+    private final FrequencySketch sketch;
+    private final int maxWindow;
+    private final int maxMain;
+    private final int maxProtected;
+    int maxSize;
+
+    public TinyLFU(int size) {
+        this.maxSize = size;
+        this.maxWindow = Math.max(1, size / 100);
+        this.maxMain = size - maxWindow;
+        this.maxProtected = maxMain * 4 / 5;
+        this.cache = new HashMap<>();
+        this.window = new LinkedHashSet<>();
+        this.probation = new LinkedHashSet<>();
+        this.protectedKeys = new LinkedHashSet<>();
+        this.sketch = new FrequencySketch(size);
+    }
+
+    @Override
+    public synchronized int access(String key) {
+        try {
+            if (key == null)
+                throw new NullPointerException();
+            Region region = cache.get(key);
+            if (region == null)
+                return 0;
+            sketch.increment(key);
+            if (region == Region.WINDOW) {
+                window.remove(key);
+                window.add(key);
+            } else if (region == Region.PROTECTED) {
+                protectedKeys.remove(key);
+                protectedKeys.add(key);
+            } else {
+                probation.remove(key);
+                protectedKeys.add(key);
+                cache.put(key, Region.PROTECTED);
+                // The oldest protected key goes back to the probation segment
+                if (protectedKeys.size() > maxProtected) {
+                    String demoted = protectedKeys.iterator().next();
+                    protectedKeys.remove(demoted);
+                    probation.add(demoted);
+                    cache.put(demoted, Region.PROBATION);
+                }
+            }
+            return 1;
+        } catch (NullPointerException | IllegalArgumentException e) {
+            System.out.print("Parameter key not valid\n");
+        } catch (Exception e) {
+            System.out.print("An error occurred\n");
+        }
+        return 0;
+    }
+
+    @Override
+    /**
+     * This function is used when the server need to add a new pair
+     * to the cache. This allow us to understand which pairs we need to
+     * mantain in the cache.
+     * @param key the key that we want to add in the cache
+     * @return The string to be removed (when the cache is full) null otherwise
+     */
+    public synchronized String put(String key) {
+        try {
+            if (key == null)
+                throw new NullPointerException();
+            if (!cache.containsKey(key)) {
+                sketch.increment(key);
+                window.add(key);
+                cache.put(key, Region.WINDOW);
+                if (window.size() <= maxWindow)
+                    return null;
+
+                String candidate = window.iterator().next();
+                window.remove(candidate);
+                if (probation.size() + protectedKeys.size() < maxMain) {
+                    probation.add(candidate);
+                    cache.put(candidate, Region.PROBATION);
+                    return null;
+                }
+
+                LinkedHashSet<String> segment = probation.isEmpty() ? protectedKeys : probation;
+                String victim = segment.isEmpty() ? null : segment.iterator().next();
+                if (victim != null && sketch.frequency(candidate) > sketch.frequency(victim)) {
+                    segment.remove(victim);
+                    cache.remove(victim);
+                    probation.add(candidate);
+                    cache.put(candidate, Region.PROBATION);
+                    return victim;
+                }
+                cache.remove(candidate);
+                return candidate;
+            }
+        } catch (NullPointerException | IllegalArgumentException e) {
+            System.out.print("Parameter not valid\n");
+        } catch (Exception e) {
+            System.out.print("An error occurred\n");
+        }
+        return null;
+    }
+
+    @Override
+    /**
+     * This function is used to delete a specified key from the cache
+     * @param key the key that we want to remove from the cache
+     * @return true if the keys was removed false otherwise
+     */
+    public synchronized boolean remove(String key) {
+        try {
+            if (key == null)
+                throw new NullPointerException();
+            Region region = cache.remove(key);
+            if (region == Region.WINDOW)
+                window.remove(key);
+            else if (region == Region.PROBATION)
+                probation.remove(key);
+            else if (region == Region.PROTECTED)
+                protectedKeys.remove(key);
+            return region != null;
+        } catch (NullPointerException e) {
+            System.out.print("Parameter key not valid\n");
+        } catch (Exception e) {
+            System.out.print("An error occurred\n");
+        }
+        return false;
+    }
+
+    @Override
+    /**
+     * This function removes the oldest key of the probation segment, if the main part is empty
+     * it removes the oldest key of the window
+     * @return the key that we removed, null if the cache is empty
+     */
+    public synchronized String evict() {
+        LinkedHashSet<String> segment = !probation.isEmpty() ? probation : !protectedKeys.isEmpty() ? protectedKeys : window;
+        if (segment.isEmpty())
+            return null;
+        String toRemove = segment.iterator().next();
+        segment.remove(toRemove);
+        cache.remove(toRemove);
+        return toRemove;
+    }
+
+    @Override
+    public synchronized List<String> hotKeys() {
+        ArrayList<String> keys = new ArrayList<>(cache.size());
+        for (LinkedHashSet<String> segment : List.of(protectedKeys, window, probation)) {
+            ArrayList<String> segmentKeys = new ArrayList<>(segment);
+            Collections.reverse(segmentKeys);
+            keys.addAll(segmentKeys);
+        }
+        return keys;
+    }
+
+    /**
+     * @return the estimated number of times that the key was used, between 0 and 15
+     */
+    public synchronized int getFrequency(String key) {
+        return sketch.frequency(key);
+    }
+}
@@ -0,0 +1,387 @@
+package de.tum.i13.server.FileStorage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * This class stores the large values of a FileStorage in append-only blob files, the Segments
+ * contain only a BlobPointer. In this way the rewrites, the splits and the merges of the FileMaps
+ * move only small records and a large value is written only once.
+ * <p>
+ * We append to the file with the highest number, when it is bigger than maxFileSize we start a new one.
+ * A file starts with the MAGIC number, then we have a list of blobs:
+ * - int  length of the blob (without this field)
+ * - int  length of the key followed by the key
+ * - byte id of the codec, 0 if the value is not compressed
+ * - int  length of the value before the compression
+ * - int  length of the stored value followed by the stored value
+ * <p>
+ * When a key is updated or deleted its blob becomes garbage, we count the garbage bytes of every file.
+ * When at least half of a file that we don't append to anymore is garbage the FileStorage moves its live
+ * blobs to the last file and deletes it. We keep the key in the blob, so we can ask the FileMap of the key
+ * if the blob is still the last version of its value.
+ * The garbage counters are saved in DEAD_NAME when we close the log.
+ * <p>
+ * A file that we don't append to anymore never changes, so we read its blobs from a read-only mapping
+ * of the whole file. The blobs of the last file are read with a positioned read.
+ *
+ * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
+ */
+public class BlobLog {
+    static final String EXTENSION = "blob";
+    static final String DEAD_NAME = "blobs.dead";
+    private static final int MAGIC = 0x4B564242;
+    private static final long MAX_FILE_SIZE = 64L * 1024 * 1024;
+    // A file is collected when the garbage is at least this fraction of its size
+    private static final double MAX_GARBAGE = 0.5;
+
+    private final Path path;
+    private final int threshold;
+    private final Compression compression;
+    private final long maxFileSize;
+    private final ConcurrentHashMap<Integer, FileChannel> channels = new ConcurrentHashMap<>();
+    // Mappings of the files that we don't append to anymore
+    private final ConcurrentHashMap<Integer, MappedByteBuffer> mappings = new ConcurrentHashMap<>();
+    // Number of garbage bytes of each file
+    private final ConcurrentHashMap<Integer, AtomicLong> dead = new ConcurrentHashMap<>();
+    // Number of the file where we append, -1 until we open the log
+    private volatile int active = -1;
+    // Position where we append the next blob
+    private long end;
+
+    /**
+     * @param threshold   the values of at least threshold bytes are stored in the log, 0 to keep all the values in the segments
+     * @param compression decides which values we compress when we write them
+     */
+    public BlobLog(Path path, int threshold, Compression compression) {
+        this(path, threshold, compression, MAX_FILE_SIZE);
+    }
+
+    /**
+     * @param maxFileSize the size of a file after which we start a new one
+     */
+    public BlobLog(Path path, int threshold, Compression compression, long maxFileSize) {
+        this.path = path;
+        this.threshold = threshold;
+        this.compression = compression;
+        this.maxFileSize = maxFileSize;
+    }
+
+    /**
+     * @param length the length in bytes of a value
+     * @return true if we store the value in the log
+     */
+    public boolean separates(int length) {
+        return threshold > 0 && length >= threshold;
+    }
+
+    /**
+     * This function opens the last file and reads the garbage counters, we call it at the first access
+     */
+    private synchronized void open() throws IOException {
+        if (active >= 0)
+            return;
+        int last = 0;
+        File[] files = path.toFile().listFiles();
+        if (files != null) {
+            for (File f : files) {
+                int id = idOf(f.getName());
+                if (id > last)
+                    last = id;
+            }
+        }
+        readDead();
+        FileChannel channel = channel(last, true);
+        end = channel.size();
+        if (end == 0) {
+            writeFully(channel, ByteBuffer.allocate(Integer.BYTES).putInt(MAGIC).flip(), 0);
+            end = Integer.BYTES;
+        }
+        active = last;
+    }
+
+    /**
+     * @return the number of the blob file, -1 if the file is not a blob file
+     */
+    private static int idOf(String fileName) {
+        if (!fileName.endsWith("." + EXTENSION))
+            return -1;
+        try {
+            return Integer.parseInt(fileName.substring(0, fileName.length() - EXTENSION.length() - 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private String fileNameOf(int id) {
+        return path.toAbsolutePath().toString() + "/" + id + "." + EXTENSION;
+    }
+
+    private FileChannel channel(int id, boolean create) throws IOException {
+        FileChannel channel = channels.get(id);
+        if (channel != null)
+            return channel;
+        synchronized (channels) {
+            channel = channels.get(id);
+            if (channel == null) {
+                channel = create
+                        ? FileChannel.open(Paths.get(fileNameOf(id)), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                        : FileChannel.open(Paths.get(fileNameOf(id)), StandardOpenOption.READ);
+                channels.put(id, channel);
+            }
+            return channel;
+        }
+    }
+
+    /**
+     * This function appends a value at the end of the last file
+     *
+     * @param key   the key of the value, we need it to collect the garbage
+     * @param value the bytes of the value
+     * @return the pointer that we store in the record of the segment
+     */
+    public synchronized BlobPointer append(String key, byte[] value) throws IOException {
+        open();
+        if (end > maxFileSize)
+            roll();
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = compression.compress(value);
+        byte[] stored = compressed != null ? compressed : value;
+        int length = Integer.BYTES + keyBytes.length + Byte.BYTES + Integer.BYTES + Integer.BYTES + stored.length;
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + length);
+        buffer.putInt(length).putInt(keyBytes.length).put(keyBytes);
+        buffer.put(compressed != null ? compression.getCodecId() : 0);
+        buffer.putInt(value.length).putInt(stored.length).put(stored);
+        buffer.flip();
+        writeFully(channel(active, true), buffer, end);
+        BlobPointer pointer = new BlobPointer(active, end + Integer.BYTES, length);
+        end += Integer.BYTES + length;
+        return pointer;
+    }
+
+    /**
+     * This function forces the last file to disk and starts a new one
+     */
+    private void roll() throws IOException {
+        channel(active, true).force(false);
+        FileChannel channel = channel(active + 1, true);
+        writeFully(channel, ByteBuffer.allocate(Integer.BYTES).putInt(MAGIC).flip(), 0);
+        end = Integer.BYTES;
+        active++;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * This function reads a value with a single positioned read
+     *
+     * @param pointer the pointer stored in the record of the segment
+     * @return the value
+     */
+    public String read(BlobPointer pointer) throws IOException {
+        // We must know the last file before we map a file
+        open();
+        ByteBuffer buffer = pointer.getFile() == active ? readFully(pointer) : mapped(pointer);
+        // We skip the key
+        int keyLength = buffer.getInt();
+        buffer.position(buffer.position() + keyLength);
+        byte codec = buffer.get();
+        int rawLength = buffer.getInt();
+        byte[] stored = new byte[buffer.getInt()];
+        buffer.get(stored);
+        byte[] value = codec == 0 ? stored : compression.decompress(codec, stored, rawLength);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    private ByteBuffer readFully(BlobPointer pointer) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(pointer.getLength());
+        long position = pointer.getOffset();
+        FileChannel channel = channel(pointer.getFile(), false);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0)
+                throw new EOFException();
+            position += read;
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * This function returns the blob from the mapping of its file, we map the file at the first read
+     */
+    private ByteBuffer mapped(BlobPointer pointer) throws IOException {
+        long limit = pointer.getOffset() + pointer.getLength();
+        if (limit > Integer.MAX_VALUE)
+            return readFully(pointer);
+        MappedByteBuffer m = mappings.get(pointer.getFile());
+        if (m == null) {
+            FileChannel channel = channel(pointer.getFile(), false);
+            m = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), Integer.MAX_VALUE));
+            MappedByteBuffer other = mappings.putIfAbsent(pointer.getFile(), m);
+            if (other != null)
+                m = other;
+        }
+        if (limit > m.capacity())
+            throw new EOFException();
+        ByteBuffer buffer = m.duplicate();
+        buffer.position((int) pointer.getOffset()).limit((int) limit);
+        return buffer.slice();
+    }
+
+    /**
+     * This function counts the blob as garbage, we call it when the record that points to it
+     * is not the last version of its key anymore
+     */
+    public void release(BlobPointer pointer) {
+        dead.computeIfAbsent(pointer.getFile(), id -> new AtomicLong()).addAndGet(Integer.BYTES + pointer.getLength());
+    }
+
+    /**
+     * @return a file that we don't append to anymore with at least MAX_GARBAGE garbage, -1 if there is none
+     */
+    public int pickGarbage() throws IOException {
+        open();
+        for (Map.Entry<Integer, AtomicLong> e : dead.entrySet()) {
+            int id = e.getKey();
+            if (id == active)
+                continue;
+            long size = new File(fileNameOf(id)).length() - Integer.BYTES;
+            if (size <= 0 || e.getValue().get() >= MAX_GARBAGE * size)
+                return id;
+        }
+        return -1;
+    }
+
+    /**
+     * This function reads a file from the start and passes the key and the pointer of every blob to the consumer
+     *
+     * @param id the number of the file
+     */
+    public void scan(int id, BiConsumer<String, BlobPointer> consumer) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileNameOf(id))))) {
+            if (in.readInt() != MAGIC)
+                throw new IOException("The file " + fileNameOf(id) + " is not a blob file");
+            long position = Integer.BYTES;
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                byte[] key = new byte[in.readInt()];
+                in.readFully(key);
+                in.skipBytes(length - Integer.BYTES - key.length);
+                consumer.accept(new String(key, StandardCharsets.UTF_8), new BlobPointer(id, position + Integer.BYTES, length));
+                position += Integer.BYTES + length;
+            }
+        } catch (FileNotFoundException e) {
+            dead.remove(id);
+        } catch (EOFException e) {
+            // The last blob is incomplete, no record points to it
+        }
+    }
+
+    /**
+     * This function deletes a file, the caller has moved its live blobs to the last file
+     */
+    public void delete(int id) {
+        mappings.remove(id);
+        FileChannel channel = channels.remove(id);
+        try {
+            if (channel != null)
+                channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        new File(fileNameOf(id)).delete();
+        dead.remove(id);
+    }
+
+    /**
+     * This function forces the last file to disk, the other files were forced when we started the next one
+     */
+    public synchronized void force() throws IOException {
+        if (active >= 0)
+            channel(active, true).force(false);
+    }
+
+    /**
+     * This function saves the garbage counters and closes the files
+     */
+    public synchronized void close() {
+        if (active >= 0)
+            writeDead();
+        closeChannels();
+    }
+
+    /**
+     * This function deletes all the blob files
+     */
+    public synchronized void clear() {
+        closeChannels();
+        File[] files = path.toFile().listFiles();
+        if (files != null) {
+            for (File f : files) {
+                if (idOf(f.getName()) >= 0)
+                    f.delete();
+            }
+        }
+        new File(path.toAbsolutePath().toString(), DEAD_NAME).delete();
+        dead.clear();
+    }
+
+    private void closeChannels() {
+        for (FileChannel channel : channels.values()) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        channels.clear();
+        mappings.clear();
+        active = -1;
+    }
+
+    private void readDead() {
+        File file = new File(path.toAbsolutePath().toString(), DEAD_NAME);
+        if (!file.exists())
+            return;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(" ");
+                int id = Integer.parseInt(parts[0]);
+                if (new File(fileNameOf(id)).exists())
+                    dead.computeIfAbsent(id, i -> new AtomicLong()).addAndGet(Long.parseLong(parts[1]));
+            }
+        } catch (IOException | RuntimeException e) {
+            // The counters only decide when we collect a file, we start again from zero
+            dead.clear();
+        }
+    }
+
+    private void writeDead() {
+        try (PrintWriter writer = new PrintWriter(new FileWriter(new File(path.toAbsolutePath().toString(), DEAD_NAME)))) {
+            dead.forEach((id, bytes) -> writer.println(id + " " + bytes.get()));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package de.tum.i13.server.FileStorage;
+
+import java.util.Objects;
+
+/**
+ * This class is used to store where a value is stored in the BlobLog.
+ * The record of the Segment contains only the pointer, the value is read with a
+ * single positioned read in the blob file.
+ *
+ * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
+ */
+public class BlobPointer {
+    // Bytes of a pointer in a record of the segment
+    static final int BYTES = Integer.BYTES + Long.BYTES + Integer.BYTES;
+
+    private final int file;
+    private final long offset;
+    private final int length;
+
+    public BlobPointer(int file, long offset, int length) {
+        this.file = file;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * @return the number of the blob file that contains the value
+     */
+    public int getFile() {
+        return file;
+    }
+
+    /**
+     * @return the position of the blob in the file
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return the length of the blob, the key and the value
+     */
+    public int getLength() {
+        return length;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof BlobPointer)) return false;
+        BlobPointer that = (BlobPointer) o;
+        return file == that.file && offset == that.offset && length == that.length;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(file, offset, length);
+    }
+}
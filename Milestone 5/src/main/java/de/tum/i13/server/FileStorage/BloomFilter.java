@@ -0,0 +1,136 @@
+package de.tum.i13.server.FileStorage;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * This class is a Bloom filter on the keys stored in a file.
+ * If mightContain returns false the key is not stored in the file, so we can answer
+ * a lookup of an absent key without reading the file.
+ * The filter is stored next to the file, with a stamp that tells us which version of the file
+ * it describes (e.g. the size of the file when we saved it).
+ * The filter is not synchronized: the owner of the filter does not call add while other threads call mightContain.
+ *
+ * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
+ */
+public class BloomFilter {
+    static final String EXTENSION = "bloom";
+    private static final int MAGIC = 0x4B56424C;
+    private static final int BITS_PER_KEY = 10;
+    private static final int HASHES = 7;
+
+    private final long[] bits;
+    private final int numBits;
+    private final int numHashes;
+
+    /**
+     * @param expectedKeys the number of keys that we want to add to the filter
+     */
+    public BloomFilter(int expectedKeys) {
+        this(new long[(Math.max(expectedKeys, 1) * BITS_PER_KEY + Long.SIZE - 1) / Long.SIZE], HASHES);
+    }
+
+    private BloomFilter(long[] bits, int numHashes) {
+        this.bits = bits;
+        this.numBits = bits.length * Long.SIZE;
+        this.numHashes = numHashes;
+    }
+
+    /**
+     * This function adds a key to the filter
+     */
+    public void add(String key) {
+        long h = hash(key);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        for (int i = 0; i < numHashes; i++) {
+            int bit = Math.floorMod(h1 + i * h2, numBits);
+            bits[bit / Long.SIZE] |= 1L << (bit % Long.SIZE);
+        }
+    }
+
+    /**
+     * This function checks if a key could be in the file
+     *
+     * @return false if the key is not in the file, true if the key could be in the file
+     */
+    public boolean mightContain(String key) {
+        long h = hash(key);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        for (int i = 0; i < numHashes; i++) {
+            int bit = Math.floorMod(h1 + i * h2, numBits);
+            if ((bits[bit / Long.SIZE] & (1L << (bit % Long.SIZE))) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * This function stores the filter on disk, we write a new file and then we move it over the old one
+     *
+     * @param fileName the name of the file where we store the filter
+     * @param stamp    the version of the data file described by the filter
+     */
+    public synchronized void write(String fileName, long stamp) throws IOException {
+        Path tmp = Paths.get(fileName + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp.toFile())))) {
+            out.writeInt(MAGIC);
+            out.writeLong(stamp);
+            out.writeInt(numHashes);
+            out.writeInt(bits.length);
+            for (long word : bits)
+                out.writeLong(word);
+        }
+        Files.move(tmp, Paths.get(fileName), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * This function reads a filter stored on disk
+     *
+     * @param fileName the name of the file where we stored the filter
+     * @param stamp    the version of the data file that we expect
+     * @return the filter, null if the file does not exist, is corrupted or describes another version of the data file
+     */
+    public static BloomFilter read(String fileName, long stamp) {
+        File file = new File(fileName);
+        if (!file.exists())
+            return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readLong() != stamp)
+                return null;
+            int numHashes = in.readInt();
+            long[] bits = new long[in.readInt()];
+            for (int i = 0; i < bits.length; i++)
+                bits[i] = in.readLong();
+            return new BloomFilter(bits, numHashes);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the name of the file where we store the filter of the data file
+     */
+    static String fileNameOf(String dataFile) {
+        return dataFile + "." + EXTENSION;
+    }
+
+    // 64 bit FNV-1a, the two halves are used as the two hash functions of the double hashing
+    private static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        // final mix so that the high bits depend on all the bytes
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
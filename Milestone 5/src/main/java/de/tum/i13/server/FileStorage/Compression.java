@@ -0,0 +1,157 @@
+package de.tum.i13.server.FileStorage;
+
+import de.tum.i13.shared.Constants;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class decides which values of a storage are compressed on disk and counts how well they compress.
+ * We compress a value only if it has at least threshold bytes and if the compressed value is smaller.
+ * The segments of a storage share the same Compression, so the statistics are for the whole storage.
+ *
+ * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
+ */
+public class Compression {
+    // The values are never compressed, we still read the values compressed before
+    public static final Compression NONE = new Compression(null, 0);
+    private static final ValueCodec[] CODECS = {new DeflateCodec()};
+
+    private final ValueCodec codec;
+    private final int threshold;
+    // Number of values that we compressed, their size before and after the compression and the time that it took
+    private final AtomicLong compressed = new AtomicLong();
+    private final AtomicLong rawBytes = new AtomicLong();
+    private final AtomicLong storedBytes = new AtomicLong();
+    private final AtomicLong compressNanos = new AtomicLong();
+    private final AtomicLong decompressed = new AtomicLong();
+    private final AtomicLong decompressNanos = new AtomicLong();
+
+    /**
+     * @param codec     the codec that compresses the values, null to store all the values as they are
+     * @param threshold the minimum length in bytes of a value that we compress
+     */
+    public Compression(ValueCodec codec, int threshold) {
+        this.codec = codec;
+        this.threshold = threshold;
+    }
+
+    /**
+     * @param name      DEFLATE or NONE
+     * @param threshold the minimum length in bytes of a value that we compress
+     */
+    public static Compression of(String name, int threshold) {
+        if (name == null || name.equals(Constants.COMPRESSION_NONE))
+            return new Compression(null, threshold);
+        for (ValueCodec codec : CODECS) {
+            if (codec.getName().equals(name))
+                return new Compression(codec, threshold);
+        }
+        throw new IllegalArgumentException("Unknown codec " + name);
+    }
+
+    /**
+     * This function compresses a value if it is long enough
+     *
+     * @param data the bytes of the value
+     * @return the compressed bytes, null if we store the value as it is
+     */
+    byte[] compress(byte[] data) throws IOException {
+        if (codec == null || data.length < threshold)
+            return null;
+        long start = System.nanoTime();
+        byte[] result = codec.compress(data);
+        compressNanos.addAndGet(System.nanoTime() - start);
+        if (result.length >= data.length)
+            return null;
+        compressed.incrementAndGet();
+        rawBytes.addAndGet(data.length);
+        storedBytes.addAndGet(result.length);
+        return result;
+    }
+
+    /**
+     * @return the id of the codec that we store in the record of a compressed value
+     */
+    byte getCodecId() {
+        return codec.getId();
+    }
+
+    /**
+     * This function decompresses a value with the codec that compressed it
+     *
+     * @param id     the id of the codec stored in the record
+     * @param data   the compressed bytes
+     * @param length the length of the value before the compression
+     */
+    byte[] decompress(byte id, byte[] data, int length) throws IOException {
+        for (ValueCodec c : CODECS) {
+            if (c.getId() == id) {
+                long start = System.nanoTime();
+                byte[] result = c.decompress(data, length);
+                decompressNanos.addAndGet(System.nanoTime() - start);
+                decompressed.incrementAndGet();
+                return result;
+            }
+        }
+        throw new IOException("Unknown codec " + id);
+    }
+
+    /**
+     * This function compresses a block of bytes that we send to another server.
+     * The block starts with the id of the codec (0 if we send the bytes as they are) and the length
+     * of the bytes before the compression, so a server started with another codec can read it.
+     *
+     * @param data the bytes that we want to send
+     * @return the block that we send
+     */
+    public byte[] pack(byte[] data) throws IOException {
+        byte[] compressedData = compress(data);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(5 + (compressedData == null ? data.length : compressedData.length));
+        DataOutputStream out = new DataOutputStream(bos);
+        out.writeByte(compressedData == null ? 0 : getCodecId());
+        out.writeInt(data.length);
+        out.write(compressedData == null ? data : compressedData);
+        return bos.toByteArray();
+    }
+
+    /**
+     * This function reads a block written by pack
+     *
+     * @param block the block that we received
+     * @return the bytes before the compression
+     */
+    public byte[] unpack(byte[] block) throws IOException {
+        if (block.length < 5)
+            throw new IOException("The block is truncated");
+        ByteBuffer buffer = ByteBuffer.wrap(block);
+        byte id = buffer.get();
+        int length = buffer.getInt();
+        byte[] data = Arrays.copyOfRange(block, 5, block.length);
+        return id == 0 ? data : decompress(id, data, length);
+    }
+
+    /**
+     * @return the size of the compressed values divided by their size before the compression, 1 if we compressed nothing
+     */
+    public double getRatio() {
+        long raw = rawBytes.get();
+        return raw == 0 ? 1 : (double) storedBytes.get() / raw;
+    }
+
+    /**
+     * @return a line with the statistics of the compression, we write it in the log
+     */
+    public String report() {
+        if (codec == null)
+            return "Compression disabled, decompressed " + decompressed.get() + " values";
+        return String.format("Compression %s (threshold %d bytes): %d values, %d -> %d bytes, ratio %.3f, "
+                        + "compress %.1f ms, %d values decompressed in %.1f ms",
+                codec.getName(), threshold, compressed.get(), rawBytes.get(), storedBytes.get(), getRatio(),
+                compressNanos.get() / 1e6, decompressed.get(), decompressNanos.get() / 1e6);
+    }
+}
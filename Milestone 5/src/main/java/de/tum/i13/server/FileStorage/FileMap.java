@@ -3,85 +3,184 @@ package de.tum.i13.server.FileStorage;
 
 import de.tum.i13.shared.InvalidPasswordException;
 import de.tum.i13.shared.Pair;
+import de.tum.i13.shared.Token;
 
 import java.io.*;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-
-import static de.tum.i13.shared.Utility.byteToHex;
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * This class is used to store the data on disk.
- * It is used to serialize and deserialize an HashMap on disk and to
- * add or remove data from the HashMap. We store the filename of the file
- * where we stored the data so that we are always able to recover it.
+ * The data is stored in a Segment, an append-only log: every put and every delete
+ * is appended to the file, so a write does not rewrite the whole file. We store the filename
+ * of the file where we stored the data so that we are always able to recover it.
+ * In memory we keep an index with the position of the last version of each key,
+ * so reading a value is a single positioned read and we never replay the whole file to answer a get.
+ * A Bloom filter on the keys, stored next to the segment, tells us when a key is surely not in the file.
+ * When the FileMap is restored from the Manifest the index is built only at the first access to the segment.
+ * Together with the index we keep the keys sorted by their Token, so we can return the pairs of a range of
+ * the ring without computing the hash of every key of the file.
  * When we put a new pair in a file we must check if the number of key,value stored in that
  * file is bigger than the maxSize parameter. If is bigger then we split the
- * file in two smaller files.
+ * file in two smaller files. The FileStorage merges the files that become too small and
+ * after the merge the FileMap is dropped: its reads throw FileNotFoundException.
+ * <p>
+ * The large values are stored in the BlobLog and the segment contains only their pointer. The splits,
+ * the merges and the rewrites move the records of the segment as they are, so they never copy these values.
+ * When a key is updated or deleted we tell the BlobLog that the blob of the old version is garbage.
+ * <p>
+ * Every FileMap has a read-write lock: the reads share the read lock and run in parallel,
+ * the writes take the write lock. The FileStorage takes the same lock to keep the FileMap
+ * while it updates the TreeMap after a split.
  *
  * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
  */
 public class FileMap implements FileMapInterface {
+    static final String EXTENSION = "seg";
+    // We rewrite the segment when it contains more garbage records than this
+    private static final int MAX_GARBAGE = 64;
+    // The keys are sorted by token, two keys with the same token are sorted by key
+    private static final Comparator<Pair<Token, String>> TOKEN_ORDER =
+            Comparator.comparing((Pair<Token, String> p) -> p.getFirst()).thenComparing(Pair::getSecond);
+
     private int maxSize;
     private String fileName;
-    private String hash;
+    private volatile Token hash;
     private String path;
+    private Segment segment;
+    private Compression compression;
+    // null if all the values are stored in the segment
+    private BlobLog blobs;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // null until we read the segment
+    private volatile HashMap<String, IndexEntry> index;
+    // The keys of the index sorted by token, null until we read the segment
+    private TreeSet<Pair<Token, String>> tokens;
+    private BloomFilter filter;
+    // Number of keys stored in the Manifest, we use it until we load the index
+    private int keyCount;
+    // True when the pairs were moved to another FileMap and the files were deleted
+    private boolean dropped;
 
     /**
      * Useful during the restart process to read the data from disk
      */
     public FileMap(String fileName, int MaxSize, Path path) throws FileNotFoundException {
+        this(fileName, MaxSize, path, Compression.NONE, null);
+    }
 
-        HashMap<String, Pair<String, String>> hMap = read(fileName);
-        if (hMap.size() > 0) {
-            this.hash = getLastHash(hMap);
-        } else {
-            this.hash = null;
-        }
-        this.fileName = fileName;
+    /**
+     * @param compression decides which values we compress when we write them
+     * @param blobs       the log where we store the large values, null to store all the values in the segment
+     */
+    public FileMap(String fileName, int MaxSize, Path path, Compression compression, BlobLog blobs) throws FileNotFoundException {
+
+        this.compression = compression;
+        this.blobs = blobs;
+        this.segment = new Segment(fileName, compression, blobs);
+        setIndex(segment.readIndex());
         this.maxSize = MaxSize;
+        loadFilter();
+        this.hash = getLastHash();
+        this.fileName = fileName;
         this.path = path.toAbsolutePath().toString();
     }
 
+    /**
+     * Useful during the restart process when the FileMap is listed in the Manifest,
+     * we don't read the segment until we need it
+     */
+    public FileMap(String fileName, Token hash, int keyCount, int maxSize, Path path) throws FileNotFoundException {
+        this(fileName, hash, keyCount, maxSize, path, Compression.NONE, null);
+    }
+
+    public FileMap(String fileName, Token hash, int keyCount, int maxSize, Path path, Compression compression, BlobLog blobs) throws FileNotFoundException {
+        this.compression = compression;
+        this.blobs = blobs;
+        this.segment = new Segment(fileName, compression, blobs);
+        this.fileName = fileName;
+        this.hash = hash;
+        this.keyCount = keyCount;
+        this.maxSize = maxSize;
+        this.path = path.toAbsolutePath().toString();
+        this.filter = BloomFilter.read(BloomFilter.fileNameOf(fileName), new File(fileName).length());
+        if (filter == null)
+            loadFilter();
+    }
+
     /**
      * Used to add a list of pair to the FileMap
      */
     public FileMap(int maxSize, ArrayList<Pair<String, Pair<String, String>>> list, Path path) {
+        this(maxSize, list, path, Compression.NONE, null);
+    }
 
-        HashMap<String, Pair<String, String>> hashMap = new HashMap<>();
-        for (Pair<String, Pair<String, String>> p : list) {
-            hashMap.putIfAbsent(p.getFirst(), p.getSecond());
+    public FileMap(int maxSize, ArrayList<Pair<String, Pair<String, String>>> list, Path path, Compression compression, BlobLog blobs) {
+        this(maxSize, path, compression, blobs);
+        HashMap<String, byte[]> records = new HashMap<>();
+        try {
+            for (Pair<String, Pair<String, String>> p : list) {
+                if (!records.containsKey(p.getFirst()))
+                    records.put(p.getFirst(), segment.encodePut(p.getFirst(), p.getSecond()));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
         }
-        this.hash = getLastHash(hashMap);
+        write(records);
+        this.hash = getLastHash();
+    }
+
+    /**
+     * Used by the split to move the records of a FileMap in a new FileMap
+     */
+    private FileMap(int maxSize, HashMap<String, byte[]> records, Path path, Compression compression, BlobLog blobs) {
+        this(maxSize, path, compression, blobs);
+        write(records);
+        this.hash = getLastHash();
+    }
+
+    /**
+     * This constructor chooses the name of a new segment, the caller writes it
+     */
+    private FileMap(int maxSize, Path path, Compression compression, BlobLog blobs) {
         this.maxSize = maxSize;
         this.path = path.toAbsolutePath().toString();
         long randomHash = String.valueOf(Math.random()).hashCode();
-        fileName = path.toAbsolutePath().toString() + "/" + randomHash + ".txt";
-        write(hashMap);
+        fileName = path.toAbsolutePath().toString() + "/" + randomHash + "." + EXTENSION;
+        this.compression = compression;
+        this.blobs = blobs;
+        segment = new Segment(fileName, compression, blobs);
     }
 
     /**
      * Useful when we want to create a FileMap with only one element
      */
     public FileMap(int maxSize, String key, Pair<String, String> value, Path path) {
-        String password = null;
+        this(maxSize, key, value, path, Compression.NONE, null);
+    }
 
-        HashMap<String, Pair<String, String>> hashMap = new HashMap<>();
-        hashMap.putIfAbsent(key, value);
-        this.maxSize = maxSize;
-        this.path = path.toAbsolutePath().toString();
-        this.hash = getLastHash(hashMap);
-        long randomHash = String.valueOf(Math.random()).hashCode();
-        fileName = path.toAbsolutePath().toString() + "/" + randomHash + ".txt";
-        write(hashMap);
+    public FileMap(int maxSize, String key, Pair<String, String> value, Path path, Compression compression, BlobLog blobs) {
+        this(maxSize, new ArrayList<>(Collections.singletonList(new Pair<>(key, value))), path, compression, blobs);
     }
 
 
+    /**
+     * @return the lock that the reads of this FileMap share
+     */
+    public Lock readLock() {
+        return lock.readLock();
+    }
+
+    /**
+     * @return the lock that a write of this FileMap holds
+     */
+    public Lock writeLock() {
+        return lock.writeLock();
+    }
+
     /**
      * @return the name of the file associated with this FileMap
      */
@@ -94,77 +193,89 @@ public class FileMap implements FileMapInterface {
      *
      * @return the highest hash
      */
-    public String getHash() {
+    public Token getHash() {
         return hash;
     }
 
     /**
-     * This function is used to get the the highest hash of the keys stored in the FileMap
+     * We don't take the lock, so we can write the Manifest while we hold the lock of another FileMap.
+     * During a write the result can be old.
      *
-     * @param hMap the HashMap where we want to search
-     * @return the highest hash of the keys stored in the FileMap
+     * @return the number of keys stored in this FileMap
      */
-    private synchronized String getLastHash(HashMap<String, Pair<String, String>> hMap) {
-        ArrayList<Pair<String, String>> hashes = new ArrayList<>();
-        hMap.forEach((key, value) -> hashes.add(new Pair<>(key, computeHash(key))));
-        hashes.sort((o1, o2) -> -o1.getSecond().compareTo(o1.getFirst()));
-        return hashes.get(hMap.size() - 1).getSecond();
+    public int getKeyCount() {
+        HashMap<String, IndexEntry> index = this.index;
+        return index != null ? index.size() : keyCount;
     }
 
-    private String computeHash(String key) {
-        MessageDigest md = null;
-        try {
-            md = MessageDigest.getInstance("MD5");
-            byte[] messageDigest = md.digest(key.getBytes());
-            return byteToHex(messageDigest);
-        } catch (NoSuchAlgorithmException e) {
-            e.printStackTrace();
-            return null;
-        }
+    /**
+     * Like getKeyCount we don't take the lock.
+     *
+     * @return the number of records of the segment that are not the last version of a live key,
+     * 0 if we have not read the segment yet
+     */
+    public int getGarbage() {
+        HashMap<String, IndexEntry> index = this.index;
+        return index != null ? segment.getRecords() - index.size() : 0;
+    }
+
+    /**
+     * @return the size of the segment in bytes
+     */
+    public long getByteSize() {
+        return new File(fileName).length();
+    }
+
+    /**
+     * This function is used to get the the highest hash of the keys stored in the FileMap
+     *
+     * @return the highest hash of the keys stored in the FileMap, null if the FileMap is empty
+     */
+    private Token getLastHash() {
+        return tokens.isEmpty() ? null : tokens.last().getFirst();
     }
 
 
     /**
      * This function is used to split the HashMap in two smaller files
      *
-     * @param hMap the HashMap that we want to split
+     * @param hMap the records of the HashMap that we want to split
      * @return rebalanceReturn contains the new FileMap, the hash of the newFilemap and
      * the hash of the old filemap
      */
-    private synchronized rebalanceReturn rebalance(HashMap<String, Pair<String, String>> hMap) {
+    private rebalanceReturn rebalance(HashMap<String, byte[]> hMap) {
         // Array with the hash of each of the key that is stored in this file
-        ArrayList<Pair<String, String>> hashes = new ArrayList<>();
-        hMap.forEach((key, value) -> hashes.add(new Pair<>(key, computeHash(key))));
+        ArrayList<Pair<String, Token>> hashes = new ArrayList<>();
+        hMap.forEach((key, value) -> hashes.add(new Pair<>(key, Token.of(key))));
         // we sort the hashes and then we split the list in two parts
-
-        // TEST
-        hashes.sort((o1, o2) -> -o1.getSecond().compareTo(o1.getFirst()));
+        hashes.sort(Comparator.comparing(Pair::getSecond));
 
         int index = hashes.size() / 2;
-        String firstHash = hashes.get(index).getSecond();
-        String lastHash = hashes.get(hMap.size() - 1).getSecond();
+        // The new FileMap takes the first half, so it is identified by the highest hash of this half
+        Token firstHash = hashes.get(index - 1).getSecond();
+        Token lastHash = hashes.get(hMap.size() - 1).getSecond();
 
         // First part of the elements
-        List<Pair<String, String>> head = hashes.subList(0, index);
+        List<Pair<String, Token>> head = hashes.subList(0, index);
 
-        ArrayList<Pair<String, Pair<String, String>>> newList = new ArrayList<>();
-        // We add the key,value pair of the elements of the first part of the list
+        HashMap<String, byte[]> newList = new HashMap<>();
+        // We add the records of the elements of the first part of the list
         // to newList
         head.forEach((p) -> {
             String key = p.getFirst();
-            newList.add(new Pair<String, Pair<String, String>>(key, hMap.get(key)));
+            newList.put(key, hMap.get(key));
         });
 
-        // we create a new filemap using the key,value pair that are in newList
+        // we create a new filemap using the records that are in newList
         Path path = Paths.get(this.path);
 
-        FileMap fm = new FileMap(this.maxSize, newList, path);
+        FileMap fm = new FileMap(this.maxSize, newList, path, compression, blobs);
 
         // We remove from the HashMap the data that are stored in the first part of the list
         // At the end we have a new FileMap that contains the elements in the first half of the list
         // and we have a modified HashMap that contains only the elements in the second part of the list
         removeInBatch(hMap, head);
-        this.hash = this.getLastHash(hMap);
+        this.hash = this.getLastHash();
 
         // We return the new FileMap and firstHash so that we can add a pair
         // <firstHash, fm> to the treeMap. We also return lastHash that is the hash
@@ -174,13 +285,13 @@ public class FileMap implements FileMapInterface {
 
     /**
      * This function is used to remove a list of data from an HashMap and then
-     * to serialize the HashMap on disk
+     * to rewrite the segment with the remaining pairs
      *
      * @param hMap the hashmap that we want to modify
      * @param hash the list of pairs that we want to remove from the Hashmap.
      */
-    private void removeInBatch(HashMap<String, Pair<String, String>> hMap, List<Pair<String, String>> hash) {
-        for (Pair<String, String> h : hash) {
+    private void removeInBatch(HashMap<String, byte[]> hMap, List<Pair<String, Token>> hash) {
+        for (Pair<String, Token> h : hash) {
             hMap.remove(h.getFirst());
         }
         write(hMap);
@@ -193,38 +304,54 @@ public class FileMap implements FileMapInterface {
      * @return the value associated with key, null if the key is not present in the database
      */
 
-    public synchronized String remove(String key, Object... password) throws FileNotFoundException, InvalidPasswordException {
-        HashMap<String, Pair<String, String>> hMap = read();
-        Pair<String, String> removed = null;
-        Pair<String, String> retrievedData = hMap.get(key);
-        if (retrievedData == null) {
-            return null;
-        } else if (retrievedData.getSecond() == null) {
-            removed = hMap.remove(key);
-            if (removed != null)
-                write(hMap);
-        } else {
-            if (password.length == 0)
-                throw new InvalidPasswordException();
-            else if (retrievedData.getSecond().equals(password[0])) {
-                removed = hMap.remove(key);
-                if (removed != null)
-                    write(hMap);
+    public String remove(String key, Object... password) throws FileNotFoundException, InvalidPasswordException {
+        lock.writeLock().lock();
+        try {
+            Pair<String, String> removed = null;
+            Pair<String, String> retrievedData = readValue(key);
+            if (retrievedData == null) {
+                return null;
+            } else if (retrievedData.getSecond() == null) {
+                removed = retrievedData;
+                appendDelete(key);
             } else {
-                throw new InvalidPasswordException();
+                if (password.length == 0)
+                    throw new InvalidPasswordException();
+                else if (retrievedData.getSecond().equals(password[0])) {
+                    removed = retrievedData;
+                    appendDelete(key);
+                } else {
+                    throw new InvalidPasswordException();
+                }
             }
+            return removed != null ? removed.getFirst() : null;
+        } finally {
+            lock.writeLock().unlock();
         }
-        return removed != null ? removed.getFirst() : null;
     }
 
 
+    /**
+     * This function removes a key without checking its password,
+     * we use it when we replay the write-ahead log.
+     */
+    public void delete(String key) throws FileNotFoundException {
+        lock.writeLock().lock();
+        try {
+            if (readValue(key) != null)
+                appendDelete(key);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
     /**
      * This function is used to add a pair into the database stored on disk.
-     * First of all we deserilize the Hashmap from disk.
-     * When we add a new pair into the HashMap we check if the number of pairs is
+     * First of all we check in the index if the key is already stored in the file.
+     * When we add a new pair we check if the number of pairs is
      * bigger than a certain paramer, if so we call the rebalance method to
      * split the file in two smaller files.
-     * At the end we serialize on disk the HashMap that contains the newly added pair.
+     * Otherwise we append the newly added pair at the end of the segment.
      *
      * @param key   the key that we add to insert in our database
      * @param value the value that we add to insert in our database
@@ -233,46 +360,150 @@ public class FileMap implements FileMapInterface {
      * the two filemap (the old one and the new one).
      * Returns a rebalanceReturn with null parameters if we updated tha value
      */
-    public synchronized rebalanceReturn addPair(String key, Pair<String, String> value) throws InvalidPasswordException {
+    public rebalanceReturn addPair(String key, Pair<String, String> value) throws InvalidPasswordException {
+        return addPair(key, value, true);
+    }
 
-        rebalanceReturn retVal = null;
-        if (this.maxSize == 1) {
-            Path path = Paths.get(this.path);
-            FileMap fm = new FileMap(this.maxSize, key, value, path);
-            retVal = new rebalanceReturn(null, null, fm);
-        } else {
-            HashMap<String, Pair<String, String>> hMap = null;
-            try {
-                hMap = read();
-                // Check if we have the key in the db
-                if (hMap.containsKey(key)) {
-                    Pair<String, String> retrievedValue = hMap.get(key);
-                    // check if the value contains a password and if it is a valid password
-                    if ((value.getSecond() == null || !retrievedValue.getSecond().equals(value.getSecond())) && retrievedValue.getSecond() != null) {
-                        throw new InvalidPasswordException();
-                    }
+    /**
+     * This function is used to add a pair into the database stored on disk.
+     * If checkPassword is false we don't check the password of the stored pair,
+     * we use it when we replay the write-ahead log.
+     */
+    public rebalanceReturn addPair(String key, Pair<String, String> value, boolean checkPassword) throws InvalidPasswordException {
+        lock.writeLock().lock();
+        try {
+
+            rebalanceReturn retVal = null;
+            if (this.maxSize == 1) {
+                Path path = Paths.get(this.path);
+                FileMap fm = new FileMap(this.maxSize, key, value, path, compression, blobs);
+                retVal = new rebalanceReturn(null, null, fm);
+            } else {
+                try {
+                    load();
+                    // Check if we have the key in the db
+                    Pair<String, String> retrievedValue = readValue(key);
+                    if (retrievedValue != null) {
+                        // check if the value contains a password and if it is a valid password
+                        if (checkPassword && (value.getSecond() == null || !retrievedValue.getSecond().equals(value.getSecond())) && retrievedValue.getSecond() != null) {
+                            throw new InvalidPasswordException();
+                        }
 
-                    // we change the data in the db
-                    if (hMap.put(key, value) != null) {
                         // In this case we update the value
-                        write(hMap);
+                        appendPut(key, value);
                         return new rebalanceReturn(null, null, null);
                     }
-                } else {
-                    hMap.put(key, value);
+
+                    if (index.size() + 1 > this.maxSize) {
+                        HashMap<String, byte[]> hMap = records();
+                        hMap.put(key, segment.encodePut(key, value));
+                        retVal = rebalance(hMap);
+                    } else
+                        appendPut(key, value);
+                } catch (FileNotFoundException e) {
+
+                } catch (IOException e) {
+                    e.printStackTrace();
                 }
 
-                if (hMap.size() > this.maxSize)
-                    retVal = rebalance(hMap);
-                else
-                    write(hMap);
-            } catch (FileNotFoundException e) {
+            }
+
+            return retVal;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
 
+    /**
+     * This function adds a list of pairs to the FileMap without checking the passwords,
+     * we use it when we receive the data of another server.
+     * All the pairs are appended to the segment with a single write and if the FileMap
+     * contains too many pairs we split it only once, at the end.
+     *
+     * @param pairs the pairs <key, <value, password>> that we want to store, if a key appears
+     *              more than once the last value wins
+     * @return the new FileMaps created by the split, they contain the lowest hashes.
+     * The list is empty if we didn't split the file
+     */
+    public ArrayList<FileMap> addPairs(List<Pair<String, Pair<String, String>>> pairs) {
+        lock.writeLock().lock();
+        try {
+            ArrayList<Pair<String, byte[]>> records = new ArrayList<>();
+            try {
+                for (Pair<String, Pair<String, String>> p : pairs)
+                    records.add(new Pair<>(p.getFirst(), segment.encodePut(p.getFirst(), p.getSecond())));
+            } catch (IOException e) {
+                e.printStackTrace();
+                return new ArrayList<>();
             }
+            return addRecords(records);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
 
+    /**
+     * This function adds the records of another FileMap of the same FileStorage, like addPairs does.
+     * We use it to merge two FileMaps without reading the values stored in the BlobLog.
+     *
+     * @param records the pairs <key, record> that we want to store
+     * @return the new FileMaps created by the split
+     */
+    ArrayList<FileMap> addRecords(List<Pair<String, byte[]>> records) {
+        lock.writeLock().lock();
+        try {
+            ArrayList<FileMap> created = new ArrayList<>();
+            try {
+                load();
+                ArrayList<IndexEntry> entries = segment.appendRecords(records);
+                for (int i = 0; i < records.size(); i++) {
+                    String key = records.get(i).getFirst();
+                    IndexEntry old = index.put(key, entries.get(i));
+                    if (old == null)
+                        tokens.add(new Pair<>(Token.of(key), key));
+                    else
+                        release(old);
+                    filter.add(key);
+                }
+                if (index.size() > this.maxSize)
+                    created = split(records());
+                else
+                    compactIfNeeded();
+                this.hash = getLastHash();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            return created;
+        } finally {
+            lock.writeLock().unlock();
         }
+    }
 
-        return retVal;
+    /**
+     * This function splits the pairs in parts of about maxSize / 2 keys sorted by hash,
+     * like rebalance does when a single put fills the file.
+     * This FileMap keeps the part with the highest hashes, so its hash does not change.
+     *
+     * @param hMap the records of all the pairs stored in this FileMap
+     * @return the new FileMaps with the other parts
+     */
+    private ArrayList<FileMap> split(HashMap<String, byte[]> hMap) {
+        ArrayList<FileMap> created = new ArrayList<>();
+        int size = tokens.size();
+        int parts = Math.max(2, size / Math.max(1, this.maxSize / 2));
+        Path path = Paths.get(this.path);
+        Iterator<Pair<Token, String>> it = tokens.iterator();
+        int done = 0;
+        for (int part = 0; part < parts - 1; part++) {
+            HashMap<String, byte[]> list = new HashMap<>();
+            for (int limit = (int) ((long) size * (part + 1) / parts); done < limit; done++) {
+                String key = it.next().getSecond();
+                list.put(key, hMap.remove(key));
+            }
+            created.add(new FileMap(this.maxSize, list, path, compression, blobs));
+        }
+        write(hMap);
+        return created;
     }
 
     /**
@@ -281,34 +512,70 @@ public class FileMap implements FileMapInterface {
      * @param key The key whose associated value has to be returned
      * @return the value associated with key, null if the key is not present in the database
      */
-    public synchronized String getValue(String key, Object... p) throws FileNotFoundException {
-        HashMap<String, Pair<String, String>> hMap = read();
-        Pair<String, String> r = hMap.get(key);
-        if (r == null)
+    public String getValue(String key, Object... p) throws FileNotFoundException {
+        lock.readLock().lock();
+        try {
+            Pair<String, String> r = readValue(key);
+            if (r == null)
+                return null;
+            else if (r.getSecond() == null)
+                return r.getFirst();
+            else {
+                if (p.length > 0) {
+                    String password = (String) p[0];
+                    if (r.getSecond().equals(password)) {
+                        return r.getFirst();
+                    }
+                }
+            }
             return null;
-        else if (r.getSecond() == null)
-            return r.getFirst();
-        else {
-            if (p.length > 0) {
-                String password = (String) p[0];
-                if (r.getSecond().equals(password)) {
-                    return r.getFirst();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * This function returns the pairs whose token is in the range [start, end].
+     * The range must not wrap around the end of the ring.
+     * We visit only the keys of the range and we read their values with a positioned read.
+     *
+     * @param start the start of the range
+     * @param end   the end of the range
+     * @return the pairs <key, <value, password>> sorted by token
+     */
+    public ArrayList<Pair<String, Pair<String, String>>> getRange(Token start, Token end) throws FileNotFoundException {
+        lock.readLock().lock();
+        try {
+            ArrayList<Pair<String, Pair<String, String>>> range = new ArrayList<>();
+            if (dropped)
+                throw new FileNotFoundException();
+            load();
+            for (Pair<Token, String> t : tokens.tailSet(new Pair<>(start, ""), true)) {
+                if (t.getFirst().compareTo(end) > 0)
+                    break;
+                try {
+                    range.add(new Pair<>(t.getSecond(), segment.readValue(index.get(t.getSecond()))));
+                } catch (FileNotFoundException e) {
+                    throw new FileNotFoundException();
+                } catch (IOException e) {
+                    e.printStackTrace();
                 }
             }
+            return range;
+        } finally {
+            lock.readLock().unlock();
         }
-        return null;
     }
 
     /**
-     * This function is used to serialize an HasMap to disk
+     * This function is used to rewrite the whole segment with the records stored in the HashMap
      */
-    private void write(HashMap<String, Pair<String, String>> hashMap) {
+    private void write(HashMap<String, byte[]> hashMap) {
         try {
-            FileOutputStream fos = new FileOutputStream(this.fileName);
-            ObjectOutputStream oos = new ObjectOutputStream(fos);
-            oos.writeObject(hashMap);
-            oos.close();
-            fos.close();
+            setIndex(segment.rewriteRecords(hashMap));
+            filter = new BloomFilter(maxSize);
+            hashMap.keySet().forEach(filter::add);
+            filter.write(BloomFilter.fileNameOf(segment.getFileName()), segment.getSize());
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -316,45 +583,295 @@ public class FileMap implements FileMapInterface {
     }
 
     /**
-     * This function is used to deserialize an HasMap to disk
+     * This function loads the Bloom filter stored next to the segment.
+     * If the filter is missing or was saved before the last append we build it again from the index.
      */
-    static HashMap<String, Pair<String, String>> read(String fileName) throws FileNotFoundException {
-        HashMap<String, Pair<String, String>> hMap = null;
+    private void loadFilter() throws FileNotFoundException {
+        String filterName = BloomFilter.fileNameOf(segment.getFileName());
+        load();
         try {
-            FileInputStream fis = new FileInputStream(fileName);
-            ObjectInputStream ois = new ObjectInputStream(fis);
-            hMap = (HashMap<String, Pair<String, String>>) ois.readObject();
-            ois.close();
-            fis.close();
+            filter = BloomFilter.read(filterName, segment.getSize());
+            if (filter == null) {
+                filter = new BloomFilter(Math.max(maxSize, index.size()));
+                index.keySet().forEach(filter::add);
+                filter.write(filterName, segment.getSize());
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * This function builds the index of the segment if we have not done it yet,
+     * two readers can call it at the same time
+     */
+    private void load() throws FileNotFoundException {
+        if (index == null) {
+            synchronized (this) {
+                if (index == null)
+                    setIndex(segment.readIndex());
+            }
+        }
+    }
+
+    /**
+     * This function sets the index of the segment and sorts its keys by token.
+     * We publish the index after the tokens, a reader that sees the index sees also the tokens.
+     */
+    private void setIndex(HashMap<String, IndexEntry> index) {
+        TreeSet<Pair<Token, String>> tokens = new TreeSet<>(TOKEN_ORDER);
+        index.keySet().forEach(key -> tokens.add(new Pair<>(Token.of(key), key)));
+        this.tokens = tokens;
+        this.index = index;
+    }
+
+    /**
+     * This function looks for the key in the index and reads its value from the segment
+     *
+     * @return the pair <value, password> associated with the key, null if the key is not in the file
+     */
+    private Pair<String, String> readValue(String key) throws FileNotFoundException {
+        if (dropped)
+            throw new FileNotFoundException();
+        if (!filter.mightContain(key))
+            return null;
+        load();
+        IndexEntry entry = index.get(key);
+        if (entry == null)
+            return null;
+        try {
+            return segment.readValue(entry);
         } catch (FileNotFoundException e) {
             throw new FileNotFoundException();
-        } catch (ClassNotFoundException | IOException e) {
+        } catch (IOException e) {
             e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * This function appends a new version of a pair to the segment.
+     */
+    private void appendPut(String key, Pair<String, String> value) {
+        try {
+            IndexEntry old = index.put(key, segment.appendPut(key, value));
+            if (old == null)
+                tokens.add(new Pair<>(Token.of(key), key));
+            else
+                release(old);
+            filter.add(key);
+            compactIfNeeded();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * This function appends a tombstone for the key to the segment.
+     */
+    private void appendDelete(String key) {
+        try {
+            segment.appendDelete(key);
+            IndexEntry old = index.remove(key);
+            if (old != null) {
+                tokens.remove(new Pair<>(Token.of(key), key));
+                release(old);
+            }
+            compactIfNeeded();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * This function tells the BlobLog that the value of a record that is not the last version of its key is garbage
+     */
+    private void release(IndexEntry old) {
+        if (blobs != null && old.getBlob() != null)
+            blobs.release(old.getBlob());
+    }
+
+    /**
+     * This function writes again the value of the key in the BlobLog if it is still stored in the blob,
+     * we call it when the BlobLog collects the file of the blob
+     *
+     * @param key  the key stored in the blob
+     * @param blob the blob that we want to delete
+     * @return true if we wrote the value again, false if the blob is not the last version of the key
+     */
+    public boolean relocate(String key, BlobPointer blob) throws FileNotFoundException {
+        lock.writeLock().lock();
+        try {
+            if (dropped)
+                throw new FileNotFoundException();
+            load();
+            IndexEntry entry = index.get(key);
+            if (entry == null || !blob.equals(entry.getBlob()))
+                return false;
+            Pair<String, String> value = readValue(key);
+            if (value == null)
+                return false;
+            appendPut(key, value);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * When the segment contains more garbage than live pairs we rewrite it, in this way
+     * the cost of the rewrite is spread over the appends that produced the garbage.
+     */
+    private void compactIfNeeded() throws FileNotFoundException {
+        int garbage = segment.getRecords() - index.size();
+        if (garbage > MAX_GARBAGE && garbage > index.size()) {
+            write(records());
+        }
+    }
+
+    /**
+     * This function rewrites the segment with only the live pairs, we call it from the
+     * background compaction to reclaim the space of the garbage records
+     */
+    public void compact() throws FileNotFoundException {
+        lock.writeLock().lock();
+        try {
+            load();
+            if (segment.getRecords() > index.size())
+                write(records());
+        } finally {
+            lock.writeLock().unlock();
         }
-        return hMap;
     }
 
     /**
-     * This function is used to deserialize an HasMap from disk
+     * This function deletes the segment and the Bloom filter of this FileMap,
+     * we call it when its pairs have been merged in another FileMap
+     */
+    public void drop() {
+        lock.writeLock().lock();
+        try {
+            dropped = true;
+            segment.close();
+            new File(segment.getFileName()).delete();
+            new File(BloomFilter.fileNameOf(segment.getFileName())).delete();
+            index = new HashMap<>();
+            tokens = new TreeSet<>(TOKEN_ORDER);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * This function returns all the pairs stored in this FileMap
+     *
+     * @return HashMap with the pairs <key, <value, password>>
+     */
+    public HashMap<String, Pair<String, String>> getAll() throws FileNotFoundException {
+        lock.readLock().lock();
+        try {
+            return read();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * This function returns the records of the pairs stored in this FileMap,
+     * we use it to move them in another FileMap of the same FileStorage
+     *
+     * @return HashMap with the pairs <key, record>
+     */
+    HashMap<String, byte[]> getRecords() throws FileNotFoundException {
+        lock.readLock().lock();
+        try {
+            return records();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * This function is used to read the pairs stored in the segment of this FileMap
      */
     private HashMap<String, Pair<String, String>> read() throws FileNotFoundException {
+        return segment.read();
+    }
+
+    /**
+     * This function is used to read the records stored in the segment of this FileMap
+     */
+    private HashMap<String, byte[]> records() throws FileNotFoundException {
+        return segment.readRecords();
+    }
+
+    /**
+     * This function forces the segment of this FileMap to the disk
+     */
+    public void sync() {
+        lock.readLock().lock();
+        try {
+            // A dropped FileMap has no file, we must not create it again
+            if (dropped)
+                return;
+            try {
+                segment.force();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * This function saves the Bloom filter and closes the file of this FileMap
+     */
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            try {
+                // If we never loaded the segment the filter on disk is still valid
+                if (index != null && !dropped)
+                    filter.write(BloomFilter.fileNameOf(segment.getFileName()), segment.getSize());
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            segment.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * This function is used to read a file written before we introduced the segments,
+     * these files contain a serialized HashMap.
+     */
+    static HashMap<String, Pair<String, String>> readLegacy(String fileName) {
         HashMap<String, Pair<String, String>> hMap = null;
         try {
-            FileInputStream fis = new FileInputStream(this.fileName);
+            FileInputStream fis = new FileInputStream(fileName);
             ObjectInputStream ois = new ObjectInputStream(fis);
             hMap = (HashMap<String, Pair<String, String>>) ois.readObject();
             ois.close();
             fis.close();
-        } catch (FileNotFoundException e) {
-            throw new FileNotFoundException();
         } catch (ClassNotFoundException | IOException e) {
             e.printStackTrace();
         }
         return hMap;
     }
 
-    public synchronized boolean isPresent(String key) throws FileNotFoundException {
-        HashMap<String, Pair<String, String>> hMap = read();
-        return hMap.containsKey(key);
+    public boolean isPresent(String key) throws FileNotFoundException {
+        lock.readLock().lock();
+        try {
+            if (dropped)
+                throw new FileNotFoundException();
+            if (!filter.mightContain(key))
+                return false;
+            load();
+            return index.containsKey(key);
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 }
@@ -2,6 +2,7 @@ package de.tum.i13.server.FileStorage;
 
 import de.tum.i13.shared.InvalidPasswordException;
 import de.tum.i13.shared.Pair;
+import de.tum.i13.shared.Token;
 
 import java.io.FileNotFoundException;
 
@@ -15,7 +16,7 @@ public interface FileMapInterface {
      *
      * @return the highest hash
      */
-    String getHash();
+    Token getHash();
 
     /**
      * This function removes a key,value pair from a specific file.
@@ -3,21 +3,26 @@ package de.tum.i13.server.FileStorage;
 import de.tum.i13.shared.Constants;
 import de.tum.i13.shared.InvalidPasswordException;
 import de.tum.i13.shared.Pair;
-import de.tum.i13.shared.Utility;
+import de.tum.i13.shared.Token;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.nio.file.Path;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import static de.tum.i13.shared.Utility.byteToHex;
-
 /**
  * This class is used to store the data on disk.
- * We use a TreeMap to store the pairs <hash, Filemap> where the filemap
+ * We use a TreeMap to store the pairs <Token, Filemap> where the filemap
  * is basically a "pointer" to the data stored on disk. For each of the keys
  * that are stored in this file we compute the hash and we store the highest hash in the Treemap.
  * The idea is similar to the idea of the ring of consistent hashing because when we want to add a new pair
@@ -30,82 +35,225 @@ import static de.tum.i13.shared.Utility.byteToHex;
  * <p>
  * We do the same thing to find a value, when we have the hash of the key we search for
  * the pair in the treeMap and then we search the key in the corresponding FileMap.
+ * <p>
+ * Every write is also appended to a WriteAheadLog. When the log is bigger than CHECKPOINT_SIZE
+ * we force the FileMaps to disk and we empty the log, at restart we replay the log into the FileMaps.
+ * <p>
+ * The list of the FileMaps with their highest hash is stored in the Manifest, we update it when we add
+ * a FileMap or we split one. At restart we read only the Manifest, the files that are not listed
+ * (or all the files if the Manifest is missing or corrupted) are read completely.
+ * <p>
+ * The deletes and the data moved to other servers leave small or empty FileMaps. A background thread
+ * merges a FileMap with less than MIN_FILL keys with its neighbour and rewrites the segments that contain
+ * too much garbage. It does at most one merge or one rewrite every COMPACTION_INTERVAL milliseconds,
+ * so it never holds the writes for long.
+ * <p>
+ * The values longer than the threshold of the Compression are compressed in the segments,
+ * we write the statistics of the compression in the log when we close the storage.
+ * The values longer than the threshold of the BlobLog are stored in blob files and the segments contain only
+ * their pointer. The background compaction also moves the live blobs out of the blob files that are mostly
+ * garbage and deletes these files.
+ * <p>
+ * The TreeMap is a ConcurrentSkipListMap, the readers look for a FileMap without locks.
+ * The locks are per FileMap: the reads of a FileMap share its read lock, a write holds its write lock
+ * while it changes the FileMap, appends the pair to the log and updates the TreeMap after a split.
+ * After we take the lock we check that the FileMap still contains the hash, otherwise we search again.
+ * In this way the writes of different FileMaps run in parallel and the log contains the writes of a key
+ * in the order in which we applied them.
  *
  * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
  */
 public class FileStorage implements FileStorageInterface {
-    private TreeMap<String, FileMap> map;
+    // Extension of the files that contain a serialized HashMap
+    private static final String LEGACY_EXTENSION = "txt";
+    private static final String WAL_NAME = "wal.log";
+    // Size of the write-ahead log that starts a checkpoint
+    private static final long CHECKPOINT_SIZE = 16 * 1024 * 1024;
+    // Milliseconds between two steps of the background compaction
+    private static final long COMPACTION_INTERVAL = 1000;
+    // A FileMap with less keys than this is merged with one of its neighbours
+    private static final int MIN_FILL = Constants.MAX_FILE_SIZE / 4;
+    // A merge never creates a FileMap with more keys than this, so the next put does not split it
+    private static final int MAX_MERGE = Constants.MAX_FILE_SIZE / 2;
+
+    private ConcurrentSkipListMap<Token, FileMap> map;
     private Path path;
     private Logger logger;
+    private WriteAheadLog wal;
+    private Compression compression;
+    private BlobLog blobs;
+    // A write holds the read lock, a checkpoint holds the write lock
+    private ReentrantReadWriteLock checkpointLock;
+    // Held while we create a FileMap for a hash bigger than the hash of the last FileMap
+    private final Object tailLock = new Object();
+    private final Object manifestLock = new Object();
+    private ScheduledExecutorService compactor;
 
     public FileStorage(Path path, Logger logger) {
+        this(path, logger, Constants.FSYNC_OS, 0);
+    }
+
+    /**
+     * @param fsync         the policy of the write-ahead log: SYNC, INTERVAL or OS
+     * @param fsyncInterval milliseconds between two forces of the log with the INTERVAL policy
+     */
+    public FileStorage(Path path, Logger logger, String fsync, int fsyncInterval) {
+        this(path, logger, fsync, fsyncInterval, Compression.NONE);
+    }
+
+    /**
+     * @param compression decides which values we compress in the segments
+     */
+    public FileStorage(Path path, Logger logger, String fsync, int fsyncInterval, Compression compression) {
+        this(path, logger, fsync, fsyncInterval, compression, new BlobLog(path, 0, compression));
+    }
+
+    /**
+     * @param blobs the log where we store the large values
+     */
+    public FileStorage(Path path, Logger logger, String fsync, int fsyncInterval, Compression compression, BlobLog blobs) {
         this.path = path;
-        this.map = new TreeMap<>();
+        this.compression = compression;
+        this.blobs = blobs;
+        this.map = new ConcurrentSkipListMap<>();
         this.logger = logger;
+        this.wal = new WriteAheadLog(path.toAbsolutePath().toString() + "/" + WAL_NAME, fsync, fsyncInterval);
+        this.checkpointLock = new ReentrantReadWriteLock();
+        this.compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "filemap-compactor");
+            t.setDaemon(true);
+            return t;
+        });
+        this.compactor.scheduleWithFixedDelay(this::compact, COMPACTION_INTERVAL, COMPACTION_INTERVAL, TimeUnit.MILLISECONDS);
     }
 
 
     public void clear() {
+        checkpointLock.writeLock().lock();
+        try {
+            map.forEach((s, file) -> file.close());
+            map.clear();
+            blobs.clear();
+            wal.truncate();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            checkpointLock.writeLock().unlock();
+        }
         File[] files = new File(path.toAbsolutePath().toString() + "/").listFiles();
         for (File f : files) {
-            if (checkExtension(f.getName())) {
+            if (checkExtension(f.getName(), FileMap.EXTENSION) || checkExtension(f.getName(), LEGACY_EXTENSION)
+                    || checkExtension(f.getName(), BloomFilter.EXTENSION)) {
                 f.delete();
             }
         }
+        new File(path.toAbsolutePath().toString(), Manifest.NAME).delete();
     }
 
 
-    private Boolean checkExtension(String filename) {
-        return (filename.substring(filename.lastIndexOf(".") + 1).equals("txt"));
+    /**
+     * This function stops the compaction and closes the FileMaps, they save their Bloom filters
+     */
+    @Override
+    public void close() {
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        map.forEach((s, file) -> file.close());
+        blobs.close();
+        writeManifest();
+        wal.close();
+        logger.info(compression.report());
+    }
+
+    private Boolean checkExtension(String filename, String extension) {
+        return (filename.substring(filename.lastIndexOf(".") + 1).equals(extension));
     }
 
     /**
      * This function is used to restore the data in the database
      * when we relaunch the server after shutdown.
+     * The files written before we introduced the segments are converted
+     * to the new format.
      */
     public void restore() throws FileNotFoundException {
+        // The compaction must not see the FileMaps before we replay the log
+        checkpointLock.writeLock().lock();
+        try {
+            restoreFiles();
+        } finally {
+            checkpointLock.writeLock().unlock();
+        }
+    }
+
+    private void restoreFiles() throws FileNotFoundException {
+        HashMap<String, Manifest.Entry> manifest = Manifest.read(path);
+        if (manifest == null)
+            logger.info("Manifest not found, reading all the files");
         File[] files = new File(path.toAbsolutePath().toString() + "/").listFiles();
         for (File f : files) {
-            if (checkExtension(f.getName())) {
-                FileMap fm = new FileMap(path.toAbsolutePath().toString() + "/" + f.getName(), Constants.MAX_FILE_SIZE, path);
-                map.put(fm.getHash(), fm);
+            if (checkExtension(f.getName(), FileMap.EXTENSION)) {
+                String fileName = path.toAbsolutePath().toString() + "/" + f.getName();
+                Manifest.Entry entry = manifest != null ? manifest.get(f.getName()) : null;
+                FileMap fm;
+                if (entry != null)
+                    fm = new FileMap(fileName, entry.getHash(), entry.getKeyCount(), Constants.MAX_FILE_SIZE, path, compression, blobs);
+                else
+                    fm = new FileMap(fileName, Constants.MAX_FILE_SIZE, path, compression, blobs);
+                if (fm.getHash() != null)
+                    map.put(fm.getHash(), fm);
+                else {
+                    fm.close();
+                    f.delete();
+                    new File(BloomFilter.fileNameOf(f.getAbsolutePath())).delete();
+                }
+            } else if (checkExtension(f.getName(), LEGACY_EXTENSION)) {
+                HashMap<String, Pair<String, String>> hMap = FileMap.readLegacy(f.getAbsolutePath());
+                if (hMap != null && hMap.size() > 0) {
+                    ArrayList<Pair<String, Pair<String, String>>> list = new ArrayList<>();
+                    hMap.forEach((k, v) -> list.add(new Pair<>(k, v)));
+                    FileMap fm = new FileMap(Constants.MAX_FILE_SIZE, list, path, compression, blobs);
+                    map.put(fm.getHash(), fm);
+                }
+                f.delete();
             }
         }
 
+        wal.replay((key, value) -> {
+            try {
+                if (value == null)
+                    delete(key);
+                else
+                    put(key, value, false, false);
+            } catch (InvalidPasswordException | IOException e) {
+                e.printStackTrace();
+            }
+        });
+        try {
+            checkpoint();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
 
     /**
      * This function returns an arrayList of pairs. Each pair contains a key
-     * and a value. We filter the key and we return only the keys that are
-     * smaller than the hash that we passed as parameter.
+     * and a value. We return only the keys whose hash is in the range [start, end].
+     * A FileMap contains the keys whose hash is between the hash of the previous FileMap and its hash,
+     * so we visit only the FileMaps that overlap the range and in each of them only the keys of the range.
      *
-     * @param end The hash that we compare with the strings in our map
+     * @param end   The end of the range
+     * @param start The start of the range
      * @return An ArrayList of pair<String,String>
      */
     public ArrayList<Pair<String, Pair<String, String>>> getRange(String end, String start) {
         if (map != null) {
             logger.info("GET RANGE");
-            ArrayList<Pair<String, Pair<String, String>>> kvstore = new ArrayList<>();
-            map.forEach((s, file) -> {
-                try {
-                    HashMap<String, Pair<String, String>> kvalue = FileMap.read(file.getFileName());
-                    kvalue.forEach((k, v) -> {
-                        logger.info("KEY " + k);
-                        String hashedKey = computeHash(k);
-
-                        if (hashedKey != null) {
-                            if (isInRange(hashedKey, start, end))
-                                kvstore.add(new Pair<String, Pair<String, String>>(k, v));
-                        }
-
-                    });
-                } catch (FileNotFoundException e) {
-                    logger.info("File Deleted, I don't have any data to send");
-                }
-
-            });
-            return kvstore;
+            return getRange(Token.fromHex(start), Token.fromHex(end));
         } else {
             logger.info("GET RANGE NULL");
         }
@@ -113,53 +261,146 @@ public class FileStorage implements FileStorageInterface {
         return new ArrayList<>();
     }
 
+    private ArrayList<Pair<String, Pair<String, String>>> getRange(Token start, Token end) {
+        ArrayList<Pair<String, Pair<String, String>>> kvstore = new ArrayList<>();
+        try (StorageCursor cursor = cursor(start, end)) {
+            cursor.forEachRemaining(kvstore::add);
+        }
+        return kvstore;
+    }
+
     public Pair<ArrayList<Pair<String, Pair<String, String>>>, ArrayList<Pair<String, Pair<String, String>>>> getReplicas(Pair<String, String> predecessorHash, Pair<String, String> predPredHash) {
-        ArrayList<Pair<String, Pair<String, String>>> predecessor = new ArrayList<>();
+        ArrayList<Pair<String, Pair<String, String>>> predecessor = getRange(Token.fromHex(predecessorHash.getFirst()), Token.fromHex(predecessorHash.getSecond()));
         ArrayList<Pair<String, Pair<String, String>>> predPred = new ArrayList<>();
-        map.forEach((s, file) -> {
-            HashMap<String, Pair<String, String>> kvalue = null;
-            try {
-                kvalue = FileMap.read(file.getFileName());
-                kvalue.forEach((k, v) -> {
-                    String hashedKey = computeHash(k);
-                    if (isInRange(hashedKey, predecessorHash.getFirst(), predecessorHash.getSecond())) {
-                        predecessor.add(new Pair<>(k, v));
-                    } else if (isInRange(hashedKey, predPredHash.getFirst(), predPredHash.getSecond())) {
-                        predPred.add(new Pair<>(k, v));
-                    }
-                });
-            } catch (FileNotFoundException e) {
-                logger.warning("File not found");
-            }
-
-        });
+        // The ranges of two different servers don't overlap, if the ring has only one server we return its data once
+        if (!predPredHash.getFirst().equals(predecessorHash.getFirst()) || !predPredHash.getSecond().equals(predecessorHash.getSecond()))
+            predPred = getRange(Token.fromHex(predPredHash.getFirst()), Token.fromHex(predPredHash.getSecond()));
         return new Pair<>(predecessor, predPred);
     }
 
-    private boolean isInRange(String hashedKey, String start, String end) {
-        if (Utility.compareHex(start, end) == 1) {
-            return (Utility.compareHex(hashedKey, start) >= 0 && Utility.compareHex(hashedKey, Constants.HEX_END_INDEX) <= 0)
-                    || (Utility.compareHex(hashedKey, Constants.HEX_START_INDEX) >= 0 && Utility.compareHex(hashedKey, end) <= 0);
-        } else return Utility.compareHex(hashedKey, start) >= 0 && Utility.compareHex(hashedKey, end) <= 0;
 
+    /**
+     * @return the log where we store the large values
+     */
+    public BlobLog getBlobLog() {
+        return blobs;
     }
 
+    /**
+     * @return the statistics of the compression of the values
+     */
+    public Compression getCompression() {
+        return compression;
+    }
 
     public ArrayList<Pair<String, Pair<String, String>>> getAll() {
-        ArrayList<Pair<String, Pair<String, String>>> kvstore = new ArrayList<>();
-        map.forEach((s, file) -> {
-            HashMap<String, Pair<String, String>> kvalue = null;
+        return getRange(Token.MIN, Token.MAX);
+    }
+
+    @Override
+    public StorageCursor cursor(Token start, Token end) {
+        return new FileCursor(start, end);
+    }
+
+    /**
+     * This class is a cursor over the FileMaps that overlap a range of the ring.
+     * A FileMap contains the keys whose hash is between the hash of the previous FileMap and its hash,
+     * so we visit only the FileMaps from ceiling(start) to ceiling(end) and in each of them only the keys of the range.
+     * We read one FileMap at a time and we look for the next FileMap in the TreeMap only when we have
+     * returned all the pairs of the current one, so the cursor works also if a FileMap is split in the meantime.
+     * From the second FileMap on we start after the hash of the previous one: if the compaction merged the
+     * previous FileMap in the next one we don't return its pairs twice.
+     */
+    private class FileCursor implements StorageCursor {
+        private final ArrayDeque<Pair<Token, Token>> ranges = new ArrayDeque<>();
+        private Token start;
+        private Token end;
+        // Hash of the last FileMap that we read in the current range
+        private Token lastFile;
+        private Iterator<Pair<String, Pair<String, String>>> buffer = Collections.emptyIterator();
+
+        private FileCursor(Token start, Token end) {
+            // If the range wraps around the end of the ring we split it in two ranges
+            if (start.compareTo(end) > 0) {
+                ranges.add(new Pair<>(start, Token.MAX));
+                ranges.add(new Pair<>(Token.MIN, end));
+            } else
+                ranges.add(new Pair<>(start, end));
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!buffer.hasNext()) {
+                if (!nextFile())
+                    return false;
+            }
+            return true;
+        }
+
+        @Override
+        public Pair<String, Pair<String, String>> next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            return buffer.next();
+        }
+
+        /**
+         * This function reads the pairs of the range stored in the next FileMap
+         *
+         * @return false if we have visited all the ranges
+         */
+        private boolean nextFile() {
+            if (start == null) {
+                Pair<Token, Token> range = ranges.poll();
+                if (range == null)
+                    return false;
+                start = range.getFirst();
+                end = range.getSecond();
+                lastFile = null;
+            }
+            Map.Entry<Token, FileMap> file = null;
+            // The last FileMap that we read was the last one that can contain the range
+            if (lastFile == null || lastFile.compareTo(end) < 0)
+                file = lockNextFile();
+            if (file == null) {
+                start = null;
+                return true;
+            }
+            Token from = lastFile == null ? start : lastFile.next();
             try {
-                kvalue = FileMap.read(file.getFileName());
-                kvalue.forEach((k, v) -> {
-                    kvstore.add(new Pair<String, Pair<String, String>>(k, v));
-                });
+                buffer = file.getValue().getRange(from, end).iterator();
             } catch (FileNotFoundException e) {
-                logger.warning("File Not found");
+                logger.info("File Deleted, I don't have any data to send");
+            } finally {
+                file.getValue().readLock().unlock();
             }
+            lastFile = file.getKey();
+            return true;
+        }
 
-        });
-        return kvstore;
+        /**
+         * This function returns the FileMap that follows the last one that we read, with its read lock held.
+         * After we take the lock we check that it is still the next FileMap, like lockFile does.
+         */
+        private Map.Entry<Token, FileMap> lockNextFile() {
+            while (true) {
+                Map.Entry<Token, FileMap> file = lastFile == null ? map.ceilingEntry(start) : map.higherEntry(lastFile);
+                if (file == null)
+                    return null;
+                file.getValue().readLock().lock();
+                Map.Entry<Token, FileMap> now = lastFile == null ? map.ceilingEntry(start) : map.higherEntry(lastFile);
+                if (now != null && now.getValue() == file.getValue())
+                    return now;
+                file.getValue().readLock().unlock();
+            }
+        }
+
+        @Override
+        public void close() {
+            ranges.clear();
+            start = null;
+            buffer = Collections.emptyIterator();
+        }
     }
 
 
@@ -178,7 +419,6 @@ public class FileStorage implements FileStorageInterface {
      *         2 if we deleted the key
      */
     public int put(String key, String v, Object... p) throws InvalidPasswordException {
-        String hash = computeHash(key);
         Pair<String, String> value;
 
         if (p.length > 0 && p[0] != null)
@@ -186,69 +426,198 @@ public class FileStorage implements FileStorageInterface {
         else
             value = new Pair<String, String>(v, null);
 
-        // First pair in the map
-        if (isEmpty(map)) {
-            return addNewFile(key, value, hash);
-        } else {
-            // We are looking for the first hash bigger than our hash
-            SortedMap<String, FileMap> partialMap = map.tailMap(hash);
-            FileMap fm;
-            String oldHash;
-            // If we don't have a file with the hash bigger than our hash we insert the new
-            // kv pair in a new file.
-            if (isEmpty(partialMap)) {
-                return addNewFile(key, value, hash);
-            }
-            // Otherwise we get the file and we add the new kv pair to this file
-            else {
-                oldHash = partialMap.firstKey();
-                fm = partialMap.get(oldHash);
-                // Add the pair to the FileMap and check if we splitted the file
-                rebalanceReturn rr = null;
+        Pair<Integer, Long> ret;
+        checkpointLock.readLock().lock();
+        try {
+            ret = put(key, value, true, true);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return Constants.ERROR;
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+        commit(ret.getSecond());
+        return ret.getFirst();
+    }
+
+    /**
+     * This function adds a list of pairs to the database without checking the passwords.
+     * We sort the pairs by hash, so the pairs that go in the same FileMap are contiguous: each FileMap
+     * appends its pairs with a single write and splits only once at the end. The pairs whose hash is bigger
+     * than the highest hash of the last FileMap go in a new FileMap. The pairs of a FileMap are written
+     * in the log with a single write and we wait for the log only once.
+     *
+     * @param pairs the pairs <key, <value, password>> that we want to store
+     */
+    @Override
+    public void putAll(List<Pair<String, Pair<String, String>>> pairs) {
+        if (pairs.isEmpty())
+            return;
+        // The sort is stable, if a key appears more than once the last value still wins
+        ArrayList<Pair<Token, Pair<String, Pair<String, String>>>> sorted = new ArrayList<>();
+        pairs.forEach(p -> sorted.add(new Pair<>(Token.of(p.getFirst()), p)));
+        sorted.sort(Comparator.comparing(Pair::getFirst));
+
+        long position = -1;
+        checkpointLock.readLock().lock();
+        try {
+            int next = 0;
+            while (next < sorted.size()) {
+                Map.Entry<Token, FileMap> file = lockFile(sorted.get(next).getFirst(), FileMap::writeLock);
+                if (file == null) {
+                    synchronized (tailLock) {
+                        file = lockFile(sorted.get(next).getFirst(), FileMap::writeLock);
+                        // All the remaining pairs are bigger than the hash of the last FileMap
+                        if (file == null) {
+                            FileMap fm = new FileMap(Constants.MAX_FILE_SIZE, new ArrayList<>(), this.path, compression, blobs);
+                            position = addToFile(null, fm, values(sorted, next, sorted.size()));
+                            break;
+                        }
+                    }
+                }
                 try {
-                    rr = fm.addPair(key, value);
-                } catch (InvalidPasswordException e) {
-                    throw new InvalidPasswordException();
+                    int last = next;
+                    while (last < sorted.size() && sorted.get(last).getFirst().compareTo(file.getKey()) <= 0)
+                        last++;
+                    position = addToFile(file.getKey(), file.getValue(), values(sorted, next, last));
+                    next = last;
+                } finally {
+                    file.getValue().writeLock().unlock();
                 }
+            }
+            writeManifest();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+        commit(position);
+    }
 
-                // If we have splitted the file we have to add the "pointer" of the new file
-                // to the treemap
-                if (rr != null) {
-                    if (rr.getFirstHash() == null && rr.getLastHash() == null && rr.getFm() == null) {
-                        return Constants.PUT_UPDATE;
-                    } else if (rr.getFirstHash() == null && rr.getLastHash() == null) {
-                        synchronized (map) {
-                            map.put(hash, rr.getFm());
-                        }
+    private ArrayList<Pair<String, Pair<String, String>>> values(ArrayList<Pair<Token, Pair<String, Pair<String, String>>>> sorted, int from, int to) {
+        ArrayList<Pair<String, Pair<String, String>>> values = new ArrayList<>();
+        sorted.subList(from, to).forEach(p -> values.add(p.getSecond()));
+        return values;
+    }
 
-                    } else {
-                        String lastHash = rr.getLastHash();
-                        String firstHash = rr.getFirstHash();
+    /**
+     * This function adds a group of pairs to the FileMap identified by oldHash (a new FileMap if oldHash is null),
+     * appends them to the log and adds to the TreeMap the FileMaps created by the split.
+     * The caller holds the write lock of the FileMap.
+     *
+     * @return the position of the pairs in the log
+     */
+    private long addToFile(Token oldHash, FileMap fm, ArrayList<Pair<String, Pair<String, String>>> pairs) throws IOException {
+        ArrayList<FileMap> created = fm.addPairs(pairs);
+        long position = wal.appendPuts(pairs);
+        created.forEach(file -> map.put(file.getHash(), file));
+        if (oldHash == null || !fm.getHash().equals(oldHash)) {
+            map.put(fm.getHash(), fm);
+            if (oldHash != null)
+                map.remove(oldHash);
+        }
+        return position;
+    }
 
-                        if (lastHash != oldHash) {
-                            FileMap fmOld = map.remove(oldHash);
-                            synchronized (map) {
-                                map.put(lastHash, fmOld);
-                            }
-                        }
-                        synchronized (map) {
-                            map.put(firstHash, rr.getFm());
-                        }
+    /**
+     * This function adds the pair to the FileMap that contains its hash.
+     * We hold the write lock of the FileMap while we append the pair to the log and we update the TreeMap,
+     * so a FileMap created by the split is visible only when the pair is in the log.
+     *
+     * @param checkPassword false when we replay the log, we don't check the password of the stored pair
+     * @param log           false when we replay the log, we don't append the pair to the log
+     * @return a pair with the result of the put and the position of the pair in the log
+     */
+    private Pair<Integer, Long> put(String key, Pair<String, String> value, boolean checkPassword, boolean log) throws InvalidPasswordException, IOException {
+        Token hash = Token.of(key);
+        Map.Entry<Token, FileMap> file = lockFile(hash, FileMap::writeLock);
+        // If we don't have a file with the hash bigger than our hash we insert the new
+        // kv pair in a new file.
+        if (file == null) {
+            synchronized (tailLock) {
+                file = lockFile(hash, FileMap::writeLock);
+                if (file == null)
+                    return addNewFile(key, value, hash, log);
+            }
+        }
+        // Otherwise we add the new kv pair to this file
+        try {
+            Token oldHash = file.getKey();
+            FileMap fm = file.getValue();
+            // Add the pair to the FileMap and check if we splitted the file
+            rebalanceReturn rr = fm.addPair(key, value, checkPassword);
+            long position = log ? wal.appendPut(key, value) : -1;
+
+            // If we have splitted the file we have to add the "pointer" of the new file
+            // to the treemap
+            if (rr != null) {
+                if (rr.getFirstHash() == null && rr.getLastHash() == null && rr.getFm() == null) {
+                    return new Pair<>(Constants.PUT_UPDATE, position);
+                } else if (rr.getFirstHash() == null && rr.getLastHash() == null) {
+                    map.put(hash, rr.getFm());
+                } else {
+                    // We add the new hashes before we remove the old one, so a reader always finds its key
+                    map.put(rr.getFirstHash(), rr.getFm());
+                    if (!rr.getLastHash().equals(oldHash)) {
+                        map.put(rr.getLastHash(), fm);
+                        map.remove(oldHash);
                     }
                 }
+                writeManifest();
             }
-
-            return Constants.PUT_SUCCESS;
+            return new Pair<>(Constants.PUT_SUCCESS, position);
+        } finally {
+            file.getValue().writeLock().unlock();
         }
+    }
 
+    /**
+     * This function creates a FileMap with the pair, the caller holds the tailLock
+     */
+    private Pair<Integer, Long> addNewFile(String key, Pair<String, String> value, Token hash, boolean log) throws IOException {
+        FileMap fm = new FileMap(Constants.MAX_FILE_SIZE, key, value, this.path, compression, blobs);
+        long position = log ? wal.appendPut(key, value) : -1;
+        map.put(hash, fm);
+        writeManifest();
+        return new Pair<>(Constants.PUT_SUCCESS, position);
+    }
+
+    /**
+     * This function returns the FileMap that contains the hash with one of its locks held.
+     * After we take the lock we check that the FileMap still contains the hash: if it was split,
+     * merged or moved to another hash in the meantime we release the lock and we search again.
+     *
+     * @param hash the hash that we are looking for
+     * @param lock FileMap::readLock or FileMap::writeLock
+     * @return the entry <hash, FileMap>, null if the hash is bigger than the hash of the last FileMap
+     */
+    private Map.Entry<Token, FileMap> lockFile(Token hash, Function<FileMap, Lock> lock) {
+        while (true) {
+            Map.Entry<Token, FileMap> file = map.ceilingEntry(hash);
+            if (file == null)
+                return null;
+            lock.apply(file.getValue()).lock();
+            Map.Entry<Token, FileMap> now = map.ceilingEntry(hash);
+            if (now != null && now.getValue() == file.getValue())
+                return now;
+            lock.apply(file.getValue()).unlock();
+        }
     }
 
-    private int addNewFile(String key, Pair<String, String> value, String hash) {
-        FileMap fm = new FileMap(Constants.MAX_FILE_SIZE, key, value, this.path);
-        synchronized (map) {
-            map.put(hash, fm);
+    /**
+     * This function writes the list of the FileMaps in the Manifest
+     */
+    private void writeManifest() {
+        synchronized (manifestLock) {
+            ArrayList<Manifest.Entry> entries = new ArrayList<>();
+            map.forEach((s, file) -> entries.add(new Manifest.Entry(new File(file.getFileName()).getName(), s, file.getKeyCount(), file.getByteSize())));
+            try {
+                Manifest.write(path, entries);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
         }
-        return 0;
     }
 
     @Override
@@ -259,56 +628,60 @@ public class FileStorage implements FileStorageInterface {
      * @return the value associated with key, null if key is not in the database
      */
     public String get(String key, Object... p) {
-        String hash = computeHash(key);
-        String retValue = null;
-        SortedMap<String, FileMap> partialMap = map.tailMap(hash);
-        // First element check
+        Map.Entry<Token, FileMap> file = lockFile(Token.of(key), FileMap::readLock);
+        if (file == null)
+            return null;
         try {
-            if (!isEmpty(partialMap)) {
-                String firstKey = partialMap.firstKey();
-                if (p.length > 0)
-                    retValue = partialMap.get(firstKey).getValue(key, (p[0]));
-                else
-                    retValue = partialMap.get(firstKey).getValue(key);
-            }
+            if (p.length > 0)
+                return file.getValue().getValue(key, (p[0]));
+            else
+                return file.getValue().getValue(key);
         } catch (NoSuchElementException | NullPointerException | FileNotFoundException e) {
-            retValue = null;
-
+            return null;
+        } finally {
+            file.getValue().readLock().unlock();
         }
-        return retValue;
     }
 
     public boolean isUpdate(String key) {
-        String hash = computeHash(key);
-        boolean retValue = false;
-        SortedMap<String, FileMap> partialMap = map.tailMap(hash);
-        // First element check
+        Map.Entry<Token, FileMap> file = lockFile(Token.of(key), FileMap::readLock);
+        if (file == null)
+            return false;
         try {
-            if (!isEmpty(partialMap)) {
-                String firstKey = partialMap.firstKey();
-                retValue = partialMap.get(firstKey).isPresent(key);
-            }
+            return file.getValue().isPresent(key);
         } catch (NoSuchElementException | FileNotFoundException e) {
-            retValue = false;
+            return false;
+        } finally {
+            file.getValue().readLock().unlock();
         }
-        return retValue;
     }
 
     public void checkAndDelete(String key) {
-        String hash = computeHash(key);
-        SortedMap<String, FileMap> partialMap = map.tailMap(hash);
-        // First element check
+        long position = -1;
+        checkpointLock.readLock().lock();
         try {
-            if (!isEmpty(partialMap)) {
-                String firstKey = partialMap.firstKey();
-                partialMap.get(firstKey).remove(key);
-            }
-        } catch (NoSuchElementException | FileNotFoundException e) {
+            Map.Entry<Token, FileMap> file = lockFile(Token.of(key), FileMap::writeLock);
+            // If there is no FileMap the key is not in the database
+            if (file != null) {
+                try {
+                    // Only a removed key needs a delete record in the log
+                    if (file.getValue().remove(key) != null)
+                        position = wal.appendDelete(key);
+                } catch (FileNotFoundException e) {
 
-        } catch (InvalidPasswordException e) {
+                } catch (InvalidPasswordException e) {
+                    e.printStackTrace();
+                } finally {
+                    file.getValue().writeLock().unlock();
+                }
+            }
+        } catch (IOException e) {
             e.printStackTrace();
+            return;
+        } finally {
+            checkpointLock.readLock().unlock();
         }
-
+        commit(position);
     }
 
     @Override
@@ -320,46 +693,261 @@ public class FileStorage implements FileStorageInterface {
      *         with key
      */
     public Pair<String, String> remove(String key, Object... p) throws InvalidPasswordException {
-        String hash = computeHash(key);
         Pair<String, String> retValue = null;
-        SortedMap<String, FileMap> partialMap = map.tailMap(hash);
+        long position = -1;
+        checkpointLock.readLock().lock();
         try {
-            if (!isEmpty(partialMap)) {
-                String firstKey = partialMap.firstKey();
-                synchronized (map) {
+            Map.Entry<Token, FileMap> file = lockFile(Token.of(key), FileMap::writeLock);
+            if (file != null) {
+                try {
                     if (p.length == 0)
-                        retValue = new Pair<>(partialMap.get(firstKey).remove(key), null);
+                        retValue = new Pair<>(file.getValue().remove(key), null);
                     else
-                        retValue = new Pair<>(partialMap.get(firstKey).remove(key, p[0]), (String) p[0]);
+                        retValue = new Pair<>(file.getValue().remove(key, p[0]), (String) p[0]);
+                    if (retValue.getFirst() != null)
+                        position = wal.appendDelete(key);
+                } catch (NoSuchElementException | FileNotFoundException e) {
+                    logger.info("Key not in db");
+                    retValue = null;
+                } finally {
+                    file.getValue().writeLock().unlock();
                 }
             }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+        commit(position);
+        return retValue;
+    }
 
-        } catch (NoSuchElementException | FileNotFoundException e) {
+    /**
+     * This function removes a key without checking its password, we use it when we replay the log
+     */
+    private void delete(String key) {
+        Map.Entry<Token, FileMap> file = map.ceilingEntry(Token.of(key));
+        try {
+            if (file != null)
+                file.getValue().delete(key);
+        } catch (FileNotFoundException e) {
             logger.info("Key not in db");
-            retValue = null;
-        } catch (InvalidPasswordException e) {
-            throw new InvalidPasswordException();
         }
+    }
 
-        return retValue;
+    /**
+     * This function waits until the write is on disk (depending on the policy of the log)
+     * and starts a checkpoint if the log is too big
+     *
+     * @param position the position of the write in the log
+     */
+    private void commit(long position) {
+        try {
+            wal.sync(position);
+            if (wal.getSize() > CHECKPOINT_SIZE)
+                checkpoint();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * This function forces the blobs and all the FileMaps to disk and then empties the write-ahead log
+     */
+    private void checkpoint() throws IOException {
+        checkpointLock.writeLock().lock();
+        try {
+            blobs.force();
+            map.forEach((s, file) -> file.sync());
+            writeManifest();
+            wal.truncate();
+        } finally {
+            checkpointLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * This function is executed by the compactor thread. An exception that escapes the task
+     * cancels the next executions, so we catch everything and try again at the next step.
+     */
+    private void compact() {
+        try {
+            compactOnce();
+        } catch (Throwable e) {
+            logger.log(Level.WARNING, "Compaction step failed", e);
+        }
     }
 
-    private String computeHash(String key) {
-        MessageDigest md = null;
+    /**
+     * This function does one step of the background compaction: it merges a FileMap with less than MIN_FILL keys
+     * with one of its neighbours or, if there is nothing to merge, it rewrites the segment with the most garbage.
+     * If there is nothing to rewrite it collects a blob file.
+     * The writes of the FileMaps that we touch wait for the step, so a step touches only a few small files.
+     *
+     * @return true if we merged or rewrote a FileMap or collected a blob file, false if there was nothing to do
+     */
+    public boolean compactOnce() {
+        checkpointLock.readLock().lock();
         try {
-            md = MessageDigest.getInstance("MD5");
-            byte[] messageDigest = md.digest(key.getBytes());
-            return byteToHex(messageDigest);
-        } catch (NoSuchAlgorithmException e) {
+            return mergeUnderfilled() || reclaimGarbage() || collectBlobs();
+        } catch (IOException e) {
             e.printStackTrace();
-            return null;
+            return false;
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * An empty FileMap is dropped. Otherwise we merge the FileMap with its smaller neighbour,
+     * if together they have at most MAX_MERGE keys.
+     */
+    private boolean mergeUnderfilled() throws IOException {
+        ArrayList<Pair<Token, FileMap>> files = snapshot();
+        for (int i = 0; i < files.size(); i++) {
+            FileMap fm = files.get(i).getSecond();
+            int count = fm.getKeyCount();
+            if (count >= MIN_FILL)
+                continue;
+            if (count == 0) {
+                if (drop(files.get(i)))
+                    return true;
+                continue;
+            }
+            boolean hasPrev = i > 0;
+            boolean hasNext = i + 1 < files.size();
+            int prev = hasPrev ? files.get(i - 1).getSecond().getKeyCount() : 0;
+            int next = hasNext ? files.get(i + 1).getSecond().getKeyCount() : 0;
+            if (hasPrev && (!hasNext || prev <= next) && count + prev <= MAX_MERGE) {
+                if (merge(files.get(i - 1), files.get(i)))
+                    return true;
+            } else if (hasNext && (!hasPrev || next < prev) && count + next <= MAX_MERGE) {
+                if (merge(files.get(i), files.get(i + 1)))
+                    return true;
+            }
         }
+        return false;
+    }
+
+    /**
+     * The entries of the TreeMap change while we look at them, so we copy them
+     */
+    private ArrayList<Pair<Token, FileMap>> snapshot() {
+        ArrayList<Pair<Token, FileMap>> files = new ArrayList<>();
+        map.forEach((s, file) -> files.add(new Pair<>(s, file)));
+        return files;
     }
 
+    /**
+     * This function removes an empty FileMap from the TreeMap and deletes its files
+     *
+     * @return false if the FileMap changed after we looked at it
+     */
+    private boolean drop(Pair<Token, FileMap> file) {
+        FileMap fm = file.getSecond();
+        fm.writeLock().lock();
+        try {
+            if (map.get(file.getFirst()) != fm || fm.getKeyCount() != 0)
+                return false;
+            map.remove(file.getFirst());
+            writeManifest();
+            fm.drop();
+            return true;
+        } finally {
+            fm.writeLock().unlock();
+        }
+    }
 
-    private boolean isEmpty(SortedMap<String, FileMap> tMap) {
-        return tMap.size() == 0;
+    /**
+     * This function moves the pairs of the lower FileMap in the FileMap that follows it in the TreeMap.
+     * The higher FileMap keeps its hash, so we only remove the lower one from the TreeMap.
+     * We delete the lower FileMap only when the higher one is on disk.
+     * We take the locks from the lower to the higher FileMap, the writes hold only one lock.
+     *
+     * @param lower  the entry <hash, FileMap> that we merge and drop
+     * @param higher the entry <hash, FileMap> that receives the pairs
+     * @return false if the FileMaps changed after we looked at them
+     */
+    private boolean merge(Pair<Token, FileMap> lower, Pair<Token, FileMap> higher) throws IOException {
+        lower.getSecond().writeLock().lock();
+        higher.getSecond().writeLock().lock();
+        try {
+            Map.Entry<Token, FileMap> after = map.higherEntry(lower.getFirst());
+            if (map.get(lower.getFirst()) != lower.getSecond() || after == null || after.getValue() != higher.getSecond()
+                    || lower.getSecond().getKeyCount() + higher.getSecond().getKeyCount() > MAX_MERGE)
+                return false;
+            ArrayList<Pair<String, byte[]>> records = new ArrayList<>();
+            lower.getSecond().getRecords().forEach((k, v) -> records.add(new Pair<>(k, v)));
+            higher.getSecond().addRecords(records);
+            higher.getSecond().sync();
+            map.remove(lower.getFirst());
+            writeManifest();
+            lower.getSecond().drop();
+            return true;
+        } finally {
+            higher.getSecond().writeLock().unlock();
+            lower.getSecond().writeLock().unlock();
+        }
     }
 
+    /**
+     * This function rewrites the segment with the most garbage, if its garbage is at least
+     * a quarter of its live keys
+     */
+    private boolean reclaimGarbage() throws IOException {
+        Pair<Token, FileMap> worst = null;
+        int garbage = 0;
+        for (Pair<Token, FileMap> file : snapshot()) {
+            int g = file.getSecond().getGarbage();
+            if (g > garbage) {
+                worst = file;
+                garbage = g;
+            }
+        }
+        if (worst == null || garbage * 4 < worst.getSecond().getKeyCount())
+            return false;
+        FileMap fm = worst.getSecond();
+        fm.writeLock().lock();
+        try {
+            if (map.get(worst.getFirst()) != fm)
+                return false;
+            fm.compact();
+            fm.sync();
+        } finally {
+            fm.writeLock().unlock();
+        }
+        writeManifest();
+        return true;
+    }
 
+    /**
+     * This function collects a blob file with too much garbage: we write again the live blobs in the last
+     * blob file, we force the blobs and the FileMaps that point to them to disk and then we delete the file.
+     * Each blob holds the lock of the FileMap of its key only while we move it.
+     */
+    private boolean collectBlobs() throws IOException {
+        int id = blobs.pickGarbage();
+        if (id < 0)
+            return false;
+        HashSet<FileMap> moved = new HashSet<>();
+        blobs.scan(id, (key, blob) -> {
+            Map.Entry<Token, FileMap> file = lockFile(Token.of(key), FileMap::writeLock);
+            if (file == null)
+                return;
+            try {
+                if (file.getValue().relocate(key, blob))
+                    moved.add(file.getValue());
+            } catch (FileNotFoundException e) {
+                logger.info("File Deleted, the blob is garbage");
+            } finally {
+                file.getValue().writeLock().unlock();
+            }
+        });
+        blobs.force();
+        moved.forEach(FileMap::sync);
+        blobs.delete(id);
+        logger.info("Collected the blob file " + id + ", we wrote again the blobs of " + moved.size() + " FileMaps");
+        return true;
+    }
 }
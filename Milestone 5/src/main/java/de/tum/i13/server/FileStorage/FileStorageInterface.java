@@ -2,8 +2,11 @@ package de.tum.i13.server.FileStorage;
 
 import de.tum.i13.shared.InvalidPasswordException;
 import de.tum.i13.shared.Pair;
+import de.tum.i13.shared.Token;
 
 import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
@@ -33,6 +36,15 @@ public interface FileStorageInterface {
     int put(String key, String v, Object... p) throws InvalidPasswordException;
 
 
+    /**
+     * This function adds a list of pairs to the database without checking the passwords,
+     * we use it to store the data that we receive from the other servers.
+     * The pairs are grouped by the file where they have to be stored, so we write each file once.
+     *
+     * @param pairs the pairs <key, <value, password>> that we want to store
+     */
+    void putAll(List<Pair<String, Pair<String, String>>> pairs);
+
     /**
      * This function returns the value associated with the parameter key
      *
@@ -49,4 +61,67 @@ public interface FileStorageInterface {
      * with key
      */
     Pair<String, String> remove(String key, Object... p) throws InvalidPasswordException;
+
+    /**
+     * This function returns true if the key is stored in the database
+     *
+     * @param key the key that we are looking for
+     * @return true if the key is in the database, false otherwise
+     */
+    boolean isUpdate(String key);
+
+    /**
+     * This function removes the key from the database without checking the password,
+     * we use it to delete the replicas that we don't have to store anymore
+     *
+     * @param key the key that we want to remove
+     */
+    void checkAndDelete(String key);
+
+    /**
+     * This function returns the pairs whose hash is in the range (start, end)
+     *
+     * @param end   the end of the range
+     * @param start the start of the range
+     * @return An ArrayList of pair<key, <value, password>>
+     */
+    ArrayList<Pair<String, Pair<String, String>>> getRange(String end, String start);
+
+    /**
+     * This function returns the pairs that we have to store in the replicas of the
+     * predecessor and of the predecessor of the predecessor.
+     *
+     * @param predecessorHash the range <start, end> of the predecessor
+     * @param predPredHash    the range <start, end> of the predecessor of the predecessor
+     * @return a pair with the data of the predecessor and the data of the predecessor of the predecessor
+     */
+    Pair<ArrayList<Pair<String, Pair<String, String>>>, ArrayList<Pair<String, Pair<String, String>>>> getReplicas(Pair<String, String> predecessorHash, Pair<String, String> predPredHash);
+
+    /**
+     * This function returns all the pairs stored in the database
+     *
+     * @return An ArrayList of pair<key, <value, password>>
+     */
+    ArrayList<Pair<String, Pair<String, String>>> getAll();
+
+    /**
+     * This function returns a cursor over the pairs whose hash is in the range [start, end],
+     * the range can wrap around the end of the ring. Use it instead of getRange and getAll
+     * when the data could not fit in memory.
+     *
+     * @param start the start of the range
+     * @param end   the end of the range
+     * @return the cursor, the caller must close it
+     */
+    StorageCursor cursor(Token start, Token end);
+
+    /**
+     * This function deletes all the data stored on disk
+     */
+    void clear();
+
+    /**
+     * This function closes the files of the database
+     */
+    void close();
 }
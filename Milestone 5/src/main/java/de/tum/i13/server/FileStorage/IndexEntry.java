@@ -0,0 +1,47 @@
+package de.tum.i13.server.FileStorage;
+
+/**
+ * This class is used to store where the last version of a key is stored in a Segment.
+ * With the offset and the length of the record we can read the value with a single
+ * positioned read, without replaying the whole segment.
+ * If the value is stored in the BlobLog we keep also its pointer, so we know which
+ * blob becomes garbage when the key is updated or deleted without reading the record.
+ *
+ * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
+ */
+public class IndexEntry {
+    private final long offset;
+    private final int length;
+    private final BlobPointer blob;
+
+    public IndexEntry(long offset, int length) {
+        this(offset, length, null);
+    }
+
+    public IndexEntry(long offset, int length, BlobPointer blob) {
+        this.offset = offset;
+        this.length = length;
+        this.blob = blob;
+    }
+
+    /**
+     * @return the position of the record in the segment
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return the length of the record
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return the pointer to the value in the BlobLog, null if the value is in the record
+     */
+    public BlobPointer getBlob() {
+        return blob;
+    }
+}
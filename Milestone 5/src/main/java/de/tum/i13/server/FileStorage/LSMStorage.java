@@ -0,0 +1,744 @@
+package de.tum.i13.server.FileStorage;
+
+import de.tum.i13.shared.Constants;
+import de.tum.i13.shared.InvalidPasswordException;
+import de.tum.i13.shared.Pair;
+import de.tum.i13.shared.Token;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.logging.Logger;
+
+/**
+ * This class stores the data on disk using a Log-Structured Merge tree.
+ * The writes go to a sorted in-memory table (memtable) and to a WriteAheadLog, so that we can rebuild the memtable
+ * after a crash. When the memtable is full we write it in a new immutable SortedRun in the level 0.
+ * A delete writes a tombstone that hides the older versions of the key.
+ * <p>
+ * The records are sorted by hash of the key, as the FileMaps in the FileStorage, so that a run
+ * covers a contiguous part of the ring.
+ * <p>
+ * A background thread merges the runs with a leveled compaction:
+ * - when the level 0 has LEVEL0_RUNS runs we merge them with the overlapping runs of the level 1
+ * - when a level i >= 1 has more records than its limit we merge one of its runs with the overlapping runs of the level i+1
+ * The runs of a level >= 1 don't overlap, so a lookup reads at most one run for each of these levels.
+ * The list of the runs of each level is stored in the MANIFEST file.
+ *
+ * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
+ */
+public class LSMStorage implements FileStorageInterface {
+    private static final String LOG_NAME = "memtable.log";
+    private static final String MANIFEST_NAME = "LSM_MANIFEST";
+    // Number of keys in the memtable before we flush it to disk
+    private static final int MEMTABLE_SIZE = Constants.MAX_FILE_SIZE;
+    // Number of runs in the level 0 that starts a compaction
+    private static final int LEVEL0_RUNS = 4;
+    // Maximum number of records in a run of a level >= 1
+    private static final int RUN_SIZE = 4 * Constants.MAX_FILE_SIZE;
+    // Each level can store LEVEL_RATIO times the records of the previous level
+    private static final int LEVEL_RATIO = 10;
+    // Length of the hash at the beginning of a sort key
+    private static final int HASH_LENGTH = 32;
+    // Number of pairs that a cursor reads while it holds the read lock
+    private static final int SCAN_BATCH = 1000;
+
+    private TreeMap<String, Pair<String, String>> memtable;
+    private WriteAheadLog log;
+    // levels.get(0) is sorted from the newest to the oldest run, the other levels by first key
+    private ArrayList<ArrayList<SortedRun>> levels;
+    private ReentrantReadWriteLock lock;
+    private ExecutorService compactor;
+    private long nextSeq;
+    // Incremented by clear, a compaction that started before a clear drops its outputs
+    private long generation;
+    private Path path;
+    private Logger logger;
+
+    public LSMStorage(Path path, Logger logger) {
+        this(path, logger, Constants.FSYNC_OS, 0);
+    }
+
+    /**
+     * @param fsync         the policy of the write-ahead log: SYNC, INTERVAL or OS
+     * @param fsyncInterval milliseconds between two forces of the log with the INTERVAL policy
+     */
+    public LSMStorage(Path path, Logger logger, String fsync, int fsyncInterval) {
+        this.path = path;
+        this.logger = logger;
+        this.memtable = new TreeMap<>();
+        this.log = new WriteAheadLog(fileName(LOG_NAME), fsync, fsyncInterval);
+        this.levels = new ArrayList<>();
+        this.levels.add(new ArrayList<>());
+        this.lock = new ReentrantReadWriteLock();
+        this.nextSeq = 0;
+        this.compactor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "lsm-compactor");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * This function is used to restore the data in the database
+     * when we relaunch the server after shutdown.
+     * We open the runs listed in the MANIFEST, we delete the runs that are not listed
+     * (they were written by a compaction that did not finish) and we replay the log of the memtable.
+     * If we can't read the MANIFEST or one of its runs we don't know which runs are live,
+     * so we stop without deleting any file.
+     *
+     * @throws IllegalStateException if the MANIFEST or one of its runs can't be read
+     */
+    @Override
+    public void restore() throws FileNotFoundException {
+        lock.writeLock().lock();
+        try {
+            HashSet<String> live = new HashSet<>();
+            File manifest = new File(fileName(MANIFEST_NAME));
+            if (manifest.exists()) {
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(manifest), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        String[] parts = line.split(" ");
+                        int level = Integer.parseInt(parts[0]);
+                        long seq = Long.parseLong(parts[1]);
+                        while (levels.size() <= level)
+                            levels.add(new ArrayList<>());
+                        levels.get(level).add(SortedRun.open(fileName(runName(seq)), seq));
+                        live.add(runName(seq));
+                        nextSeq = Math.max(nextSeq, seq + 1);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    logger.severe("Could not read the LSM manifest, the runs are left on disk");
+                    levels.forEach(level -> level.forEach(SortedRun::close));
+                    levels.clear();
+                    levels.add(new ArrayList<>());
+                    throw new IllegalStateException("Could not read the LSM manifest", e);
+                }
+            }
+            levels.get(0).sort(Comparator.comparingLong(SortedRun::getSeq).reversed());
+            for (int i = 1; i < levels.size(); i++)
+                levels.get(i).sort(Comparator.comparing(SortedRun::getFirstKey));
+
+            File[] files = new File(path.toAbsolutePath().toString() + "/").listFiles();
+            if (files != null) {
+                for (File f : files) {
+                    String name = f.getName();
+                    if (name.endsWith("." + BloomFilter.EXTENSION))
+                        name = name.substring(0, name.length() - BloomFilter.EXTENSION.length() - 1);
+                    if ((name.endsWith("." + SortedRun.EXTENSION) && !live.contains(name)) || name.endsWith(".tmp"))
+                        f.delete();
+                }
+            }
+
+            log.replay((key, value) -> memtable.put(sortKey(key), value == null ? SortedRun.DELETED : value));
+        } finally {
+            lock.writeLock().unlock();
+        }
+        compactor.submit(this::compact);
+    }
+
+    /**
+     * This function adds a new pair to the database stored on disk.
+     * If the key already exists in the database, the value is updated with the
+     * one that we pass as parameter.
+     *
+     * @param key the key that we have to insert in our database
+     * @param v   the value that we have to insert in our database
+     * @return -1 in case of error
+     * 0 if we added a new key, value pair
+     * 1 if we updated the key, value
+     */
+    @Override
+    public int put(String key, String v, Object... p) throws InvalidPasswordException {
+        Pair<String, String> value;
+        if (p.length > 0 && p[0] != null)
+            value = new Pair<>(v, (String) p[0]);
+        else
+            value = new Pair<>(v, null);
+
+        int ret;
+        long position;
+        lock.writeLock().lock();
+        try {
+            Pair<String, String> retrieved = lookup(key);
+            if (retrieved != null) {
+                // check if the value contains a password and if it is a valid password
+                if (retrieved.getSecond() != null && !retrieved.getSecond().equals(value.getSecond())) {
+                    throw new InvalidPasswordException();
+                }
+            }
+            position = log.appendPut(key, value);
+            memtable.put(sortKey(key), value);
+            flushIfNeeded();
+            ret = retrieved != null ? Constants.PUT_UPDATE : Constants.PUT_SUCCESS;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return Constants.ERROR;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        // We wait for the log outside the lock, so the concurrent writes share the same force
+        sync(position);
+        return ret;
+    }
+
+    /**
+     * This function adds a list of pairs to the database without checking the passwords.
+     * The pairs are written in the log with a single write and we flush the memtable
+     * only after all of them are in it, so a flush never truncates a log that contains
+     * pairs that are not in the memtable.
+     *
+     * @param pairs the pairs <key, <value, password>> that we want to store
+     */
+    @Override
+    public void putAll(List<Pair<String, Pair<String, String>>> pairs) {
+        if (pairs.isEmpty())
+            return;
+        long position;
+        lock.writeLock().lock();
+        try {
+            position = log.appendPuts(pairs);
+            for (Pair<String, Pair<String, String>> p : pairs)
+                memtable.put(sortKey(p.getFirst()), p.getSecond());
+            flushIfNeeded();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        sync(position);
+    }
+
+    /**
+     * This function returns the value associated with the parameter key
+     *
+     * @param key the key whose the associated value has to be returned
+     * @return the value associated with key, null if key is not in the database
+     */
+    @Override
+    public String get(String key, Object... p) {
+        Pair<String, String> r;
+        lock.readLock().lock();
+        try {
+            r = lookup(key);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (r == null)
+            return null;
+        else if (r.getSecond() == null)
+            return r.getFirst();
+        else if (p.length > 0 && r.getSecond().equals(p[0]))
+            return r.getFirst();
+        return null;
+    }
+
+    @Override
+    public boolean isUpdate(String key) {
+        lock.readLock().lock();
+        try {
+            return lookup(key) != null;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void checkAndDelete(String key) {
+        long position = -1;
+        lock.writeLock().lock();
+        try {
+            if (lookup(key) != null)
+                position = delete(key);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        sync(position);
+    }
+
+    /**
+     * This function removes the key,value pair from the database stored on disk.
+     * We write a tombstone for the key, the older versions are dropped by the compaction.
+     *
+     * @param key the key that we want to remove
+     * @return null if key is not present in the database else the value previously associated
+     * with key
+     */
+    @Override
+    public Pair<String, String> remove(String key, Object... p) throws InvalidPasswordException {
+        Pair<String, String> retrieved;
+        long position;
+        lock.writeLock().lock();
+        try {
+            retrieved = lookup(key);
+            if (retrieved == null) {
+                logger.info("Key not in db");
+                return null;
+            }
+            if (retrieved.getSecond() != null && (p.length == 0 || !retrieved.getSecond().equals(p[0])))
+                throw new InvalidPasswordException();
+            position = delete(key);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        sync(position);
+        return new Pair<>(retrieved.getFirst(), p.length > 0 ? (String) p[0] : null);
+    }
+
+    @Override
+    public ArrayList<Pair<String, Pair<String, String>>> getRange(String end, String start) {
+        return getRange(Token.fromHex(start), Token.fromHex(end));
+    }
+
+    private ArrayList<Pair<String, Pair<String, String>>> getRange(Token start, Token end) {
+        ArrayList<Pair<String, Pair<String, String>>> kvstore = new ArrayList<>();
+        try (StorageCursor cursor = cursor(start, end)) {
+            cursor.forEachRemaining(kvstore::add);
+        }
+        return kvstore;
+    }
+
+    @Override
+    public Pair<ArrayList<Pair<String, Pair<String, String>>>, ArrayList<Pair<String, Pair<String, String>>>> getReplicas(Pair<String, String> predecessorHash, Pair<String, String> predPredHash) {
+        ArrayList<Pair<String, Pair<String, String>>> predecessor = getRange(Token.fromHex(predecessorHash.getFirst()), Token.fromHex(predecessorHash.getSecond()));
+        ArrayList<Pair<String, Pair<String, String>>> predPred = new ArrayList<>();
+        // The ranges of two different servers don't overlap, if the ring has only one server we return its data once
+        if (!predPredHash.getFirst().equals(predecessorHash.getFirst()) || !predPredHash.getSecond().equals(predecessorHash.getSecond()))
+            predPred = getRange(Token.fromHex(predPredHash.getFirst()), Token.fromHex(predPredHash.getSecond()));
+        return new Pair<>(predecessor, predPred);
+    }
+
+    @Override
+    public ArrayList<Pair<String, Pair<String, String>>> getAll() {
+        return getRange(Token.MIN, Token.MAX);
+    }
+
+    @Override
+    public StorageCursor cursor(Token start, Token end) {
+        return new LSMCursor(start, end);
+    }
+
+    /**
+     * This class is a cursor over a range of the ring. The records are sorted by hash, so we read
+     * SCAN_BATCH pairs at a time starting from the sort key that follows the last pair that we returned.
+     * We hold the read lock only while we read a batch, so the writes and the compactions can run between two batches.
+     */
+    private class LSMCursor implements StorageCursor {
+        private final ArrayDeque<Pair<Token, Token>> ranges = new ArrayDeque<>();
+        // Sort key where the next batch starts, null if we have to start a new range
+        private String from;
+        private String to;
+        private ArrayList<Pair<String, Pair<String, String>>> batch = new ArrayList<>();
+        private int position = 0;
+
+        private LSMCursor(Token start, Token end) {
+            // If the range wraps around the end of the ring we split it in two ranges
+            if (start.compareTo(end) > 0) {
+                ranges.add(new Pair<>(start, Token.MAX));
+                ranges.add(new Pair<>(Token.MIN, end));
+            } else
+                ranges.add(new Pair<>(start, end));
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (position == batch.size()) {
+                if (from == null) {
+                    Pair<Token, Token> range = ranges.poll();
+                    if (range == null)
+                        return false;
+                    from = range.getFirst().toHex();
+                    to = range.getSecond().toHex();
+                }
+                batch = new ArrayList<>();
+                position = 0;
+                String last = scan(from, to, SCAN_BATCH, (k, v) -> batch.add(new Pair<>(k, v)));
+                // The smallest sort key bigger than last
+                from = last == null ? null : last + '\u0000';
+            }
+            return true;
+        }
+
+        @Override
+        public Pair<String, Pair<String, String>> next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            return batch.get(position++);
+        }
+
+        @Override
+        public void close() {
+            ranges.clear();
+            from = null;
+            batch = new ArrayList<>();
+            position = 0;
+        }
+    }
+
+    /**
+     * This function deletes all the runs, the log and the manifest
+     */
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            generation++;
+            for (ArrayList<SortedRun> level : levels) {
+                level.forEach(SortedRun::delete);
+                level.clear();
+            }
+            memtable.clear();
+            log.truncate();
+            new File(fileName(MANIFEST_NAME)).delete();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * This function waits for the running compaction and closes the files,
+     * the data in the memtable is already in the log
+     */
+    @Override
+    public void close() {
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lock.writeLock().lock();
+        try {
+            levels.forEach(level -> level.forEach(SortedRun::close));
+            log.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * This function searches the key in the memtable and then in the runs, from the newest to the oldest.
+     * The caller must hold the lock.
+     *
+     * @return the pair <value, password>, null if the key is not in the database
+     */
+    private Pair<String, String> lookup(String key) throws IOException {
+        String sortKey = sortKey(key);
+        Pair<String, String> value = memtable.get(sortKey);
+        for (int i = 0; value == null && i < levels.size(); i++) {
+            for (SortedRun run : levels.get(i)) {
+                value = run.get(sortKey);
+                if (value != null)
+                    break;
+            }
+        }
+        return value == SortedRun.DELETED ? null : value;
+    }
+
+    private long delete(String key) throws IOException {
+        long position = log.appendDelete(key);
+        memtable.put(sortKey(key), SortedRun.DELETED);
+        flushIfNeeded();
+        return position;
+    }
+
+    /**
+     * This function waits until the write is in the log on disk, depending on the policy of the log
+     */
+    private void sync(long position) {
+        try {
+            if (position >= 0)
+                log.sync(position);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * This function passes to the consumer at most limit live pairs, sorted by hash of the key,
+     * starting from the sort key from and ending with the records whose hash is to.
+     * We skip the runs that don't overlap the range and we start reading the other runs
+     * from the block that contains from.
+     *
+     * @return the sort key of the last pair that we passed to the consumer if we stopped because of the limit,
+     * null if we reached the end of the range
+     */
+    private String scan(String from, String to, int limit, BiConsumer<String, Pair<String, String>> consumer) {
+        int count = 0;
+        lock.readLock().lock();
+        ArrayList<SortedRun.RunIterator> iterators = new ArrayList<>();
+        try {
+            ArrayList<Iterator<Pair<String, Pair<String, String>>>> sources = new ArrayList<>();
+            sources.add(memtable.tailMap(from, true).entrySet().stream().map(e -> new Pair<>(e.getKey(), e.getValue())).iterator());
+            for (ArrayList<SortedRun> level : levels) {
+                for (SortedRun run : level) {
+                    if (run.getLastKey().compareTo(from) < 0 || isAfter(run.getFirstKey(), to))
+                        continue;
+                    SortedRun.RunIterator it = run.iterator(from);
+                    iterators.add(it);
+                    sources.add(it);
+                }
+            }
+            MergeIterator merged = new MergeIterator(sources);
+            while (merged.hasNext()) {
+                Pair<String, Pair<String, String>> record = merged.next();
+                if (isAfter(record.getFirst(), to))
+                    break;
+                if (record.getFirst().compareTo(from) >= 0 && record.getSecond() != SortedRun.DELETED) {
+                    consumer.accept(record.getFirst().substring(HASH_LENGTH), record.getSecond());
+                    if (++count == limit)
+                        return record.getFirst();
+                }
+            }
+        } catch (IOException | UncheckedIOException e) {
+            logger.warning("Could not read the runs");
+        } finally {
+            iterators.forEach(SortedRun.RunIterator::close);
+            lock.readLock().unlock();
+        }
+        return null;
+    }
+
+    /**
+     * When the memtable is full we write it in a new run of the level 0 and we empty the log.
+     * The caller must hold the write lock.
+     */
+    private void flushIfNeeded() throws IOException {
+        if (memtable.size() < MEMTABLE_SIZE)
+            return;
+        long seq = nextSeq();
+        Iterator<Pair<String, Pair<String, String>>> records = memtable.entrySet().stream().map(e -> new Pair<>(e.getKey(), e.getValue())).iterator();
+        SortedRun run = SortedRun.write(fileName(runName(seq)), seq, records, memtable.size());
+        levels.get(0).add(0, run);
+        writeManifest();
+        memtable = new TreeMap<>();
+        log.truncate();
+        if (levels.get(0).size() >= LEVEL0_RUNS && !compactor.isShutdown())
+            compactor.submit(this::compact);
+    }
+
+    /**
+     * This function is executed by the compactor thread, we compact the levels until
+     * each of them is under its limit
+     */
+    private void compact() {
+        int level;
+        while ((level = pickLevel()) >= 0) {
+            try {
+                compactLevel(level);
+            } catch (IOException | UncheckedIOException e) {
+                logger.warning("Compaction of level " + level + " failed");
+                e.printStackTrace();
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the first level that has to be compacted, -1 if no level has to be compacted
+     */
+    private int pickLevel() {
+        lock.readLock().lock();
+        try {
+            if (levels.get(0).size() >= LEVEL0_RUNS)
+                return 0;
+            long limit = (long) RUN_SIZE * LEVEL_RATIO;
+            for (int i = 1; i < levels.size(); i++) {
+                long records = 0;
+                for (SortedRun run : levels.get(i))
+                    records += run.getCount();
+                if (records > limit)
+                    return i;
+                limit *= LEVEL_RATIO;
+            }
+            return -1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * This function merges the runs of a level with the overlapping runs of the next level.
+     * The merge is done without holding the lock, the runs are immutable and only this thread deletes them.
+     * The tombstones are dropped when we write the last level, because there are no older versions to hide.
+     *
+     * @param level the level that we want to compact
+     */
+    private void compactLevel(int level) throws IOException {
+        List<SortedRun> inputs;
+        List<SortedRun> overlapping = new ArrayList<>();
+        boolean lastLevel;
+        long startGeneration;
+        lock.readLock().lock();
+        try {
+            startGeneration = generation;
+            if (level == 0)
+                inputs = new ArrayList<>(levels.get(0));
+            else
+                inputs = Collections.singletonList(levels.get(level).get(0));
+            String first = inputs.stream().map(SortedRun::getFirstKey).min(String::compareTo).get();
+            String last = inputs.stream().map(SortedRun::getLastKey).max(String::compareTo).get();
+            if (levels.size() > level + 1) {
+                for (SortedRun run : levels.get(level + 1)) {
+                    if (run.overlaps(first, last))
+                        overlapping.add(run);
+                }
+            }
+            lastLevel = levels.size() <= level + 2;
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        ArrayList<SortedRun.RunIterator> iterators = new ArrayList<>();
+        ArrayList<SortedRun> outputs = new ArrayList<>();
+        try {
+            for (SortedRun run : inputs)
+                iterators.add(run.iterator());
+            for (SortedRun run : overlapping)
+                iterators.add(run.iterator());
+            Iterator<Pair<String, Pair<String, String>>> merged = new MergeIterator(iterators);
+            if (lastLevel)
+                merged = dropTombstones(merged);
+            SortedRun run;
+            do {
+                long seq = nextSeq();
+                run = SortedRun.write(fileName(runName(seq)), seq, merged, RUN_SIZE);
+                if (run != null)
+                    outputs.add(run);
+            } while (run != null);
+        } finally {
+            iterators.forEach(SortedRun.RunIterator::close);
+        }
+
+        lock.writeLock().lock();
+        try {
+            // The storage was cleared while we merged, the inputs are gone and the outputs must not bring them back
+            if (generation != startGeneration) {
+                outputs.forEach(SortedRun::delete);
+                return;
+            }
+            levels.get(level).removeAll(inputs);
+            if (levels.size() <= level + 1)
+                levels.add(new ArrayList<>());
+            levels.get(level + 1).removeAll(overlapping);
+            levels.get(level + 1).addAll(outputs);
+            levels.get(level + 1).sort(Comparator.comparing(SortedRun::getFirstKey));
+            // A level in the middle can't be removed, we only drop the empty levels at the bottom
+            while (levels.size() > 1 && levels.get(levels.size() - 1).isEmpty())
+                levels.remove(levels.size() - 1);
+            writeManifest();
+            inputs.forEach(SortedRun::delete);
+            overlapping.forEach(SortedRun::delete);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logger.info("Compacted " + inputs.size() + " runs of level " + level + " with " + overlapping.size() + " runs of level " + (level + 1));
+    }
+
+    private Iterator<Pair<String, Pair<String, String>>> dropTombstones(Iterator<Pair<String, Pair<String, String>>> it) {
+        return new Iterator<Pair<String, Pair<String, String>>>() {
+            private Pair<String, Pair<String, String>> next = advance();
+
+            private Pair<String, Pair<String, String>> advance() {
+                while (it.hasNext()) {
+                    Pair<String, Pair<String, String>> record = it.next();
+                    if (record.getSecond() != SortedRun.DELETED)
+                        return record;
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Pair<String, Pair<String, String>> next() {
+                if (next == null)
+                    throw new NoSuchElementException();
+                Pair<String, Pair<String, String>> record = next;
+                next = advance();
+                return record;
+            }
+        };
+    }
+
+    /**
+     * This function writes the list of the runs of each level in the MANIFEST.
+     * We write a new file and then we move it over the old one.
+     * The caller must hold the write lock.
+     */
+    private void writeManifest() throws IOException {
+        Path tmp = Paths.get(fileName(MANIFEST_NAME + ".tmp"));
+        FileOutputStream fos = new FileOutputStream(tmp.toFile());
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(fos, StandardCharsets.UTF_8))) {
+            for (int i = 0; i < levels.size(); i++) {
+                for (SortedRun run : levels.get(i)) {
+                    writer.write(i + " " + run.getSeq());
+                    writer.newLine();
+                }
+            }
+            writer.flush();
+            fos.getFD().sync();
+        }
+        Files.move(tmp, Paths.get(fileName(MANIFEST_NAME)), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private synchronized long nextSeq() {
+        return nextSeq++;
+    }
+
+    /**
+     * The records are sorted by hash of the key and then by key, the hash is written in lower case hex
+     * so the order of the strings is the order of the tokens
+     */
+    private String sortKey(String key) {
+        return Token.of(key).toHex() + key;
+    }
+
+    /**
+     * @return true if the hash at the beginning of the sort key is bigger than hash
+     */
+    private static boolean isAfter(String sortKey, String hash) {
+        for (int i = 0; i < HASH_LENGTH; i++) {
+            char c = sortKey.charAt(i);
+            char h = hash.charAt(i);
+            if (c != h)
+                return c > h;
+        }
+        return false;
+    }
+
+    private String runName(long seq) {
+        return seq + "." + SortedRun.EXTENSION;
+    }
+
+    private String fileName(String name) {
+        return path.toAbsolutePath().toString() + "/" + name;
+    }
+}
@@ -0,0 +1,131 @@
+package de.tum.i13.server.FileStorage;
+
+import de.tum.i13.shared.Token;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+
+/**
+ * This class stores the list of the FileMaps of a FileStorage, so that at restart we don't have
+ * to read every file to know its highest hash.
+ * For each FileMap we store a line with: file name, highest hash, number of keys, size in bytes.
+ * The last line contains the CRC32 of the previous lines, if it does not match the manifest is corrupted
+ * and the FileStorage reads all the files.
+ *
+ * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
+ */
+public class Manifest {
+    static final String NAME = "MANIFEST";
+    private static final String CHECKSUM = "checksum";
+
+    /**
+     * This class contains the information that we store for a FileMap
+     */
+    public static class Entry {
+        private final String fileName;
+        private final Token hash;
+        private final int keyCount;
+        private final long byteSize;
+
+        public Entry(String fileName, Token hash, int keyCount, long byteSize) {
+            this.fileName = fileName;
+            this.hash = hash;
+            this.keyCount = keyCount;
+            this.byteSize = byteSize;
+        }
+
+        /**
+         * @return the name of the file, without the directory
+         */
+        public String getFileName() {
+            return fileName;
+        }
+
+        /**
+         * @return the highest hash of the keys stored in the file
+         */
+        public Token getHash() {
+            return hash;
+        }
+
+        /**
+         * @return the number of keys stored in the file
+         */
+        public int getKeyCount() {
+            return keyCount;
+        }
+
+        /**
+         * @return the size of the file in bytes
+         */
+        public long getByteSize() {
+            return byteSize;
+        }
+    }
+
+    /**
+     * This function writes the manifest. We write a new file and then we move it over the old one,
+     * so the manifest on disk is always complete.
+     *
+     * @param path    the directory of the FileStorage
+     * @param entries the FileMaps that we want to store
+     */
+    static void write(Path path, Collection<Entry> entries) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (Entry e : entries)
+            sb.append(e.getFileName()).append(' ').append(e.getHash().toHex()).append(' ')
+                    .append(e.getKeyCount()).append(' ').append(e.getByteSize()).append('\n');
+        byte[] body = sb.toString().getBytes(StandardCharsets.UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+
+        Path tmp = Paths.get(path.toAbsolutePath().toString(), NAME + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp.toFile())) {
+            fos.write(body);
+            fos.write((CHECKSUM + " " + crc.getValue() + "\n").getBytes(StandardCharsets.UTF_8));
+            fos.getFD().sync();
+        }
+        Files.move(tmp, Paths.get(path.toAbsolutePath().toString(), NAME), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * This function reads the manifest
+     *
+     * @param path the directory of the FileStorage
+     * @return the entries indexed by file name, null if the manifest is missing or corrupted
+     */
+    static HashMap<String, Entry> read(Path path) {
+        File file = new File(path.toAbsolutePath().toString(), NAME);
+        if (!file.exists())
+            return null;
+        try {
+            String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            int last = content.lastIndexOf(CHECKSUM + " ");
+            if (last < 0)
+                return null;
+            byte[] body = content.substring(0, last).getBytes(StandardCharsets.UTF_8);
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            if (crc.getValue() != Long.parseLong(content.substring(last + CHECKSUM.length() + 1).trim()))
+                return null;
+
+            HashMap<String, Entry> entries = new HashMap<>();
+            for (String line : content.substring(0, last).split("\n")) {
+                if (line.isEmpty())
+                    continue;
+                String[] parts = line.split(" ");
+                entries.put(parts[0], new Entry(parts[0], Token.fromHex(parts[1]), Integer.parseInt(parts[2]), Long.parseLong(parts[3])));
+            }
+            return entries;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package de.tum.i13.server.FileStorage;
+
+import de.tum.i13.shared.Pair;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * This class merges sorted sequences of records in a single sorted sequence.
+ * The sources are passed from the newest to the oldest: when more sources contain the
+ * same sort key we return only the record of the newest source.
+ *
+ * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
+ */
+class MergeIterator implements Iterator<Pair<String, Pair<String, String>>> {
+    private final List<? extends Iterator<Pair<String, Pair<String, String>>>> sources;
+    // <record, index of the source>, ordered by sort key and then by source
+    private final PriorityQueue<Pair<Pair<String, Pair<String, String>>, Integer>> heads;
+
+    MergeIterator(List<? extends Iterator<Pair<String, Pair<String, String>>>> sources) {
+        this.sources = sources;
+        this.heads = new PriorityQueue<>((a, b) -> {
+            int cmp = a.getFirst().getFirst().compareTo(b.getFirst().getFirst());
+            return cmp != 0 ? cmp : Integer.compare(a.getSecond(), b.getSecond());
+        });
+        for (int i = 0; i < sources.size(); i++)
+            advance(i);
+    }
+
+    private void advance(int source) {
+        Iterator<Pair<String, Pair<String, String>>> it = sources.get(source);
+        if (it.hasNext())
+            heads.add(new Pair<>(it.next(), source));
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !heads.isEmpty();
+    }
+
+    @Override
+    public Pair<String, Pair<String, String>> next() {
+        if (heads.isEmpty())
+            throw new NoSuchElementException();
+        Pair<Pair<String, Pair<String, String>>, Integer> head = heads.poll();
+        advance(head.getSecond());
+        // Drop the older versions of the same key
+        while (!heads.isEmpty() && heads.peek().getFirst().getFirst().equals(head.getFirst().getFirst())) {
+            advance(heads.poll().getSecond());
+        }
+        return head.getFirst();
+    }
+}
@@ -0,0 +1,743 @@
+package de.tum.i13.server.FileStorage;
+
+import de.tum.i13.shared.Constants;
+import de.tum.i13.shared.Pair;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * This class is used to store the data of a FileMap in an append-only log.
+ * Every put and every delete is appended at the end of the file as a record, so
+ * the cost of a write depends only on the size of the pair that we are writing.
+ * When we update or delete a key the previous record of that key becomes garbage,
+ * the garbage is dropped when the FileMap rewrites the segment.
+ * <p>
+ * The file starts with the MAGIC number, then we have a list of records:
+ * - int  length of the record (without this field)
+ * - byte type of the record (PUT or DELETE)
+ * - int  length of the key followed by the key
+ * - byte flags (only PUT), tells us if the record contains a value and a password
+ * - int  length of the value followed by the value (only if the flag VALUE is set).
+ *   If also the flag COMPRESSED is set we have instead: byte id of the codec, int length of the value
+ *   before the compression, int length of the compressed value followed by the compressed value.
+ *   If instead the flag BLOB is set the value is in the BlobLog and we have: int number of the blob file,
+ *   long position of the blob, int length of the blob
+ * - int  length of the password followed by the password (only if the flag PASSWORD is set)
+ * <p>
+ * Appends go through a FileChannel that stays open. The reads of a value whose IndexEntry we know
+ * use a read-only MappedByteBuffer of the segment: we decode the record directly from the page cache,
+ * without copying it in a buffer of the heap. The segment is append-only, so a mapping is valid
+ * for all the records that it contains. A record appended after the mapping is read with a positioned
+ * read, we map the file again only when it is at least twice as big as the mapping, so a segment that
+ * grows creates only a few mappings. The mapping is dropped when we rewrite or close the segment.
+ * At most Constants.MAX_OPEN_SEGMENTS segments keep their channel open: when we open one more we close
+ * the least recently used one that nobody is using, it is opened again at its next access. In this way
+ * the number of open files does not grow with the data.
+ * The Compression of the segment decides which values we compress when we write them,
+ * we can always read a compressed value whatever the Compression is.
+ * The values that the BlobLog separates are written in the log and the record contains only their pointer.
+ * The FileMap moves the records between segments as they are (readRecords, rewriteRecords, appendRecords),
+ * so a split or a rewrite copies only the pointer of a value stored in the BlobLog.
+ *
+ * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
+ */
+public class Segment {
+    static final int MAGIC = 0x4B565347;
+    static final byte PUT = 1;
+    static final byte DELETE = 2;
+    private static final byte VALUE = 1;
+    private static final byte PASSWORD = 2;
+    private static final byte COMPRESSED = 4;
+    private static final byte BLOB = 8;
+
+    private final String fileName;
+    private final Compression compression;
+    // null if all the values are stored in the records
+    private final BlobLog blobs;
+    // False for a segment that must stay open, like the write-ahead log
+    private final boolean evictable;
+    // Held while we use the channel, the eviction of an idle segment only tries to take it
+    private final ReentrantLock io = new ReentrantLock();
+    private FileChannel channel;
+    // Read-only mapping of the first bytes of the file, null until the first read
+    private volatile MappedByteBuffer mapping;
+    // Position where we append the next record
+    private long end;
+    // Number of records stored in the file, the live ones and the garbage
+    private int records;
+
+    // Evictable segments whose channel is open, from the least to the most recently used
+    private static final LinkedHashMap<Segment, Boolean> OPEN = new LinkedHashMap<>(16, 0.75f, true);
+
+    public Segment(String fileName) {
+        this(fileName, Compression.NONE);
+    }
+
+    public Segment(String fileName, Compression compression) {
+        this(fileName, compression, null);
+    }
+
+    /**
+     * @param blobs the log where we store the large values, null to store all the values in the records
+     */
+    public Segment(String fileName, Compression compression, BlobLog blobs) {
+        this(fileName, compression, blobs, true);
+    }
+
+    /**
+     * @param evictable false if the channel must stay open until we close the segment
+     */
+    Segment(String fileName, Compression compression, BlobLog blobs, boolean evictable) {
+        this.fileName = fileName;
+        this.evictable = evictable;
+        this.compression = compression;
+        this.blobs = blobs;
+        this.records = 0;
+        this.end = -1;
+    }
+
+    /**
+     * @return the name of the file associated with this Segment
+     */
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * @return the number of records stored in the file, garbage included
+     */
+    public int getRecords() {
+        return records;
+    }
+
+    /**
+     * @return the number of bytes stored in the segment
+     */
+    public long getSize() throws IOException {
+        io.lock();
+        try {
+            // We know the size of a closed segment, we don't open it only to read the size
+            if (channel == null && end >= 0)
+                return end;
+            channel();
+            return end;
+        } finally {
+            io.unlock();
+        }
+    }
+
+    /**
+     * This function opens the channel if it is closed, the caller must hold io
+     */
+    private FileChannel channel() throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (end < 0) {
+                end = channel.size();
+            }
+            if (end == 0) {
+                ByteBuffer header = ByteBuffer.allocate(Integer.BYTES).putInt(MAGIC);
+                header.flip();
+                writeFully(header, 0);
+                end = Integer.BYTES;
+            }
+        }
+        if (evictable)
+            used(this);
+        return channel;
+    }
+
+    /**
+     * This function marks the segment as the most recently used one and, if there are too many
+     * open segments, closes the least recently used ones that nobody is using
+     */
+    private static void used(Segment segment) {
+        ArrayList<Segment> victims = new ArrayList<>();
+        synchronized (OPEN) {
+            OPEN.put(segment, Boolean.TRUE);
+            Iterator<Segment> it = OPEN.keySet().iterator();
+            for (int excess = OPEN.size() - Constants.MAX_OPEN_SEGMENTS; excess > 0 && it.hasNext(); excess--) {
+                Segment s = it.next();
+                if (s != segment)
+                    victims.add(s);
+            }
+        }
+        for (Segment victim : victims) {
+            // A segment that is in use is not idle, we close it at the next eviction
+            if (victim.io.tryLock()) {
+                try {
+                    victim.closeChannel();
+                } finally {
+                    victim.io.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * This function appends a PUT record at the end of the segment
+     *
+     * @param key   the key that we want to store
+     * @param value the pair <value, password> that we want to store
+     * @return the IndexEntry of the record that we appended
+     */
+    public IndexEntry appendPut(String key, Pair<String, String> value) throws IOException {
+        return append(encodePut(key, value));
+    }
+
+    /**
+     * This function appends a PUT record for each pair at the end of the segment,
+     * all the records are written with a single write
+     *
+     * @param pairs the pairs <key, <value, password>> that we want to store
+     * @return the IndexEntry of each record, in the same order of the pairs
+     */
+    public ArrayList<IndexEntry> appendPuts(List<Pair<String, Pair<String, String>>> pairs) throws IOException {
+        ArrayList<Pair<String, byte[]>> records = new ArrayList<>();
+        for (Pair<String, Pair<String, String>> p : pairs)
+            records.add(new Pair<>(p.getFirst(), encodePut(p.getFirst(), p.getSecond())));
+        return appendRecords(records);
+    }
+
+    /**
+     * This function appends PUT records that were encoded by a segment of the same FileStorage,
+     * all the records are written with a single write
+     *
+     * @param pairs the pairs <key, record> that we want to append
+     * @return the IndexEntry of each record, in the same order of the pairs
+     */
+    public ArrayList<IndexEntry> appendRecords(List<Pair<String, byte[]>> pairs) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bos);
+        ArrayList<IndexEntry> entries = new ArrayList<>();
+        long position = end;
+        for (Pair<String, byte[]> p : pairs) {
+            byte[] record = p.getSecond();
+            out.writeInt(record.length);
+            out.write(record);
+            entries.add(new IndexEntry(position + Integer.BYTES, record.length, blobOf(record)));
+            position += Integer.BYTES + record.length;
+        }
+        out.flush();
+        io.lock();
+        try {
+            channel();
+            writeFully(ByteBuffer.wrap(bos.toByteArray()), end);
+        } finally {
+            io.unlock();
+        }
+        end = position;
+        records += pairs.size();
+        return entries;
+    }
+
+    /**
+     * This function appends a DELETE record (tombstone) at the end of the segment
+     *
+     * @param key the key that we want to delete
+     */
+    public void appendDelete(String key) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bos);
+        out.writeByte(DELETE);
+        writeString(out, key);
+        out.flush();
+        append(bos.toByteArray());
+    }
+
+    private IndexEntry append(byte[] record) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + record.length);
+        buffer.putInt(record.length).put(record);
+        buffer.flip();
+        io.lock();
+        try {
+            channel();
+            writeFully(buffer, end);
+        } finally {
+            io.unlock();
+        }
+        IndexEntry entry = new IndexEntry(end + Integer.BYTES, record.length, blobOf(record));
+        end += buffer.limit();
+        records++;
+        return entry;
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * This function reads the value stored in a record from the mapping of the segment
+     *
+     * @param entry the position of the record in the segment
+     * @return the pair <value, password> stored in the record
+     */
+    public Pair<String, String> readValue(IndexEntry entry) throws IOException {
+        long limit = entry.getOffset() + entry.getLength();
+        // A mapping can't be bigger than 2GB, we read the rest of the file with a positioned read
+        if (limit > Integer.MAX_VALUE)
+            return decode(readFully(entry));
+        MappedByteBuffer m = mapping;
+        if (m == null || limit > m.capacity()) {
+            m = map(limit);
+            if (limit > m.capacity())
+                return decode(readFully(entry));
+        }
+        ByteBuffer record = m.duplicate();
+        record.position((int) entry.getOffset()).limit((int) limit);
+        return decode(record.slice());
+    }
+
+    /**
+     * This function maps the file again, so that the mapping contains all the records appended until now.
+     * The old mapping stays in memory until the GC collects it, so we map again only if the file
+     * has at least doubled since the last mapping.
+     *
+     * @param limit the end of the record that we want to read
+     * @return the mapping, it may not contain the record
+     */
+    private MappedByteBuffer map(long limit) throws IOException {
+        io.lock();
+        try {
+            MappedByteBuffer m = mapping;
+            if (m != null && (limit <= m.capacity() || end < 2L * m.capacity()))
+                return m;
+            FileChannel c = channel();
+            if (limit > end)
+                throw new EOFException();
+            m = c.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(end, Integer.MAX_VALUE));
+            mapping = m;
+            return m;
+        } finally {
+            io.unlock();
+        }
+    }
+
+    private ByteBuffer readFully(IndexEntry entry) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(entry.getLength());
+        long position = entry.getOffset();
+        io.lock();
+        try {
+            FileChannel c = channel();
+            while (buffer.hasRemaining()) {
+                int read = c.read(buffer, position);
+                if (read < 0) {
+                    throw new EOFException();
+                }
+                position += read;
+            }
+        } finally {
+            io.unlock();
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * This function reads the value stored in a PUT record
+     *
+     * @param record the record without its length
+     * @return the pair <value, password> stored in the record
+     */
+    Pair<String, String> decode(byte[] record) throws IOException {
+        return decode(ByteBuffer.wrap(record));
+    }
+
+    private Pair<String, String> decode(ByteBuffer record) throws IOException {
+        record.get();
+        int keyLength = record.getInt();
+        record.position(record.position() + keyLength);
+        return readPut(record);
+    }
+
+    /**
+     * @param record a record without its length
+     * @return the pointer to the value in the BlobLog, null if the value is in the record
+     */
+    private static BlobPointer blobOf(byte[] record) {
+        ByteBuffer in = ByteBuffer.wrap(record);
+        if (in.get() != PUT)
+            return null;
+        int keyLength = in.getInt();
+        in.position(in.position() + keyLength);
+        if ((in.get() & BLOB) == 0)
+            return null;
+        return new BlobPointer(in.getInt(), in.getLong(), in.getInt());
+    }
+
+    /**
+     * This function reads the flags of a PUT record and, if the value is in the BlobLog, its pointer
+     */
+    private static BlobPointer readPointer(DataInputStream in) throws IOException {
+        if ((in.readByte() & BLOB) == 0)
+            return null;
+        return new BlobPointer(in.readInt(), in.readLong(), in.readInt());
+    }
+
+    /**
+     * This function replaces the content of the segment with the pairs stored in hMap.
+     * We write a new file and then we move it over the old one, so if we crash
+     * during the rewrite we still have the old segment.
+     *
+     * @param hMap the live pairs that we want to keep
+     * @return the index of the new segment
+     */
+    public HashMap<String, IndexEntry> rewrite(HashMap<String, Pair<String, String>> hMap) throws IOException {
+        HashMap<String, byte[]> records = new HashMap<>();
+        for (Map.Entry<String, Pair<String, String>> e : hMap.entrySet())
+            records.put(e.getKey(), encodePut(e.getKey(), e.getValue()));
+        return rewriteRecords(records);
+    }
+
+    /**
+     * This function replaces the content of the segment with PUT records that were encoded by
+     * a segment of the same FileStorage, like rewrite does
+     *
+     * @param hMap the pairs <key, record> that we want to keep
+     * @return the index of the new segment
+     */
+    public HashMap<String, IndexEntry> rewriteRecords(HashMap<String, byte[]> hMap) throws IOException {
+        HashMap<String, IndexEntry> index = new HashMap<>();
+        Path tmp = Paths.get(fileName + ".tmp");
+        long position = Integer.BYTES;
+        try (FileOutputStream fos = new FileOutputStream(tmp.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+            out.writeInt(MAGIC);
+            for (Map.Entry<String, byte[]> e : hMap.entrySet()) {
+                byte[] record = e.getValue();
+                out.writeInt(record.length);
+                out.write(record);
+                index.put(e.getKey(), new IndexEntry(position + Integer.BYTES, record.length, blobOf(record)));
+                position += Integer.BYTES + record.length;
+            }
+            // The records may be older than the last checkpoint of the write-ahead log,
+            // so they must be on disk before the new file replaces the old one
+            out.flush();
+            fos.getFD().sync();
+        }
+        close();
+        Files.move(tmp, Paths.get(fileName), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory(tmp.toAbsolutePath().getParent());
+        end = position;
+        records = hMap.size();
+        return index;
+    }
+
+    /**
+     * This function replays the log and returns the live pairs stored in the segment.
+     *
+     * @return the HashMap with the live pairs
+     */
+    public HashMap<String, Pair<String, String>> read() throws FileNotFoundException {
+        HashMap<String, Pair<String, String>> hMap = new HashMap<>();
+        // We decode only the last version of every key, the blobs of the old versions can be deleted
+        for (Map.Entry<String, byte[]> e : readRecords().entrySet()) {
+            try {
+                hMap.put(e.getKey(), decode(e.getValue()));
+            } catch (FileNotFoundException ex) {
+                throw new FileNotFoundException();
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }
+        return hMap;
+    }
+
+    /**
+     * This function replays the log and returns the PUT record of every live key, without decoding the values.
+     *
+     * @return the HashMap with the pairs <key, record>
+     */
+    public HashMap<String, byte[]> readRecords() throws FileNotFoundException {
+        HashMap<String, byte[]> hMap = new HashMap<>();
+        replayRecords((key, record) -> {
+            if (record == null)
+                hMap.remove(key);
+            else
+                hMap.put(key, record);
+        });
+        return hMap;
+    }
+
+    /**
+     * This function replays the log and passes every record to the consumer in the order
+     * in which they were appended. For a DELETE record the value is null.
+     *
+     * @param consumer the function that receives the pairs <key, <value, password>>
+     */
+    public void replay(BiConsumer<String, Pair<String, String>> consumer) throws FileNotFoundException {
+        replayRecords((key, record) -> {
+            try {
+                consumer.accept(key, record == null ? null : decode(record));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * This function replays the log and passes every record to the consumer, for a DELETE record the record is null
+     */
+    private void replayRecords(BiConsumer<String, byte[]> consumer) throws FileNotFoundException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("The file " + fileName + " is not a segment");
+            }
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                byte[] record = new byte[length];
+                in.readFully(record);
+                ByteBuffer rin = ByteBuffer.wrap(record);
+                byte type = rin.get();
+                String key = readString(rin);
+                consumer.accept(key, type == DELETE ? null : record);
+            }
+        } catch (FileNotFoundException e) {
+            throw new FileNotFoundException();
+        } catch (EOFException e) {
+            // The last record is incomplete, it is not part of the data
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * This function replays the log to rebuild the index of the segment, we read only
+     * the keys and we skip the values.
+     * If the last record was not completely written (e.g. crash during an append)
+     * we cut it away, so that the next append starts from a valid position.
+     *
+     * @return the index with the position of the last version of every live key
+     */
+    public HashMap<String, IndexEntry> readIndex() throws FileNotFoundException {
+        HashMap<String, IndexEntry> index = new HashMap<>();
+        int count = 0;
+        long validLength = Integer.BYTES;
+        byte[] skip = new byte[0];
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("The file " + fileName + " is not a segment");
+            }
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                byte type = in.readByte();
+                String key = readString(in);
+                int toSkip = length - Byte.BYTES - Integer.BYTES - key.getBytes(StandardCharsets.UTF_8).length;
+                BlobPointer blob = null;
+                if (type == PUT) {
+                    blob = readPointer(in);
+                    toSkip -= Byte.BYTES + (blob != null ? BlobPointer.BYTES : 0);
+                }
+                // We don't need the value, we only check that it was completely written
+                if (skip.length < toSkip)
+                    skip = new byte[toSkip];
+                in.readFully(skip, 0, toSkip);
+                if (type == DELETE)
+                    index.remove(key);
+                else
+                    index.put(key, new IndexEntry(validLength + Integer.BYTES, length, blob));
+                validLength += Integer.BYTES + length;
+                count++;
+            }
+        } catch (FileNotFoundException e) {
+            throw new FileNotFoundException();
+        } catch (EOFException e) {
+            // The last record is incomplete, we drop it below
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (new File(fileName).length() > validLength) {
+            truncate(validLength);
+        }
+        end = validLength;
+        mapping = null;
+        records = count;
+        return index;
+    }
+
+    private void truncate(long validLength) {
+        try (RandomAccessFile raf = new RandomAccessFile(fileName, "rw")) {
+            raf.setLength(validLength);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * This function forces the content of the segment to the disk
+     */
+    public void force() throws IOException {
+        io.lock();
+        try {
+            channel().force(false);
+        } finally {
+            io.unlock();
+        }
+    }
+
+    /**
+     * This function closes the channel of the segment, it is opened again at the next access
+     */
+    public void close() {
+        io.lock();
+        try {
+            closeChannel();
+        } finally {
+            io.unlock();
+        }
+    }
+
+    /**
+     * This function closes the channel and drops the mapping, the caller must hold io.
+     * A reader that is using the old mapping can still read it, a mapping does not depend on its channel.
+     */
+    private void closeChannel() {
+        try {
+            if (channel != null)
+                channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        channel = null;
+        mapping = null;
+        if (evictable) {
+            synchronized (OPEN) {
+                OPEN.remove(this);
+            }
+        }
+    }
+
+    private Pair<String, String> readPut(ByteBuffer in) throws IOException {
+        byte flags = in.get();
+        String value = null;
+        if ((flags & BLOB) != 0) {
+            BlobPointer pointer = new BlobPointer(in.getInt(), in.getLong(), in.getInt());
+            if (blobs == null)
+                throw new IOException("The value of the record is in a BlobLog");
+            value = blobs.read(pointer);
+        } else if ((flags & COMPRESSED) != 0) {
+            byte codec = in.get();
+            int length = in.getInt();
+            byte[] data = new byte[in.getInt()];
+            in.get(data);
+            value = new String(compression.decompress(codec, data, length), StandardCharsets.UTF_8);
+        } else if ((flags & VALUE) != 0)
+            value = readString(in);
+        String password = (flags & PASSWORD) != 0 ? readString(in) : null;
+        return new Pair<>(value, password);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        // A mapped buffer has no array, we copy the bytes of the string once
+        if (!in.hasArray()) {
+            byte[] bytes = new byte[length];
+            in.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        String s = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return s;
+    }
+
+    /**
+     * This function encodes a PUT record, if the BlobLog separates the value we append it to the log first
+     *
+     * @return the record without its length
+     */
+    byte[] encodePut(String key, Pair<String, String> value) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bos);
+        out.writeByte(PUT);
+        writeString(out, key);
+        byte flags = 0;
+        byte[] bytes = null;
+        byte[] compressed = null;
+        BlobPointer blob = null;
+        if (value.getFirst() != null) {
+            flags |= VALUE;
+            bytes = value.getFirst().getBytes(StandardCharsets.UTF_8);
+            if (blobs != null && blobs.separates(bytes.length)) {
+                blob = blobs.append(key, bytes);
+                flags |= BLOB;
+            } else {
+                compressed = compression.compress(bytes);
+                if (compressed != null)
+                    flags |= COMPRESSED;
+            }
+        }
+        if (value.getSecond() != null)
+            flags |= PASSWORD;
+        out.writeByte(flags);
+        if (blob != null) {
+            out.writeInt(blob.getFile());
+            out.writeLong(blob.getOffset());
+            out.writeInt(blob.getLength());
+        } else if (compressed != null) {
+            out.writeByte(compression.getCodecId());
+            out.writeInt(bytes.length);
+            out.writeInt(compressed.length);
+            out.write(compressed);
+        } else if (bytes != null) {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        if (value.getSecond() != null)
+            writeString(out, value.getSecond());
+        out.flush();
+        return bos.toByteArray();
+    }
+
+    /**
+     * This function forces the directory to disk, so that a rename in it survives a crash.
+     * Some systems can't open a directory, there the rename is already durable or we can't do better.
+     */
+    static void syncDirectory(Path directory) {
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            // Not supported on this platform
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
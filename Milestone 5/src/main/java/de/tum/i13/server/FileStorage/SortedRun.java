@@ -0,0 +1,390 @@
+package de.tum.i13.server.FileStorage;
+
+import de.tum.i13.shared.Pair;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+/**
+ * This class represents an immutable file of the LSMStorage.
+ * The pairs are sorted by hash of the key (and by key if two keys have the same hash),
+ * so that a run covers a contiguous part of the ring.
+ * <p>
+ * The file starts with the MAGIC number, then we have the list of records:
+ * - int  length of the record (without this field)
+ * - int  length of the sort key (hash + key) followed by the sort key
+ * - byte flags, tells us if the record contains a value, a password or if it is a tombstone
+ * - int  length of the value followed by the value (only if the flag VALUE is set)
+ * - int  length of the password followed by the password (only if the flag PASSWORD is set)
+ * After the records we store a sparse index with the sort key and the offset of one record every BLOCK records,
+ * the last sort key and the number of records. The last 8 bytes of the file contain the offset of the sparse index.
+ * With the sparse index a lookup is a single positioned read of at most BLOCK records.
+ * A Bloom filter on the sort keys, stored next to the run, lets us skip the read when the key is not in the run.
+ *
+ * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
+ */
+public class SortedRun {
+    static final String EXTENSION = "run";
+    // Value that we use to represent a deleted key
+    static final Pair<String, String> DELETED = new Pair<>(null, null);
+    private static final int MAGIC = 0x4B56524E;
+    private static final int BLOCK = 16;
+    private static final byte VALUE = 1;
+    private static final byte PASSWORD = 2;
+    private static final byte TOMBSTONE = 4;
+
+    private final String fileName;
+    private final long seq;
+    private final TreeMap<String, Long> sparseIndex;
+    private final String firstKey;
+    private final String lastKey;
+    private final int count;
+    private final long dataEnd;
+    private BloomFilter filter;
+    private FileChannel channel;
+
+    private SortedRun(String fileName, long seq, TreeMap<String, Long> sparseIndex, String lastKey, int count, long dataEnd) {
+        this.fileName = fileName;
+        this.seq = seq;
+        this.sparseIndex = sparseIndex;
+        this.firstKey = sparseIndex.firstKey();
+        this.lastKey = lastKey;
+        this.count = count;
+        this.dataEnd = dataEnd;
+    }
+
+    /**
+     * This function writes a new run with the records returned by the iterator.
+     * We stop when we have written maxRecords records, so the caller can split a long
+     * sequence of records in more runs. The file is written with a temporary name and then
+     * moved, so a run on disk is always complete.
+     *
+     * @param fileName   the name of the run
+     * @param seq        the sequence number of the run
+     * @param records    the pairs <sort key, <value, password>> sorted by sort key
+     * @param maxRecords the maximum number of records that we write in this run
+     * @return the new run, null if the iterator was empty
+     */
+    static SortedRun write(String fileName, long seq, Iterator<Pair<String, Pair<String, String>>> records, int maxRecords) throws IOException {
+        if (!records.hasNext())
+            return null;
+        TreeMap<String, Long> sparseIndex = new TreeMap<>();
+        BloomFilter filter = new BloomFilter(maxRecords);
+        String lastKey = null;
+        int count = 0;
+        long position = Integer.BYTES;
+        Path tmp = Paths.get(fileName + ".tmp");
+        FileOutputStream fos = new FileOutputStream(tmp.toFile());
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+            out.writeInt(MAGIC);
+            while (count < maxRecords && records.hasNext()) {
+                Pair<String, Pair<String, String>> record = records.next();
+                byte[] body = encode(record.getFirst(), record.getSecond());
+                if (count % BLOCK == 0)
+                    sparseIndex.put(record.getFirst(), position);
+                out.writeInt(body.length);
+                out.write(body);
+                position += Integer.BYTES + body.length;
+                filter.add(record.getFirst());
+                lastKey = record.getFirst();
+                count++;
+            }
+            out.writeInt(sparseIndex.size());
+            for (Map.Entry<String, Long> e : sparseIndex.entrySet()) {
+                writeString(out, e.getKey());
+                out.writeLong(e.getValue());
+            }
+            writeString(out, lastKey);
+            out.writeInt(count);
+            out.writeLong(position);
+            // The log of the memtable is emptied after the flush, so the run must be on disk
+            out.flush();
+            fos.getFD().sync();
+        }
+        Files.move(tmp, Paths.get(fileName), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        filter.write(BloomFilter.fileNameOf(fileName), position);
+        SortedRun run = new SortedRun(fileName, seq, sparseIndex, lastKey, count, position);
+        run.filter = filter;
+        return run;
+    }
+
+    /**
+     * This function opens a run that we have already written, we only read the sparse index
+     * and the Bloom filter. If the filter is missing we build it again reading the run.
+     *
+     * @param fileName the name of the run
+     * @param seq      the sequence number of the run
+     */
+    static SortedRun open(String fileName, long seq) throws IOException {
+        try (FileChannel ch = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            long size = ch.size();
+            ByteBuffer tail = readFully(ch, size - Long.BYTES, Long.BYTES);
+            long dataEnd = tail.getLong();
+            ByteBuffer footer = readFully(ch, dataEnd, (int) (size - Long.BYTES - dataEnd));
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(footer.array()));
+            TreeMap<String, Long> sparseIndex = new TreeMap<>();
+            int entries = in.readInt();
+            for (int i = 0; i < entries; i++) {
+                String key = readString(in);
+                sparseIndex.put(key, in.readLong());
+            }
+            String lastKey = readString(in);
+            int count = in.readInt();
+            SortedRun run = new SortedRun(fileName, seq, sparseIndex, lastKey, count, dataEnd);
+            run.filter = BloomFilter.read(BloomFilter.fileNameOf(fileName), dataEnd);
+            if (run.filter == null)
+                run.buildFilter();
+            return run;
+        }
+    }
+
+    private void buildFilter() throws IOException {
+        filter = new BloomFilter(count);
+        try (RunIterator it = iterator()) {
+            while (it.hasNext())
+                filter.add(it.next().getFirst());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        filter.write(BloomFilter.fileNameOf(fileName), dataEnd);
+    }
+
+    /**
+     * @return the name of the file associated with this run
+     */
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * @return the sequence number of the run, a run with a higher sequence number contains newer data
+     */
+    public long getSeq() {
+        return seq;
+    }
+
+    /**
+     * @return the smallest sort key stored in the run
+     */
+    public String getFirstKey() {
+        return firstKey;
+    }
+
+    /**
+     * @return the highest sort key stored in the run
+     */
+    public String getLastKey() {
+        return lastKey;
+    }
+
+    /**
+     * @return the number of records stored in the run, tombstones included
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return true if the run contains sort keys in the range [first, last]
+     */
+    boolean overlaps(String first, String last) {
+        return lastKey.compareTo(first) >= 0 && firstKey.compareTo(last) <= 0;
+    }
+
+    /**
+     * This function searches a key in the run.
+     * We use the sparse index to find the block that could contain the key and we read only that block.
+     *
+     * @param sortKey the hash of the key followed by the key
+     * @return the pair <value, password>, DELETED if the run contains a tombstone for the key,
+     * null if the key is not in the run
+     */
+    synchronized Pair<String, String> get(String sortKey) throws IOException {
+        if (sortKey.compareTo(firstKey) < 0 || sortKey.compareTo(lastKey) > 0 || !filter.mightContain(sortKey))
+            return null;
+        Map.Entry<String, Long> block = sparseIndex.floorEntry(sortKey);
+        Map.Entry<String, Long> next = sparseIndex.higherEntry(block.getKey());
+        long end = next != null ? next.getValue() : dataEnd;
+        if (channel == null)
+            channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+        ByteBuffer buffer = readFully(channel, block.getValue(), (int) (end - block.getValue()));
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(buffer.array()));
+        while (in.available() > 0) {
+            in.readInt();
+            String key = readString(in);
+            int cmp = key.compareTo(sortKey);
+            if (cmp == 0)
+                return readValue(in);
+            else if (cmp > 0)
+                return null;
+            skipValue(in);
+        }
+        return null;
+    }
+
+    /**
+     * @return an iterator over the records of the run, sorted by sort key
+     */
+    RunIterator iterator() throws IOException {
+        return new RunIterator(0);
+    }
+
+    /**
+     * @param from the first sort key that we want to read
+     * @return an iterator over the records of the run that starts from the block that could contain from,
+     * the first records can be smaller than from
+     */
+    RunIterator iterator(String from) throws IOException {
+        Map.Entry<String, Long> block = sparseIndex.floorEntry(from);
+        return new RunIterator(block == null ? 0 : block.getValue());
+    }
+
+    /**
+     * This function closes the file of the run
+     */
+    synchronized void close() {
+        try {
+            if (channel != null)
+                channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        channel = null;
+    }
+
+    /**
+     * This function closes the run and deletes its file
+     */
+    void delete() {
+        close();
+        new File(fileName).delete();
+        new File(BloomFilter.fileNameOf(fileName)).delete();
+    }
+
+    /**
+     * This class reads the records of the run sequentially
+     */
+    class RunIterator implements Iterator<Pair<String, Pair<String, String>>>, Closeable {
+        private final DataInputStream in;
+        private long position;
+
+        private RunIterator(long position) throws IOException {
+            FileInputStream fis = new FileInputStream(fileName);
+            try {
+                fis.getChannel().position(position);
+            } catch (IOException e) {
+                fis.close();
+                throw e;
+            }
+            in = new DataInputStream(new BufferedInputStream(fis));
+            this.position = position;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return position < dataEnd;
+        }
+
+        @Override
+        public Pair<String, Pair<String, String>> next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            try {
+                if (position == 0) {
+                    in.readInt();
+                    position = Integer.BYTES;
+                }
+                int length = in.readInt();
+                String key = readString(in);
+                Pair<String, String> value = readValue(in);
+                position += Integer.BYTES + length;
+                return new Pair<>(key, value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                in.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static byte[] encode(String sortKey, Pair<String, String> value) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bos);
+        writeString(out, sortKey);
+        byte flags = 0;
+        if (value == DELETED)
+            flags |= TOMBSTONE;
+        else {
+            if (value.getFirst() != null)
+                flags |= VALUE;
+            if (value.getSecond() != null)
+                flags |= PASSWORD;
+        }
+        out.writeByte(flags);
+        if ((flags & VALUE) != 0)
+            writeString(out, value.getFirst());
+        if ((flags & PASSWORD) != 0)
+            writeString(out, value.getSecond());
+        out.flush();
+        return bos.toByteArray();
+    }
+
+    private static Pair<String, String> readValue(DataInputStream in) throws IOException {
+        byte flags = in.readByte();
+        if ((flags & TOMBSTONE) != 0)
+            return DELETED;
+        String value = (flags & VALUE) != 0 ? readString(in) : null;
+        String password = (flags & PASSWORD) != 0 ? readString(in) : null;
+        return new Pair<>(value, password);
+    }
+
+    private static void skipValue(DataInputStream in) throws IOException {
+        byte flags = in.readByte();
+        if ((flags & VALUE) != 0)
+            in.skipBytes(in.readInt());
+        if ((flags & PASSWORD) != 0)
+            in.skipBytes(in.readInt());
+    }
+
+    private static ByteBuffer readFully(FileChannel ch, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            int read = ch.read(buffer, position);
+            if (read < 0)
+                throw new EOFException();
+            position += read;
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,22 @@
+package de.tum.i13.server.FileStorage;
+
+import de.tum.i13.shared.Pair;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * This interface is a cursor over the pairs <key, <value, password>> stored in a storage engine.
+ * The cursor reads the pairs a little at a time (e.g. one file at a time), so we can move all the data
+ * of the storage without keeping it in memory. The caller must close the cursor.
+ *
+ * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
+ */
+public interface StorageCursor extends Iterator<Pair<String, Pair<String, String>>>, Closeable {
+
+    /**
+     * This function releases the resources of the cursor
+     */
+    @Override
+    void close();
+}
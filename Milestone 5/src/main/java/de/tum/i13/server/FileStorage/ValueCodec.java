@@ -0,0 +1,40 @@
+package de.tum.i13.server.FileStorage;
+
+import java.io.IOException;
+
+/**
+ * This interface is a codec that compresses the values stored in the segments.
+ * Every codec has an id that we store in the record, so we can read a value
+ * also when the server is started with another codec.
+ *
+ * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
+ */
+public interface ValueCodec {
+
+    /**
+     * @return the id of the codec that we store in the records, it must never change
+     */
+    byte getId();
+
+    /**
+     * @return the name of the codec that we use in the configuration
+     */
+    String getName();
+
+    /**
+     * This function compresses the bytes of a value
+     *
+     * @param data the bytes of the value
+     * @return the compressed bytes
+     */
+    byte[] compress(byte[] data) throws IOException;
+
+    /**
+     * This function decompresses the bytes of a value
+     *
+     * @param data   the compressed bytes
+     * @param length the length of the value before the compression
+     * @return the bytes of the value
+     */
+    byte[] decompress(byte[] data, int length) throws IOException;
+}
@@ -0,0 +1,210 @@
+package de.tum.i13.server.FileStorage;
+
+import de.tum.i13.shared.Constants;
+import de.tum.i13.shared.Pair;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * This class is the write-ahead log of the storage engines.
+ * Every put and every delete is appended to the log before we answer the client,
+ * after a crash we replay the log to redo the writes that did not reach the data files.
+ * The records have the same format of a Segment.
+ * <p>
+ * When the data files are on disk the storage calls truncate (checkpoint) to empty the log.
+ * <p>
+ * The policy decides when we force the log to the disk:
+ * - SYNC: a write returns only when its record is on disk. The writers that call sync while
+ * another writer is forcing the log wait and are served by the next force (group commit),
+ * so we do one force for many concurrent writes.
+ * - INTERVAL: a background thread forces the log every interval milliseconds.
+ * - OS: we never force the log, the operating system decides when to write it.
+ * <p>
+ * The positions returned by the appends are logical, they keep growing when we truncate the log.
+ *
+ * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
+ */
+public class WriteAheadLog {
+    private final Segment segment;
+    private final String policy;
+    private final Object syncLock = new Object();
+    private ScheduledExecutorService syncer;
+    // Logical position of the beginning of the file
+    private long base;
+    // Logical position up to which the log is on disk
+    private long synced;
+    // True while a writer is forcing the log
+    private boolean syncing;
+
+    /**
+     * @param fileName the name of the log
+     * @param policy   SYNC, INTERVAL or OS
+     * @param interval milliseconds between two forces with the INTERVAL policy
+     */
+    public WriteAheadLog(String fileName, String policy, int interval) {
+        // The log stays open, its writes must not wait for an open
+        this.segment = new Segment(fileName, Compression.NONE, null, false);
+        this.policy = policy == null ? Constants.FSYNC_OS : policy;
+        this.base = 0;
+        this.synced = 0;
+        this.syncing = false;
+        if (this.policy.equals(Constants.FSYNC_INTERVAL)) {
+            syncer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "wal-sync");
+                t.setDaemon(true);
+                return t;
+            });
+            syncer.scheduleAtFixedRate(() -> {
+                try {
+                    force(getEnd());
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * This function appends a put to the log
+     *
+     * @return the logical position of the end of the record, we pass it to sync
+     */
+    public synchronized long appendPut(String key, Pair<String, String> value) throws IOException {
+        segment.appendPut(key, value);
+        return base + segment.getSize();
+    }
+
+    /**
+     * This function appends a list of puts to the log with a single write
+     *
+     * @return the logical position of the end of the last record, we pass it to sync
+     */
+    public synchronized long appendPuts(List<Pair<String, Pair<String, String>>> pairs) throws IOException {
+        segment.appendPuts(pairs);
+        return base + segment.getSize();
+    }
+
+    /**
+     * This function appends a delete to the log
+     *
+     * @return the logical position of the end of the record, we pass it to sync
+     */
+    public synchronized long appendDelete(String key) throws IOException {
+        segment.appendDelete(key);
+        return base + segment.getSize();
+    }
+
+    /**
+     * With the SYNC policy this function returns when the log is on disk up to position.
+     * With the other policies it returns immediately.
+     *
+     * @param position the position returned by the append
+     */
+    public void sync(long position) throws IOException {
+        if (policy.equals(Constants.FSYNC_SYNC))
+            force(position);
+    }
+
+    /**
+     * Group commit: if another writer is forcing the log we wait for it, if its force
+     * did not cover our record we become the next writer that forces the log.
+     */
+    private void force(long position) throws IOException {
+        synchronized (syncLock) {
+            while (true) {
+                if (synced >= position)
+                    return;
+                if (!syncing)
+                    break;
+                try {
+                    syncLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+            syncing = true;
+        }
+        boolean done = false;
+        long target = getEnd();
+        try {
+            segment.force();
+            done = true;
+        } finally {
+            synchronized (syncLock) {
+                if (done)
+                    synced = Math.max(synced, target);
+                syncing = false;
+                syncLock.notifyAll();
+            }
+        }
+    }
+
+    private synchronized long getEnd() throws IOException {
+        return base + segment.getSize();
+    }
+
+    /**
+     * This function replays the log, for a delete the value is null.
+     * If the last record is incomplete we drop it.
+     */
+    public synchronized void replay(BiConsumer<String, Pair<String, String>> consumer) throws FileNotFoundException {
+        if (!new File(segment.getFileName()).exists())
+            return;
+        segment.readIndex();
+        segment.replay(consumer);
+    }
+
+    /**
+     * This function empties the log, the caller must have written to disk all the data described by the log
+     */
+    public synchronized void truncate() throws IOException {
+        synchronized (syncLock) {
+            while (syncing) {
+                try {
+                    syncLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+            base += segment.getSize();
+            segment.rewrite(new HashMap<>());
+            base -= segment.getSize();
+            synced = Math.max(synced, base + segment.getSize());
+        }
+    }
+
+    /**
+     * @return the number of bytes stored in the log
+     */
+    public synchronized long getSize() throws IOException {
+        return segment.getSize();
+    }
+
+    /**
+     * This function forces the log (if the policy is not OS) and closes it
+     */
+    public void close() {
+        if (syncer != null)
+            syncer.shutdown();
+        try {
+            if (!policy.equals(Constants.FSYNC_OS))
+                force(getEnd());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        synchronized (this) {
+            segment.close();
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package de.tum.i13.server.FileStorage;
 
+import de.tum.i13.shared.Token;
+
 /**
  * This class is used to return some useful data when we add a new pair to
  * the storage on disk and we split the file.
@@ -14,11 +16,11 @@ package de.tum.i13.server.FileStorage;
  * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
  */
 public class rebalanceReturn {
-    private final String lastHash;
-    private final String firstHash;
+    private final Token lastHash;
+    private final Token firstHash;
     private final FileMap fm;
 
-    public rebalanceReturn(String lastHash, String firstHash, FileMap fm) {
+    public rebalanceReturn(Token lastHash, Token firstHash, FileMap fm) {
         this.lastHash = lastHash;
         this.firstHash = firstHash;
         this.fm = fm;
@@ -28,11 +30,11 @@ public class rebalanceReturn {
         return fm;
     }
 
-    public String getFirstHash() {
+    public Token getFirstHash() {
         return firstHash;
     }
 
-    public String getLastHash() {
+    public Token getLastHash() {
         return lastHash;
     }
 }
@@ -1,5 +1,7 @@
 package de.tum.i13.server.kv;
 
+import de.tum.i13.server.FileStorage.Compression;
+import de.tum.i13.shared.Constants;
 import de.tum.i13.shared.DataMap;
 import de.tum.i13.shared.Metadata;
 import de.tum.i13.shared.Pair;
@@ -8,12 +10,21 @@ import java.io.*;
 import java.net.Socket;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.zip.InflaterInputStream;
 
 /**
  * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
  */
 public class Common {
+    // Number of pairs that we send in a single object. The lists of pairs are sent in chunks
+    // and an empty chunk closes the list, so the receiver never holds more than one chunk in memory
+    static final int CHUNK_SIZE = 1000;
+    // First byte of the chunks sent by the servers that always compressed them with Deflate (zlib header)
+    private static final byte DEFLATE_HEADER = 0x78;
+    // Compresses the chunks with the codec of the values, KVStore sets it from the configuration
+    static volatile Compression chunkCompression = Compression.of(Constants.COMPRESSION_DEFLATE, 0);
 
     /**
      * This method is called when we have to send a k,v pair to one of the replica server
@@ -58,10 +69,73 @@ public class Common {
         oos.flush();
         oos.writeLong(type.length());
         oos.writeUTF(type);
-        oos.writeObject(list);
+        writeChunks(list.iterator(), oos);
+        writeChunk(new ArrayList<>(), oos);
+    }
+
+    /**
+     * This function sends all the elements of an iterator in chunks of CHUNK_SIZE elements.
+     * The caller closes the list with an empty chunk.
+     *
+     * @param iterator elements that we want to send
+     * @param oos      ObjectOutputStream of the server that will receive the elements
+     * @throws IOException
+     */
+    static <T> void writeChunks(Iterator<T> iterator, ObjectOutputStream oos) throws IOException {
+        ArrayList<T> chunk = new ArrayList<>();
+        while (iterator.hasNext()) {
+            chunk.add(iterator.next());
+            if (chunk.size() == CHUNK_SIZE) {
+                writeChunk(chunk, oos);
+                chunk = new ArrayList<>();
+            }
+        }
+        if (!chunk.isEmpty())
+            writeChunk(chunk, oos);
+    }
+
+    /**
+     * This function sends a chunk of a list.
+     * We serialize the chunk and we compress it with the codec configured for the values,
+     * with NONE the chunk is sent as it is.
+     *
+     * @param chunk elements that we want to send, an empty chunk closes the list
+     * @param oos   ObjectOutputStream of the server that will receive the elements
+     * @throws IOException
+     */
+    static <T> void writeChunk(ArrayList<T> chunk, ObjectOutputStream oos) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bos)) {
+            out.writeObject(chunk);
+        }
+        oos.writeObject(chunkCompression.pack(bos.toByteArray()));
+        // The stream keeps a reference to every object that we write, with reset we can free the chunks already sent
+        oos.reset();
         oos.flush();
     }
 
+    /**
+     * This function reads a chunk of a list sent with writeChunks.
+     * We still read the chunks of the servers that compressed every chunk with Deflate.
+     *
+     * @param ois ObjectInputStream of the server that is sending the elements
+     * @return the elements of the chunk, null if we have read all the list
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    @SuppressWarnings("unchecked")
+    static <T> ArrayList<T> readChunk(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+        byte[] data = (byte[]) ois.readObject();
+        InputStream bytes = data.length > 0 && data[0] == DEFLATE_HEADER
+                ? new InflaterInputStream(new ByteArrayInputStream(data))
+                : new ByteArrayInputStream(chunkCompression.unpack(data));
+        ArrayList<T> chunk;
+        try (ObjectInputStream in = new ObjectInputStream(bytes)) {
+            chunk = (ArrayList<T>) in.readObject();
+        }
+        return chunk.isEmpty() ? null : chunk;
+    }
+
 
     /**
      * This function is used to write to a server
@@ -61,6 +61,8 @@ public class KVCommandProcessor implements CommandProcessor {
                     return keyrange();
                 case "keyrange_read":
                     return keyrange_read();
+                case "cache_stats":
+                    return cacheStats();
                 default:
                     logger.info("Error: Wrong command.");
                     return "Error. Wrong command.";
@@ -283,6 +285,15 @@ public class KVCommandProcessor implements CommandProcessor {
         return kvStore.getKeyRangeReplicas();
     }
 
+    /**
+     * Statistics of the cache of this server, for the administrators
+     *
+     * @return hits, misses, evictions, insertions, password rejections and loads from disk
+     */
+    public String cacheStats() {
+        return "cache_stats " + kvStore.getCacheStatistics();
+    }
+
     @Override
     public String connectionAccepted(InetSocketAddress address, InetSocketAddress remoteAddress) {
         logger.info("new connection: " + remoteAddress.toString());
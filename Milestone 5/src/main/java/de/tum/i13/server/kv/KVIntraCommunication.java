@@ -1,7 +1,9 @@
 package de.tum.i13.server.kv;
 
-import de.tum.i13.server.Cache.Cache;
-import de.tum.i13.server.FileStorage.FileStorage;
+import de.tum.i13.server.Cache.CacheInterface;
+import de.tum.i13.server.Cache.NegativeCache;
+import de.tum.i13.server.FileStorage.FileStorageInterface;
+import de.tum.i13.server.FileStorage.StorageCursor;
 import de.tum.i13.shared.*;
 
 import java.io.*;
@@ -15,7 +17,6 @@ import java.util.concurrent.CompletableFuture;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import static de.tum.i13.shared.Utility.computeHash;
 import static de.tum.i13.shared.Utility.getFreePort;
 
 /**
@@ -32,22 +33,25 @@ public class KVIntraCommunication implements Runnable {
     // This socket is used to receive the data from another server and from the ECS
     private ServerSocket serverSocket;
     private Metadata metadata;
-    private FileStorage fileStorage;
+    private FileStorageInterface fileStorage;
     private ArrayList<Pair<String, String>> subData;
-    private ArrayList<Pair<String, Pair<String, String>>> data;
-    private ArrayList<Pair<String, Pair<String, String>>> toBeRemoved = new ArrayList<>();
+    // Range <start, end> of the last data that we have sent, we remove it when the ECS releases the lock
+    private Pair<Token, Token> sentRange;
     private ObjectInputStream ECSois = null;
     private ObjectOutputStream ECSoos = null;
     private Socket ECSSocket = null;
     private boolean isInterrupted = false;
     private boolean shutdown = false;
     private String myHash;
-    private Cache cache;
+    private CacheInterface cache;
+    private NegativeCache negativeCache;
+    // How the replicas and the rebalancing change the cache
+    private String writePolicy;
     private boolean endPing = true;
     private Thread pingReply;
     ServerSocket pingSocket = null;
 
-    KVIntraCommunication(Config cfg, ServerStatus serverStatus, Metadata metadata, FileStorage fileStorage, Logger logger, Cache cache) {
+    KVIntraCommunication(Config cfg, ServerStatus serverStatus, Metadata metadata, FileStorageInterface fileStorage, Logger logger, CacheInterface cache, NegativeCache negativeCache) {
         this.serverStatus = serverStatus;
         this.myAddress = cfg.listenaddr;
         this.fileStorage = fileStorage;
@@ -56,6 +60,8 @@ public class KVIntraCommunication implements Runnable {
         this.metadata = metadata;
         this.logger = logger;
         this.cache = cache;
+        this.negativeCache = negativeCache;
+        this.writePolicy = cfg.clusterWritePolicy;
     }
 
 
@@ -219,15 +225,14 @@ public class KVIntraCommunication implements Runnable {
     private void receiveKVPairs(ObjectInputStream ois) {
         logger.info("Receiving key,value pairs");
         try {
-            ArrayList<Pair<String, Pair<String, String>>> data = (ArrayList<Pair<String, Pair<String, String>>>) ois.readObject();
-            logger.info("DATA SIZE " + data.size());
-            for (Pair<String, Pair<String, String>> p : data) {
-                fileStorage.put(p.getFirst(), p.getSecond().getFirst(), p.getSecond().getSecond());
+            ArrayList<Pair<String, Pair<String, String>>> data;
+            while ((data = Common.readChunk(ois)) != null) {
+                logger.info("DATA SIZE " + data.size());
+                fileStorage.putAll(data);
+                negativeCache.clear();
             }
         } catch (IOException | ClassNotFoundException e) {
             handleError("An error occurred while receiving the data", Constants.INACTIVE);
-        } catch (InvalidPasswordException e) {
-            e.printStackTrace();
         }
 
 
@@ -245,15 +250,17 @@ public class KVIntraCommunication implements Runnable {
         logger.info("Receiving replicas: key,value pairs");
         try {
 
-            ArrayList<Pair<String, Pair<String, String>>> data = (ArrayList<Pair<String, Pair<String, String>>>) ois.readObject();
-            logger.info("DATA SIZE " + data.size());
-            for (Pair<String, Pair<String, String>> p : data) {
-                try {
-                    if (fileStorage.put(p.getFirst(), p.getSecond().getFirst(), p.getSecond().getSecond()) >= 0) {
-                        cache.put(p.getFirst(), p.getSecond().getFirst(), p.getSecond().getSecond());
+            ArrayList<Pair<String, Pair<String, String>>> data;
+            while ((data = Common.readChunk(ois)) != null) {
+                logger.info("DATA SIZE " + data.size());
+                fileStorage.putAll(data);
+                negativeCache.clear();
+                for (Pair<String, Pair<String, String>> p : data) {
+                    try {
+                        cache.write(writePolicy, p.getFirst(), p.getSecond().getFirst(), p.getSecond().getSecond());
+                    } catch (InvalidPasswordException e) {
+                        e.printStackTrace();
                     }
-                } catch (InvalidPasswordException e) {
-                    e.printStackTrace();
                 }
             }
             int numReplica = 0;
@@ -286,8 +293,10 @@ public class KVIntraCommunication implements Runnable {
             Pair<Integer, Pair<String, String>> data = (Pair<Integer, Pair<String, String>>) ois.readObject();
             int numReplicas = data.getFirst() - 1;
             Pair<String, String> kvPair = data.getSecond();
-            if (fileStorage.put(kvPair.getFirst(), kvPair.getSecond()) >= 0) {
-                cache.put(kvPair.getFirst(), kvPair.getSecond());
+            int ret = fileStorage.put(kvPair.getFirst(), kvPair.getSecond());
+            negativeCache.invalidate(kvPair.getFirst());
+            if (ret >= 0) {
+                cache.write(writePolicy, kvPair.getFirst(), kvPair.getSecond());
             }
             // Forward pair to my successor
             if (numReplicas > 0) {
@@ -303,14 +312,16 @@ public class KVIntraCommunication implements Runnable {
      */
     private void releaseLock() {
         logger.info("Releasing the lock");
-        if (metadata.size() < 3) {
-            data.forEach((p) -> {
-                try {
-                    fileStorage.remove(p.getFirst());
-                } catch (InvalidPasswordException e) {
-                    e.printStackTrace();
-                }
-            });
+        if (metadata.size() < 3 && sentRange != null) {
+            try (StorageCursor cursor = fileStorage.cursor(sentRange.getFirst(), sentRange.getSecond())) {
+                cursor.forEachRemaining((p) -> {
+                    try {
+                        fileStorage.remove(p.getFirst());
+                    } catch (InvalidPasswordException e) {
+                        e.printStackTrace();
+                    }
+                });
+            }
         }
 
         serverStatus.setStatus(Constants.ACTIVE);
@@ -371,38 +382,48 @@ public class KVIntraCommunication implements Runnable {
         logger.info("Receiving data shutdown");
 
         try {
-            ArrayList<Pair<Integer, Pair<String, Pair<String, String>>>> toSend = new ArrayList<>();
-            ArrayList<Pair<String, Pair<String, String>>> data = (ArrayList<Pair<String, Pair<String, String>>>) ois.readObject();
-            logger.info("DATA SIZE " + data.size());
-            Map.Entry<String, DataMap> successor = metadata.getMySuccessor(this.myHash);
-            for (Pair<String, Pair<String, String>> p : data) {
-                if (successor != null && metadata.size() >= 3) {
-                    // I'm the new responsible for this data. Send the data to my successor
-                    // then my successor will send the data to its successor
-                    if (metadata.isResponsible(this.myHash, p.getFirst())) {
-                        toSend.add(new Pair<>(Constants.NUM_REPLICAS, p));
-                    }
-                    // My successor is a replica for this data. It is the second
-                    // replica because I'm not responsible for the file.
-                    else if (metadata.isReplica(successor.getValue().getEndIndex(), p.getFirst())) {
-                        toSend.add(new Pair<>(Constants.NUM_REPLICAS - 1, p));
-                    }
-                }
-                fileStorage.put(p.getFirst(), p.getSecond().getFirst(), p.getSecond().getSecond());
-
+            ArrayList<Pair<String, Pair<String, String>>> data;
+            while ((data = Common.readChunk(ois)) != null) {
+                logger.info("DATA SIZE " + data.size());
+                fileStorage.putAll(data);
+                negativeCache.clear();
             }
 
-
-
-
             sendAckTo(oos);
 
+            Map.Entry<String, DataMap> successor = metadata.getMySuccessor(this.myHash);
             if (successor != null && metadata.size() >= 3) {
+                Token myToken = Token.fromHex(this.myHash);
+                Token successorToken = Token.fromHex(successor.getValue().getEndIndex());
+                // We don't keep the received data in memory, we read it again from the storage
+                // while we send it to the successor
                 CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
-                    try {
+                    try (StorageCursor cursor = fileStorage.cursor(Token.MIN, Token.MAX)) {
                         Socket s = new Socket(successor.getValue().getIp(), successor.getValue().getIntraPort());
                         ObjectOutputStream oSucc = new ObjectOutputStream(new BufferedOutputStream(s.getOutputStream()));
-                        Common.sendKVPairs(toSend, oSucc, "RECEIVE_REPLICA_SHUTDOWN");
+                        Common.write("RECEIVE_REPLICA_SHUTDOWN".length(), "RECEIVE_REPLICA_SHUTDOWN", oSucc);
+                        ArrayList<Pair<Integer, Pair<String, Pair<String, String>>>> toSend = new ArrayList<>();
+                        while (cursor.hasNext()) {
+                            Pair<String, Pair<String, String>> p = cursor.next();
+                            Token keyToken = Token.of(p.getFirst());
+                            // I'm the new responsible for this data. Send the data to my successor
+                            // then my successor will send the data to its successor
+                            if (metadata.isResponsible(myToken, keyToken)) {
+                                toSend.add(new Pair<>(Constants.NUM_REPLICAS, p));
+                            }
+                            // My successor is a replica for this data. It is the second
+                            // replica because I'm not responsible for the file.
+                            else if (metadata.isReplica(successorToken, keyToken)) {
+                                toSend.add(new Pair<>(Constants.NUM_REPLICAS - 1, p));
+                            }
+                            if (toSend.size() == Common.CHUNK_SIZE) {
+                                Common.writeChunk(toSend, oSucc);
+                                toSend = new ArrayList<>();
+                            }
+                        }
+                        if (!toSend.isEmpty())
+                            Common.writeChunk(toSend, oSucc);
+                        Common.writeChunk(new ArrayList<>(), oSucc);
                         oSucc.close();
                     } catch (IOException e) {
                         // e.printStackTrace();
@@ -410,7 +431,7 @@ public class KVIntraCommunication implements Runnable {
                 });
             }
 
-        } catch (IOException | ClassNotFoundException | InvalidPasswordException e) {
+        } catch (IOException | ClassNotFoundException e) {
             handleError("An error occurred while receiving the data", Constants.INACTIVE);
         }
     }
@@ -424,41 +445,57 @@ public class KVIntraCommunication implements Runnable {
      */
     private void replicaShutdown(ObjectInputStream ois, ObjectOutputStream oos) {
         ArrayList<Pair<Integer, Pair<String, Pair<String, String>>>> data;
+        Map.Entry<String, DataMap> successor = metadata.getMySuccessor(this.myHash);
+        // We open the connection to the successor only if we have something to forward
+        ObjectOutputStream oSucc = null;
         try {
-            ArrayList<Pair<Integer, Pair<String, Pair<String, String>>>> toSend = new ArrayList<>();
-            data = (ArrayList<Pair<Integer, Pair<String, Pair<String, String>>>>) ois.readObject();
-            data.forEach(p -> {
-                try {
-                    if (p.getSecond().getSecond() == null) {
-                        fileStorage.put(p.getSecond().getFirst(), null, p.getSecond().getSecond().getSecond());
-                        cache.put(p.getSecond().getFirst(), null, p.getSecond().getSecond().getSecond());
-                    } else {
-                        fileStorage.put(p.getSecond().getFirst(), p.getSecond().getSecond().getFirst(), p.getSecond().getSecond().getSecond());
-                        cache.put(p.getSecond().getFirst(), p.getSecond().getSecond().getFirst(), p.getSecond().getSecond().getSecond());
-                    }
+            while ((data = Common.readChunk(ois)) != null) {
+                ArrayList<Pair<Integer, Pair<String, Pair<String, String>>>> toSend = new ArrayList<>();
+                ArrayList<Pair<String, Pair<String, String>>> pairs = new ArrayList<>();
+                data.forEach(p -> {
+                    // A pair without <value, password> has nothing to store
+                    if (p.getSecond().getSecond() != null)
+                        pairs.add(p.getSecond());
                     if (p.getFirst() == Constants.NUM_REPLICAS) {
                         toSend.add(new Pair<>(Constants.NUM_REPLICAS - 1, p.getSecond()));
                     }
-                } catch (InvalidPasswordException e) {
-                    e.printStackTrace();
+                });
+                fileStorage.putAll(pairs);
+                negativeCache.clear();
+                for (Pair<String, Pair<String, String>> p : pairs) {
+                    try {
+                        cache.write(writePolicy, p.getFirst(), p.getSecond().getFirst(), p.getSecond().getSecond());
+                    } catch (InvalidPasswordException e) {
+                        e.printStackTrace();
+                    }
                 }
-
-            });
-            Map.Entry<String, DataMap> successor = metadata.getMySuccessor(this.myHash);
-            if (successor != null && toSend.size() != 0) {
-                CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
+                // The pairs that we forward are the last replicas, so the successor does not forward them
+                // and we can send each chunk as soon as we have stored it
+                if (successor != null && toSend.size() != 0) {
                     try {
-                        Socket s = new Socket(successor.getValue().getIp(), successor.getValue().getIntraPort());
-                        ObjectOutputStream oSucc = new ObjectOutputStream(new BufferedOutputStream(s.getOutputStream()));
-                        Common.sendKVPairs(toSend, oSucc, "RECEIVE_REPLICA_SHUTDOWN");
-                        oSucc.close();
+                        if (oSucc == null) {
+                            Socket s = new Socket(successor.getValue().getIp(), successor.getValue().getIntraPort());
+                            oSucc = new ObjectOutputStream(new BufferedOutputStream(s.getOutputStream()));
+                            Common.write("RECEIVE_REPLICA_SHUTDOWN".length(), "RECEIVE_REPLICA_SHUTDOWN", oSucc);
+                        }
+                        Common.writeChunk(toSend, oSucc);
                     } catch (IOException e) {
                         //e.printStackTrace();
+                        successor = null;
                     }
-                });
+                }
             }
         } catch (IOException | ClassNotFoundException e) {
             //e.printStackTrace();
+        } finally {
+            if (oSucc != null) {
+                try {
+                    Common.writeChunk(new ArrayList<>(), oSucc);
+                    oSucc.close();
+                } catch (IOException e) {
+                    //e.printStackTrace();
+                }
+            }
         }
     }
 
@@ -479,30 +516,35 @@ public class KVIntraCommunication implements Runnable {
             this.metadata.addAll(mtd);
 
             if (!metadata.getMyPredecessor(this.myHash).equals(preMetadata.getMyPredecessor(this.myHash))) {
-                ArrayList<Pair<String, Pair<String, String>>> myData = fileStorage.getAll();
-                ArrayList<Pair<Integer, Pair<String, Pair<String, String>>>> toSend = new ArrayList<>();
                 Map.Entry<String, DataMap> predecessor = metadata.getMyPredecessorEntry(this.myHash);
 
-                if (myData.size() > 0) {
-                    myData.forEach(p -> {
-                        if (metadata.isResponsible(predecessor.getKey(), computeHash(p.getFirst()))) {
-                            toSend.add(new Pair<>(1, p));
-                        } else {
-                            toSend.add(new Pair<>(2, p));
-
-                        }
-
-                    });
-
-                    try {
+                try (StorageCursor cursor = fileStorage.cursor(Token.MIN, Token.MAX)) {
+                    if (cursor.hasNext()) {
+                        Token predecessorToken = Token.fromHex(predecessor.getKey());
                         Map.Entry<String, DataMap> successor = metadata.getMySuccessor(this.myHash);
                         Socket s = new Socket(successor.getValue().getIp(), successor.getValue().getIntraPort());
                         ObjectOutputStream oSucc = new ObjectOutputStream(new BufferedOutputStream(s.getOutputStream()));
-                        Common.sendKVPairs(toSend, oSucc, "RECEIVE_REPLICA_SHUTDOWN");
+                        Common.write("RECEIVE_REPLICA_SHUTDOWN".length(), "RECEIVE_REPLICA_SHUTDOWN", oSucc);
+                        ArrayList<Pair<Integer, Pair<String, Pair<String, String>>>> toSend = new ArrayList<>();
+                        while (cursor.hasNext()) {
+                            Pair<String, Pair<String, String>> p = cursor.next();
+                            if (metadata.isResponsible(predecessorToken, Token.of(p.getFirst()))) {
+                                toSend.add(new Pair<>(1, p));
+                            } else {
+                                toSend.add(new Pair<>(2, p));
+                            }
+                            if (toSend.size() == Common.CHUNK_SIZE) {
+                                Common.writeChunk(toSend, oSucc);
+                                toSend = new ArrayList<>();
+                            }
+                        }
+                        if (!toSend.isEmpty())
+                            Common.writeChunk(toSend, oSucc);
+                        Common.writeChunk(new ArrayList<>(), oSucc);
                         oSucc.close();
-                    } catch (IOException e) {
-                        e.printStackTrace();
                     }
+                } catch (IOException e) {
+                    e.printStackTrace();
                 }
             }
         } catch (IOException e) {
@@ -892,27 +934,31 @@ public class KVIntraCommunication implements Runnable {
      * @throws IOException
      */
     private void sendKVPairs(String newServerEndIndex, String newServerStartIndex, ObjectOutputStream oos, String type) throws IOException {
-        data = new ArrayList<>();
-
-        data = fileStorage.getRange(newServerEndIndex, newServerStartIndex);
+        sentRange = new Pair<>(Token.fromHex(newServerStartIndex), Token.fromHex(newServerEndIndex));
+        ArrayList<Pair<Token, Token>> ranges = new ArrayList<>();
+        ranges.add(sentRange);
         if (type.equals("RECEIVE_DATA_NEW_AND_REPLICA")) {
             // I get my predecessor. I need this data because I have the replicas of my predecessor.
             Pair<String, String> predecessorHash = metadata.getMyPredecessor(this.myHash);
             // I get the predecessor of my predecessor. I need this because I can also have the replicas
             // of precedecessor(my predecessor)
             Pair<String, String> predPredHash = metadata.getMyPredecessor(predecessorHash.getSecond());
-            Pair<ArrayList<Pair<String, Pair<String, String>>>, ArrayList<Pair<String, Pair<String, String>>>> replicas = fileStorage.getReplicas(predecessorHash, predPredHash);
-
-            data.addAll(replicas.getFirst());
-            data.addAll(replicas.getSecond());
-            toBeRemoved = replicas.getSecond();
+            ranges.add(new Pair<>(Token.fromHex(predecessorHash.getFirst()), Token.fromHex(predecessorHash.getSecond())));
+            // If the two ranges are the same we send the data only once
+            if (!predPredHash.getFirst().equals(predecessorHash.getFirst()) || !predPredHash.getSecond().equals(predecessorHash.getSecond()))
+                ranges.add(new Pair<>(Token.fromHex(predPredHash.getFirst()), Token.fromHex(predPredHash.getSecond())));
             type = "RECEIVE_DATA";
         }
         oos.flush();
         oos.writeLong(type.length());
         oos.writeUTF(type);
-        oos.writeObject(data);
-        oos.flush();
+        // We read the data one range at a time and we send it in chunks, so we never have all the data in memory
+        for (Pair<Token, Token> range : ranges) {
+            try (StorageCursor cursor = fileStorage.cursor(range.getFirst(), range.getSecond())) {
+                Common.writeChunks(cursor, oos);
+            }
+        }
+        Common.writeChunk(new ArrayList<>(), oos);
     }
 
 
@@ -1,9 +1,20 @@
 package de.tum.i13.server.kv;
 
 import de.tum.i13.server.Cache.Cache;
+import de.tum.i13.server.Cache.CacheInterface;
+import de.tum.i13.server.Cache.CacheSnapshot;
+import de.tum.i13.server.Cache.CacheStatistics;
+import de.tum.i13.server.Cache.NegativeCache;
+import de.tum.i13.server.Cache.ShardedCache;
+import de.tum.i13.server.FileStorage.BlobLog;
+import de.tum.i13.server.FileStorage.Compression;
 import de.tum.i13.server.FileStorage.FileStorage;
+import de.tum.i13.server.FileStorage.FileStorageInterface;
+import de.tum.i13.server.FileStorage.LSMStorage;
 import de.tum.i13.shared.*;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
 import java.io.*;
 import java.net.InetSocketAddress;
 import java.net.Socket;
@@ -27,14 +38,26 @@ public class KVStore implements KVStoreInterface {
     public static Logger logger = Logger.getLogger(KVStore.class.getName());
 
     private int cacheSize;
+    private long cacheBytes;
+    private int cacheShards;
+    // How the puts of the clients change the cache
+    private String writePolicy;
     private String displacementPolicy;
     private Metadata metadata;
-    private Cache cache;
-    private FileStorage fileStorage;
+    private CacheInterface cache;
+    // Keys that we searched on disk without finding them
+    private NegativeCache negativeCache;
+    // Saves the keys of the cache, null if the snapshot is disabled
+    private Timer snapshotTimer;
+    // Name of the statistics of the cache in JMX, null if we could not register them
+    private ObjectName statisticsName;
+    private FileStorageInterface fileStorage;
     private Path storagePath;
     private InetSocketAddress ecs;
     private ServerStatus serverStatus;
     private String myHash;
+    // Token of this server, used to check which keys we are responsible for
+    private Token myToken;
     private Path logFile;
     private String logLevel;
     private FileHandler fileHandler;
@@ -59,11 +82,23 @@ public class KVStore implements KVStoreInterface {
         metadata = new Metadata(logger);
         this.serverStatus = serverStatus;
         this.cacheSize = cfg.cachesize;
+        this.cacheBytes = cfg.cacheBytes;
+        this.cacheShards = cfg.cacheShards;
+        this.writePolicy = CacheInterface.checkWritePolicy(cfg.clientWritePolicy);
+        CacheInterface.checkWritePolicy(cfg.clusterWritePolicy);
         this.displacementPolicy = cfg.cachedisplacement;
         this.storagePath = cfg.dataDir;
         this.ecs = cfg.bootstrap;
-        this.fileStorage = new FileStorage(this.storagePath, logger);
-        this.myHash = Utility.computeHash(cfg.listenaddr, cfg.port);
+        Common.chunkCompression = Compression.of(cfg.compression, 0);
+        if (Constants.LSM.equals(cfg.storage))
+            this.fileStorage = new LSMStorage(this.storagePath, logger, cfg.fsync, cfg.fsyncInterval);
+        else {
+            Compression compression = Compression.of(cfg.compression, cfg.compressionThreshold);
+            this.fileStorage = new FileStorage(this.storagePath, logger, cfg.fsync, cfg.fsyncInterval,
+                    compression, new BlobLog(this.storagePath, cfg.blobThreshold, compression));
+        }
+        this.myToken = Token.of(cfg.listenaddr, cfg.port);
+        this.myHash = myToken.toHex();
         this.temporaryData = new ConcurrentHashMap<>();
         // Restore previous data
         if (!test) {
@@ -73,15 +108,46 @@ public class KVStore implements KVStoreInterface {
             }
         }
         try {
-            cache = new Cache(this.cacheSize, this.displacementPolicy, logger);
+            if (this.cacheShards > 1)
+                cache = new ShardedCache(this.cacheShards, this.cacheSize, this.cacheBytes, this.displacementPolicy, logger);
+            else
+                cache = new Cache(this.cacheSize, this.cacheBytes, this.displacementPolicy, logger);
         } catch (NullPointerException e) {
             throw new NullPointerException();
         } catch (IllegalArgumentException e) {
             throw new IllegalArgumentException();
         }
 
+        negativeCache = new NegativeCache(cfg.negativeCacheSize);
+
+        try {
+            statisticsName = cache.getStatistics().register(cfg.listenaddr + ":" + cfg.port);
+        } catch (JMException e) {
+            logger.warning("Cache statistics not registered in JMX: " + e.getMessage());
+        }
+
+        if (!test && cfg.cacheSnapshotInterval > 0) {
+            // We load the keys of the last snapshot while we join the network
+            CompletableFuture.runAsync(() -> {
+                try {
+                    int loaded = CacheSnapshot.warmUp(this.storagePath, cache, key -> fileStorage.get(key));
+                    logger.info("Cache warmed up with " + loaded + " pairs");
+                } catch (IOException e) {
+                    logger.warning("Cache snapshot not readable: " + e.getMessage());
+                }
+            });
+            snapshotTimer = new Timer(true);
+            long interval = cfg.cacheSnapshotInterval * 1000L;
+            snapshotTimer.schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    saveCacheSnapshot();
+                }
+            }, interval, interval);
+        }
+
         // Send a request to the ECS to enter in the network
-        kvIntraCommunication = new KVIntraCommunication(cfg, this.serverStatus, metadata, fileStorage, logger, cache);
+        kvIntraCommunication = new KVIntraCommunication(cfg, this.serverStatus, metadata, fileStorage, logger, cache, negativeCache);
         kvIntra = new Thread(kvIntraCommunication);
         kvIntra.start();
 
@@ -127,13 +193,36 @@ public class KVStore implements KVStoreInterface {
      */
     public void close() {
         logger.info("Closing KVStore");
+        if (snapshotTimer != null) {
+            snapshotTimer.cancel();
+            saveCacheSnapshot();
+        }
+        if (statisticsName != null) {
+            try {
+                CacheStatistics.unregister(statisticsName);
+            } catch (JMException e) {
+                logger.warning("Cache statistics not unregistered from JMX: " + e.getMessage());
+            }
+        }
         kvIntraCommunication.close();
-
+        fileStorage.close();
 
         logger.info("Closing log file");
         fileHandler.close();
     }
 
+    /**
+     * This function saves the keys of the cache in the data directory
+     */
+    private void saveCacheSnapshot() {
+        try {
+            int saved = CacheSnapshot.save(this.storagePath, cache);
+            logger.fine("Cache snapshot saved with " + saved + " keys");
+        } catch (IOException e) {
+            logger.warning("Cache snapshot not saved: " + e.getMessage());
+        }
+    }
+
     public Pair<Path, String> getLog() {
         return new Pair<>(logFile, logLevel);
     }
@@ -153,7 +242,7 @@ public class KVStore implements KVStoreInterface {
      */
     public int put(String key, String value, Object... password) {
         if (serverStatus.checkEqual(Constants.ACTIVE)) {
-            if (metadata.isResponsible(this.myHash, Utility.computeHash(key))) {
+            if (metadata.isResponsible(myToken, Token.of(key))) {
                 int ret = -1;
 
                 // Add on disk
@@ -180,17 +269,18 @@ public class KVStore implements KVStoreInterface {
                         return Constants.INVALID_PASSWORD;
                     }
                 }
+                negativeCache.invalidate(key);
 
                 if (ret != Constants.ERROR) { // We don't have any error
                     if (password.length > 0) {
                         try {
-                            cache.put(key, value, password);
+                            cache.write(writePolicy, key, value, password);
                         } catch (InvalidPasswordException e) {
                             return Constants.INVALID_PASSWORD;
                         }
                     } else {
                         try {
-                            cache.put(key, value);
+                            cache.write(writePolicy, key, value);
                         } catch (InvalidPasswordException e) {
                             return Constants.INVALID_PASSWORD;
                         }
@@ -258,17 +348,17 @@ public class KVStore implements KVStoreInterface {
         logger.info("Server Status: " + serverStatus.getStatus());
         if (serverStatus.checkEqual(Constants.ACTIVE)) {
             logger.info("Active Server, processing request");
-            String hashData = Utility.computeHash(key);
+            Token hashData = Token.of(key);
 
             if (metadata.size() >= Constants.NUM_REPLICAS + 1) {
-                if (metadata.isReplica(myHash, hashData)) {
+                if (metadata.isReplica(myToken, hashData)) {
                     try {
                         return searchDataAndReturn(key, psw);
                     } catch (InvalidPasswordException e) {
                         return Constants.INVALIDPASSWORD;
                     }
                 } else {
-                    if (metadata.isResponsible(myHash, hashData)) {
+                    if (metadata.isResponsible(myToken, hashData)) {
                         try {
                             return searchDataAndReturn(key, psw);
                         } catch (InvalidPasswordException e) {
@@ -277,7 +367,7 @@ public class KVStore implements KVStoreInterface {
                     }
                 }
             } else {
-                if (metadata.isResponsible(myHash, hashData)) {
+                if (metadata.isResponsible(myToken, hashData)) {
                     try {
                         return searchDataAndReturn(key, psw);
                     } catch (InvalidPasswordException e) {
@@ -306,7 +396,7 @@ public class KVStore implements KVStoreInterface {
     @Override
     public int delete(String key, Object... pwd) throws InvalidPasswordException {
         if (serverStatus.checkEqual(Constants.ACTIVE)) {
-            if (metadata.isResponsible(myHash, Utility.computeHash(key))) {
+            if (metadata.isResponsible(myToken, Token.of(key))) {
                 // Remove from disk
                 Pair<String, String> deleted = null;
                 if (pwd.length == 0)
@@ -354,12 +444,23 @@ public class KVStore implements KVStoreInterface {
         logger.info("get from cache: " + retValue);
 
         if (retValue == null) {
+            // The key was missing the last time that we searched it and nobody wrote it after
+            if (negativeCache.contains(key)) {
+                logger.info("get from negative cache: " + key);
+                return null;
+            }
+            long version = negativeCache.version();
             // Search on disk
+            long start = System.nanoTime();
             retValue = fileStorage.get(key, pwd);
+            cache.getStatistics().recordLoad(System.nanoTime() - start);
             logger.info("Get from filestorage: " + retValue);
             // If I found the data on disk I store the data also in the cache
             if (retValue != null) {
                 cache.put(key, retValue, pwd);
+            } else if (!fileStorage.isUpdate(key)) {
+                // A key protected by another password is not missing
+                negativeCache.add(key, version);
             }
         }
         return retValue;
@@ -411,6 +512,13 @@ public class KVStore implements KVStoreInterface {
         return null;
     }
 
+    /**
+     * @return the statistics of the cache in string format
+     */
+    public String getCacheStatistics() {
+        return cache.getStatistics().toString();
+    }
+
     /**
      * @return the metadata in string format
      */
@@ -29,9 +29,45 @@ public class Config {
     @CommandLine.Option(names = "-c", description = "Sets the cachesize, e.g., 100 keys")
     public int cachesize;
 
-    @CommandLine.Option(names = "-s", description = "Sets the cache displacement strategy, FIFO, LRU, LFU")
+    @CommandLine.Option(names = "-cb", description = "Sets the maximum size of the cache in bytes (keys, values and passwords), 0 for no limit", defaultValue = "0")
+    public long cacheBytes;
+
+    @CommandLine.Option(names = "-cs", description = "Sets the number of shards of the cache, every shard has its own lock and displacement policy", defaultValue = "1")
+    public int cacheShards;
+
+    @CommandLine.Option(names = "-nc", description = "Sets how many missing keys the server remembers to answer without reading the disk, 0 to disable", defaultValue = "1000")
+    public int negativeCacheSize;
+
+    @CommandLine.Option(names = "-cw", description = "Seconds between two snapshots of the keys in the cache, used to warm up the cache after a restart, 0 to disable", defaultValue = "60")
+    public int cacheSnapshotInterval;
+
+    @CommandLine.Option(names = "-wc", description = "Sets how the puts of the clients change the cache, THROUGH (add the pair), AROUND (update only the cached keys), INVALIDATE (remove the key)", defaultValue = "THROUGH")
+    public String clientWritePolicy;
+
+    @CommandLine.Option(names = "-wr", description = "Sets how the replicas and the rebalancing change the cache, THROUGH, AROUND, INVALIDATE", defaultValue = "AROUND")
+    public String clusterWritePolicy;
+
+    @CommandLine.Option(names = "-s", description = "Sets the cache displacement strategy, FIFO, LRU, LFU, LFUDA (LFU with aging), CLOCK (concurrent approximation of LRU), TINYLFU (LRU window with frequency based admission), ARC (adaptive between LRU and LFU)")
     public String cachedisplacement;
 
+    @CommandLine.Option(names = "-st", description = "Sets the storage engine, FILEMAP, LSM", defaultValue = "FILEMAP")
+    public String storage;
+
+    @CommandLine.Option(names = "-fs", description = "Sets when the write-ahead log is forced to disk, SYNC (every write), INTERVAL, OS", defaultValue = "OS")
+    public String fsync;
+
+    @CommandLine.Option(names = "-fi", description = "Milliseconds between two forces of the write-ahead log with the INTERVAL policy", defaultValue = "100")
+    public int fsyncInterval;
+
+    @CommandLine.Option(names = "-vc", description = "Sets the codec of the values stored on disk and of the data sent to the other servers, NONE, DEFLATE", defaultValue = "NONE")
+    public String compression;
+
+    @CommandLine.Option(names = "-vt", description = "Values of at least this many bytes are compressed on disk", defaultValue = "1024")
+    public int compressionThreshold;
+
+    @CommandLine.Option(names = "-vb", description = "Values of at least this many bytes are stored in blob files, 0 to keep all the values in the segments", defaultValue = "0")
+    public int blobThreshold;
+
     @CommandLine.Option(names = "-h", description = "Displays help", usageHelp = true)
     public boolean usagehelp;
 
@@ -52,6 +88,30 @@ public class Config {
             System.exit(-1);
         }
 
+        if (!(cfg.storage.equals(Constants.FILEMAP) || cfg.storage.equals(Constants.LSM))) {
+            CommandLine.usage(new Config(), System.out);
+            System.out.println("Option storage can only have value FILEMAP or LSM");
+            System.exit(-1);
+        }
+
+        if (!(cfg.fsync.equals(Constants.FSYNC_SYNC) || cfg.fsync.equals(Constants.FSYNC_INTERVAL) || cfg.fsync.equals(Constants.FSYNC_OS)) || cfg.fsyncInterval <= 0) {
+            CommandLine.usage(new Config(), System.out);
+            System.out.println("Option fsync can only have value SYNC, INTERVAL or OS, the interval must be positive");
+            System.exit(-1);
+        }
+
+        if (!(cfg.compression.equals(Constants.COMPRESSION_DEFLATE) || cfg.compression.equals(Constants.COMPRESSION_NONE)) || cfg.compressionThreshold < 0) {
+            CommandLine.usage(new Config(), System.out);
+            System.out.println("Option compression can only have value DEFLATE or NONE, the threshold must not be negative");
+            System.exit(-1);
+        }
+
+        if (cfg.blobThreshold < 0) {
+            CommandLine.usage(new Config(), System.out);
+            System.out.println("Option blobThreshold must not be negative");
+            System.exit(-1);
+        }
+
         if (!Files.exists(cfg.dataDir)) {
             try {
                 Files.createDirectory(cfg.dataDir);
@@ -88,7 +148,19 @@ public class Config {
                 ", logfile=" + logfile +
                 ", loglevel='" + loglevel + '\'' +
                 ", cachesize=" + cachesize +
+                ", cacheBytes=" + cacheBytes +
+                ", cacheShards=" + cacheShards +
+                ", negativeCacheSize=" + negativeCacheSize +
+                ", cacheSnapshotInterval=" + cacheSnapshotInterval +
+                ", clientWritePolicy='" + clientWritePolicy + '\'' +
+                ", clusterWritePolicy='" + clusterWritePolicy + '\'' +
                 ", cachedisplacement='" + cachedisplacement + '\'' +
+                ", storage='" + storage + '\'' +
+                ", fsync='" + fsync + '\'' +
+                ", fsyncInterval=" + fsyncInterval +
+                ", compression='" + compression + '\'' +
+                ", compressionThreshold=" + compressionThreshold +
+                ", blobThreshold=" + blobThreshold +
                 ", usagehelp=" + usagehelp +
                 '}';
     }
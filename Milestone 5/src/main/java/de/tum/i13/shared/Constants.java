@@ -9,6 +9,20 @@ public class Constants {
     public static final String LRU = "LRU";
     public static final String LFU = "LFU";
     public static final String FIFO = "FIFO";
+    public static final String LFU_AGING = "LFUDA";
+    public static final String CLOCK = "CLOCK";
+    public static final String TINYLFU = "TINYLFU";
+    public static final String ARC = "ARC";
+    public static final String FILEMAP = "FILEMAP";
+    public static final String LSM = "LSM";
+    public static final String FSYNC_SYNC = "SYNC";
+    public static final String FSYNC_INTERVAL = "INTERVAL";
+    public static final String FSYNC_OS = "OS";
+    public static final String COMPRESSION_DEFLATE = "DEFLATE";
+    public static final String COMPRESSION_NONE = "NONE";
+    public static final String WRITE_THROUGH = "THROUGH";
+    public static final String WRITE_AROUND = "AROUND";
+    public static final String WRITE_INVALIDATE = "INVALIDATE";
     public static final String GET_COMMAND = "get ";
     public static final String DELETE = "delete ";
     public static final String PUT = "put ";
@@ -16,6 +30,8 @@ public class Constants {
     public static final int KEY_MAX_LENGTH = 20;
     public static final int VALUE_MAX_LENGTH = 120000;
     public static final int MAX_FILE_SIZE = 1000;
+    // Segments of the FileStorage that keep their file open, the others are opened again when we use them
+    public static final int MAX_OPEN_SEGMENTS = 256;
     public static final String HEX_START_INDEX = "00000000000000000000000000000000";
     public static final String HEX_END_INDEX = "FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFF";
     public static final String INACTIVE = "Inactive";
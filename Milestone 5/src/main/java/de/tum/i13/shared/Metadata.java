@@ -18,15 +18,23 @@ import java.util.logging.Logger;
  * - The port of the server
  * - The hash of the first file for which this server is responsible
  * - The hash of the last file for which this server is responsible
+ * The servers are sorted by their Token, the hex hashes are used only in the messages.
  *
  * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
  */
 public class Metadata implements Serializable {
-    private TreeMap<String, DataMap> map = new TreeMap<>(new ComparatorMetadata());
+    private NavigableMap<Token, DataMap> map = new TreeMap<>();
 
     public Logger logger;
 
     public Metadata(TreeMap<String, DataMap> map) {
+        map.forEach((hash, dm) -> this.map.put(Token.fromHex(hash), dm));
+    }
+
+    /**
+     * @param map the servers indexed by their token
+     */
+    public Metadata(NavigableMap<Token, DataMap> map) {
         this.map = map;
     }
 
@@ -46,7 +54,7 @@ public class Metadata implements Serializable {
             if (ipAndPort.length != 2) throw new InvalidParameterException();
 
             // String ip, int port, String startIndex, String endIndex, int intraPort
-            map.putIfAbsent(singleData[1], new DataMap(ipAndPort[0], Integer.parseInt(ipAndPort[1]), singleData[0], singleData[1], -1));
+            map.putIfAbsent(Token.fromHex(singleData[1]), new DataMap(ipAndPort[0], Integer.parseInt(ipAndPort[1]), singleData[0], singleData[1], -1));
         });
     }
 
@@ -57,6 +65,16 @@ public class Metadata implements Serializable {
      * @throws NoSuchElementException
      */
     public Pair<String, Integer> getReplica(String index, int replica) throws NoSuchElementException {
+        return getReplica(Token.fromHex(index), replica);
+    }
+
+    /**
+     * @param index
+     * @param replica
+     * @return
+     * @throws NoSuchElementException
+     */
+    public Pair<String, Integer> getReplica(Token index, int replica) throws NoSuchElementException {
         Optional<DataMap> data = Optional.empty();
         // Replica == 1 means that the server is the first replica and 2 means that it is the second replica
         if (replica == 1 || replica == 2) {
@@ -65,7 +83,7 @@ public class Metadata implements Serializable {
             }
 
             try {
-                SortedMap<String, DataMap> m = map.tailMap(index);
+                SortedMap<Token, DataMap> m = map.tailMap(index);
                 if (m.isEmpty()) {
                     data = map.values().stream().skip(replica).findFirst();
                 } else {
@@ -83,13 +101,13 @@ public class Metadata implements Serializable {
         return data.map(dataMap -> new Pair<>(dataMap.getIp(), dataMap.getPort())).orElseGet(() -> new Pair<>(null, null));
     }
 
-    private ArrayList<String> getReplicaHash(String hash, int numReplica) {
-        ArrayList<String> replicas = new ArrayList<>();
-        String currentHash = hash;
-        String successorHash = null;
+    private ArrayList<Token> getReplicaHash(Token hash, int numReplica) {
+        ArrayList<Token> replicas = new ArrayList<>();
+        Token currentHash = hash;
+        Token successorHash = null;
         if (map.size() > numReplica) {
             for (int i = 0; i < numReplica; i++) {
-                successorHash = getMySuccessor(currentHash).getKey();
+                successorHash = successorEntry(currentHash).getKey();
                 replicas.add(successorHash);
                 currentHash = successorHash;
             }
@@ -106,7 +124,16 @@ public class Metadata implements Serializable {
      * @return
      */
     public boolean isReplica(String serverHash, String kvHash) {
-        String responsibleServer = getResponsibleHash(kvHash);
+        return isReplica(Token.fromHex(serverHash), Token.fromHex(kvHash));
+    }
+
+    /**
+     * @param serverHash
+     * @param kvHash
+     * @return
+     */
+    public boolean isReplica(Token serverHash, Token kvHash) {
+        Token responsibleServer = getResponsibleHash(kvHash);
         return getReplicaHash(responsibleServer, Constants.NUM_REPLICAS).contains(serverHash);
     }
 
@@ -114,11 +141,11 @@ public class Metadata implements Serializable {
      * @param kvHash
      * @return
      */
-    private String getResponsibleHash(String kvHash) {
+    private Token getResponsibleHash(Token kvHash) {
         if (map == null) {
             throw new NoSuchElementException();
         }
-        String hash = null;
+        Token hash = null;
         try {
             hash = map.ceilingKey(kvHash);
             if (hash == null) {
@@ -139,7 +166,11 @@ public class Metadata implements Serializable {
      * @return Successor's data
      */
     public Map.Entry<String, DataMap> getMySuccessor(String hash) {
-        Map.Entry<String, DataMap> successorHash;
+        return hexEntry(successorEntry(Token.fromHex(hash)));
+    }
+
+    private Map.Entry<Token, DataMap> successorEntry(Token hash) {
+        Map.Entry<Token, DataMap> successorHash;
         successorHash = map.higherEntry(hash);
         if (successorHash == null)
             successorHash = map.firstEntry();
@@ -147,6 +178,11 @@ public class Metadata implements Serializable {
         return successorHash;
     }
 
+    // The callers outside this class use the hex hash of the servers
+    private static Map.Entry<String, DataMap> hexEntry(Map.Entry<Token, DataMap> entry) {
+        return entry == null ? null : new AbstractMap.SimpleImmutableEntry<>(entry.getKey().toHex(), entry.getValue());
+    }
+
     public Pair<String, SocketAddress> getSuccessorAddress(String hash) {
         Map.Entry<String, DataMap> firstSuccessor = getMySuccessor(hash);
         String hashFirstSuccessor = firstSuccessor.getKey();
@@ -167,15 +203,15 @@ public class Metadata implements Serializable {
     }
 
     public Map.Entry<String, DataMap> getMyPredecessorEntry(String hash) {
-        Map.Entry<String, DataMap> predecessorHash = map.lowerEntry(hash);
+        Map.Entry<Token, DataMap> predecessorHash = map.lowerEntry(Token.fromHex(hash));
         if (predecessorHash == null)
             predecessorHash = map.lastEntry();
 
-        return predecessorHash;
+        return hexEntry(predecessorHash);
     }
 
     public Pair<String, String> getMyPredecessor(String hash) {
-        Map.Entry<String, DataMap> successorHash = map.lowerEntry(hash);
+        Map.Entry<Token, DataMap> successorHash = map.lowerEntry(Token.fromHex(hash));
         if (successorHash == null)
             successorHash = map.lastEntry();
 
@@ -184,9 +220,8 @@ public class Metadata implements Serializable {
 
 
     public void addAll(Metadata m) {
-        ArrayList<Pair<String, DataMap>> mm = m.getAll();
         map.clear();
-        mm.forEach(p -> map.putIfAbsent(p.getFirst(), p.getSecond()));
+        map.putAll(m.map);
     }
 
 
@@ -195,9 +230,9 @@ public class Metadata implements Serializable {
     }
 
     public String popFirstKey() {
-        String key = map.firstEntry().getKey();
+        Token key = map.firstEntry().getKey();
         map.remove(key);
-        return key;
+        return key.toHex();
     }
 
     /**
@@ -209,10 +244,21 @@ public class Metadata implements Serializable {
      * @return A pair <IP, port>
      */
     public Pair<String, Integer> getResponsible(String index) throws NoSuchElementException, NullPointerException {
+        return getResponsible(Token.fromHex(index));
+    }
+
+    /**
+     * This function return the ip and the port of the server
+     * that is responsible for the token passed as parameter
+     *
+     * @param index the token of the file that we want to access
+     * @return A pair <IP, port>
+     */
+    public Pair<String, Integer> getResponsible(Token index) throws NoSuchElementException, NullPointerException {
         if (map == null) {
             throw new NoSuchElementException();
         }
-        Map.Entry<String, DataMap> m = null;
+        Map.Entry<Token, DataMap> m = null;
         try {
             m = map.ceilingEntry(index);
 
@@ -234,16 +280,16 @@ public class Metadata implements Serializable {
         if (map == null) {
             throw new NoSuchElementException();
         }
-        Map.Entry<String, DataMap> m = null;
+        Map.Entry<Token, DataMap> m = null;
         try {
-            m = map.ceilingEntry(index);
+            m = map.ceilingEntry(Token.fromHex(index));
         } catch (NullPointerException e) {
             throw new NullPointerException();
         }
 
-        String hash = (m == null) ? map.firstEntry().getKey() : m.getKey();
+        Token hash = (m == null) ? map.firstEntry().getKey() : m.getKey();
 
-        return hash;
+        return hash.toHex();
     }
 
     /**
@@ -274,19 +320,19 @@ public class Metadata implements Serializable {
      * StartHash, EndHash, ip:port;
      */
     public String toStringReplicas() {
-        Map.Entry<String, DataMap> next = null;
-        Map.Entry<String, DataMap> nextNext = null;
+        Map.Entry<Token, DataMap> next = null;
+        Map.Entry<Token, DataMap> nextNext = null;
         boolean complete = false;
         if (map.size() >= 3) {
             complete = true;
-            Map.Entry<String, DataMap> entry = map.firstEntry();
+            Map.Entry<Token, DataMap> entry = map.firstEntry();
             next = map.higherEntry(entry.getKey());
             nextNext = map.higherEntry(next.getKey());
         }
 
         StringBuilder strBuilder = new StringBuilder();
 
-        for (Map.Entry<String, DataMap> entry : map.entrySet()) {
+        for (Map.Entry<Token, DataMap> entry : map.entrySet()) {
 
             DataMap d = entry.getValue();
             strBuilder.append(d.getStartIndex());
@@ -332,12 +378,12 @@ public class Metadata implements Serializable {
 
     public ArrayList<Pair<String, DataMap>> getAll() {
         ArrayList<Pair<String, DataMap>> a = new ArrayList<>();
-        map.forEach((s, d) -> a.add(new Pair<>(s, d)));
+        map.forEach((s, d) -> a.add(new Pair<>(s.toHex(), d)));
         return a;
     }
 
     public void removeEntry(String serverHash) {
-        map.remove(serverHash);
+        map.remove(Token.fromHex(serverHash));
     }
 
     public boolean isEmpty() {
@@ -346,7 +392,18 @@ public class Metadata implements Serializable {
 
 
     public boolean isResponsible(String serverHash, String fileHash) {
-        String key = map.ceilingKey(fileHash);
+        return isResponsible(Token.fromHex(serverHash), Token.fromHex(fileHash));
+    }
+
+    /**
+     * This function checks if a server is responsible for a key
+     *
+     * @param serverHash token of the server
+     * @param fileHash   token of the key
+     * @return true if the server is responsible for the key
+     */
+    public boolean isResponsible(Token serverHash, Token fileHash) {
+        Token key = map.ceilingKey(fileHash);
         if (key == null) {
             key = map.firstKey();
         }
@@ -0,0 +1,166 @@
+package de.tum.i13.shared;
+
+import java.io.Serializable;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * This class is a position on the ring of consistent hashing, i.e. the MD5 of a key or of a server.
+ * We store the 128 bits in two longs (hi contains the first 8 bytes of the digest), the longs are
+ * compared as unsigned numbers so the order is the same of the hex representation.
+ * In the server we use tokens to compare hashes, the hex string is used only in the messages
+ * that we exchange with the clients, the other servers and the ECS.
+ *
+ * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
+ */
+public final class Token implements Comparable<Token>, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static final Token MIN = new Token(0L, 0L);
+    public static final Token MAX = new Token(-1L, -1L);
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    // MessageDigest is not thread safe, so every thread has its own instance
+    private static final ThreadLocal<MessageDigest> MD5 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final long hi;
+    private final long lo;
+
+    public Token(long hi, long lo) {
+        this.hi = hi;
+        this.lo = lo;
+    }
+
+    /**
+     * This function computes the token of a key
+     *
+     * @param key the key
+     * @return the MD5 of the key
+     */
+    public static Token of(String key) {
+        return of(key.getBytes());
+    }
+
+    /**
+     * This function computes the token of a server
+     *
+     * @param ip   ip of the server
+     * @param port port of the server
+     * @return the MD5 of ip+port
+     */
+    public static Token of(String ip, int port) {
+        return of((ip + port).getBytes());
+    }
+
+    private static Token of(byte[] data) {
+        MessageDigest md = MD5.get();
+        byte[] digest = md.digest(data);
+        return new Token(toLong(digest, 0), toLong(digest, 8));
+    }
+
+    private static long toLong(byte[] b, int offset) {
+        long v = 0;
+        for (int i = offset; i < offset + 8; i++)
+            v = (v << 8) | (b[i] & 0xff);
+        return v;
+    }
+
+    /**
+     * This function parses the hex representation of a token, upper and lower case are accepted.
+     * Strings shorter than 32 digits are padded with zeros on the left, longer strings are accepted
+     * only if the extra digits on the left are zeros.
+     *
+     * @param hex the hex string
+     * @return the token
+     * @throws NumberFormatException if the string is not a valid hash
+     */
+    public static Token fromHex(String hex) {
+        int len = hex.length();
+        if (len == 0)
+            throw new NumberFormatException("Invalid hash: " + hex);
+        long hi = 0;
+        long lo = 0;
+        for (int i = 0; i < len; i++) {
+            int digit = Character.digit(hex.charAt(i), 16);
+            if (digit < 0 || (hi >>> 60) != 0)
+                throw new NumberFormatException("Invalid hash: " + hex);
+            hi = (hi << 4) | (lo >>> 60);
+            lo = (lo << 4) | digit;
+        }
+        return new Token(hi, lo);
+    }
+
+    /**
+     * @return the hex representation of the token, 32 lower case digits
+     */
+    public String toHex() {
+        char[] out = new char[32];
+        for (int i = 0; i < 16; i++) {
+            out[15 - i] = HEX[(int) (hi >>> (i * 4)) & 0xf];
+            out[31 - i] = HEX[(int) (lo >>> (i * 4)) & 0xf];
+        }
+        return new String(out);
+    }
+
+    /**
+     * @return the token that follows this one on the ring, after MAX we have MIN
+     */
+    public Token next() {
+        long l = lo + 1;
+        return new Token(l == 0 ? hi + 1 : hi, l);
+    }
+
+    /**
+     * This function checks if the token is in the range [start, end] of the ring,
+     * the range can wrap around the end of the ring
+     *
+     * @param start the start of the range
+     * @param end   the end of the range
+     * @return true if the token is in the range
+     */
+    public boolean isInRange(Token start, Token end) {
+        if (start.compareTo(end) > 0)
+            return compareTo(start) >= 0 || compareTo(end) <= 0;
+        return compareTo(start) >= 0 && compareTo(end) <= 0;
+    }
+
+    public long getHi() {
+        return hi;
+    }
+
+    public long getLo() {
+        return lo;
+    }
+
+    @Override
+    public int compareTo(Token other) {
+        int c = Long.compareUnsigned(hi, other.hi);
+        return c != 0 ? c : Long.compareUnsigned(lo, other.lo);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof Token))
+            return false;
+        Token t = (Token) o;
+        return hi == t.hi && lo == t.lo;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(hi * 31 + lo);
+    }
+
+    @Override
+    public String toString() {
+        return toHex();
+    }
+}
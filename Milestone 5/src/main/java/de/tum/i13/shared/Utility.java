@@ -1,12 +1,9 @@
 package de.tum.i13.shared;
 
 import java.io.*;
-import java.math.BigInteger;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketAddress;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 
 /**
@@ -38,17 +35,7 @@ public class Utility {
      * @return
      */
     public static String computeHash(String ip, int port) {
-
-        MessageDigest md = null;
-        try {
-            String toHash = ip +
-                    port;
-            md = MessageDigest.getInstance("MD5");
-            byte[] messageDigest = md.digest(toHash.getBytes());
-            return byteToHex(messageDigest);
-        } catch (NoSuchAlgorithmException e) {
-            return null;
-        }
+        return Token.of(ip, port).toHex();
     }
 
     /**
@@ -58,15 +45,7 @@ public class Utility {
      * @return the computed hash
      */
     public static String computeHash(String key) {
-        MessageDigest md = null;
-        try {
-            md = MessageDigest.getInstance("MD5");
-            byte[] messageDigest = md.digest(key.getBytes());
-            return byteToHex(messageDigest);
-        } catch (NoSuchAlgorithmException e) {
-            e.printStackTrace();
-            return null;
-        }
+        return Token.of(key).toHex();
     }
 
 
@@ -78,10 +57,20 @@ public class Utility {
      * 1: if s1 is greater than s2
      */
     public static int compareHex(String s1, String s2) {
-        BigInteger b1 = new BigInteger(s1, 16);
-        BigInteger b2 = new BigInteger(s2, 16);
+        return Integer.signum(Token.fromHex(s1).compareTo(Token.fromHex(s2)));
+    }
 
-        return b1.compareTo(b2);
+    /**
+     * This method checks if a hash is in the range [start, end] of the ring,
+     * the range can wrap around the end of the ring
+     *
+     * @param hashedKey the hash that we want to check
+     * @param start     the start of the range
+     * @param end       the end of the range
+     * @return true if the hash is in the range
+     */
+    public static boolean isInRange(String hashedKey, String start, String end) {
+        return Token.fromHex(hashedKey).isInRange(Token.fromHex(start), Token.fromHex(end));
     }
 
     /**
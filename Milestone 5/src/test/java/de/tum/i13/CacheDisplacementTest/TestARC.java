@@ -0,0 +1,76 @@
+package de.tum.i13.CacheDisplacementTest;
+
+import de.tum.i13.server.CacheDisplacement.ARC;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
+ */
+public class TestARC {
+
+    @Test
+    void testAdaptation() {
+        ARC cache = new ARC(2);
+        assertNull(cache.put("a"));
+        assertNull(cache.put("b"));
+        assertEquals(1, cache.access("a"));
+        // a is frequent, b is the recent key that we remove
+        assertEquals("b", cache.put("c"));
+        assertEquals(0, cache.getTarget());
+        // b was removed too early, the target of the recent keys grows
+        assertEquals("a", cache.put("b"));
+        assertEquals(1, cache.getTarget());
+        // a was removed too early, the target of the recent keys decreases
+        assertEquals("c", cache.put("a"));
+        assertEquals(0, cache.getTarget());
+        assertEquals(1, cache.access("a"));
+        assertEquals(0, cache.access("c"));
+    }
+
+    @Test
+    void testRemove() {
+        ARC cache = new ARC(2);
+        assertNull(cache.put("a"));
+        assertNull(cache.put("b"));
+        assertTrue(cache.remove("a"));
+        assertFalse(cache.remove("a"));
+        assertNull(cache.put("c"));
+        assertEquals("b", cache.put("d"));
+        // b is not in the cache anymore
+        assertFalse(cache.remove("b"));
+    }
+
+    @Test
+    void testScanResistance() {
+        int size = 10;
+        ARC cache = new ARC(size);
+        for (int i = 0; i < 5; i++) {
+            assertNull(cache.put("hot" + i));
+            cache.access("hot" + i);
+        }
+        // The keys read only once replace each other, the frequent keys stay in the cache
+        for (int i = 0; i < 1000; i++) {
+            String removed = cache.put("scan" + i);
+            assertTrue(removed == null || removed.startsWith("scan"));
+        }
+        for (int i = 0; i < 5; i++)
+            assertEquals(1, cache.access("hot" + i));
+    }
+
+    @Test
+    void testGhostsBounded() {
+        int size = 100;
+        ARC cache = new ARC(size);
+        for (int i = 0; i < 10000; i++) {
+            cache.put("key" + i);
+            if (i % 3 == 0)
+                cache.put("key" + (i / 2));
+            if (i % 7 == 0)
+                cache.remove("key" + (i - 1));
+            cache.access("key" + (i / 3));
+            assertTrue(cache.getGhosts() <= size);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package de.tum.i13.CacheDisplacementTest;
+
+import de.tum.i13.server.CacheDisplacement.CLOCK;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
+ */
+public class TestCLOCK {
+
+    @Test
+    void testSecondChance() {
+        CLOCK cache = new CLOCK(3);
+        assertNull(cache.put("Hello"));
+        assertNull(cache.put("World"));
+        assertNull(cache.put("Hey"));
+        assertNull(cache.put("Hello"));
+        assertEquals(1, cache.access("Hello"));
+        assertEquals(0, cache.access("aaaa"));
+        // Hello was accessed, World is the oldest key that was not accessed
+        assertEquals("World", cache.put("Test"));
+        assertEquals("Hey", cache.put("Test2"));
+        // The hand cleared the bit of Hello, now it is the next one
+        assertEquals("Hello", cache.put("Test3"));
+    }
+
+    @Test
+    void testRemove() {
+        CLOCK cache = new CLOCK(2);
+        assertNull(cache.put("Hello"));
+        assertNull(cache.put("World"));
+        assertTrue(cache.remove("Hello"));
+        assertFalse(cache.remove("Hello"));
+        // Hey takes the slot of Hello, the cache is full again
+        assertNull(cache.put("Hey"));
+        String r = cache.put("Test");
+        assertTrue("World".equals(r) || "Hey".equals(r));
+        assertTrue(cache.remove("Test"));
+    }
+
+    @Test
+    void testConcurrentAccess() throws InterruptedException {
+        int size = 100;
+        CLOCK cache = new CLOCK(size);
+        ConcurrentLinkedQueue<String> removed = new ConcurrentLinkedQueue<>();
+        ArrayList<Thread> threads = new ArrayList<>();
+        // One writer and many readers, the readers don't take the lock of the writer
+        threads.add(new Thread(() -> {
+            for (int i = 0; i < 10000; i++) {
+                String r = cache.put("key" + i);
+                if (r != null)
+                    removed.add(r);
+            }
+        }));
+        for (int t = 0; t < 4; t++) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 10000; i++)
+                    cache.access("key" + i);
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread t : threads)
+            t.join();
+        // Every key except the last size keys was removed exactly once
+        assertEquals(10000 - size, removed.size());
+        assertEquals(10000 - size, new HashSet<>(removed).size());
+    }
+}
@@ -0,0 +1,74 @@
+package de.tum.i13.CacheDisplacementTest;
+
+import de.tum.i13.server.CacheDisplacement.LFU;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
+ */
+public class TestLFUAging {
+
+    @Test
+    void testLowestFrequencyFirst() {
+        LFU cache = new LFU(3);
+        assertNull(cache.put("a"));
+        assertNull(cache.put("b"));
+        assertNull(cache.put("c"));
+        cache.access("a");
+        cache.access("a");
+        cache.access("c");
+        assertEquals(3, cache.getFrequency("a"));
+        // b has the lowest frequency, then c and a
+        assertEquals("b", cache.put("d"));
+        assertEquals("d", cache.put("e"));
+        cache.access("e");
+        // c and e have the same frequency, c is the oldest
+        assertEquals("c", cache.put("f"));
+        assertTrue(cache.remove("a"));
+        assertFalse(cache.remove("a"));
+        assertNull(cache.put("g"));
+        assertEquals("f", cache.put("h"));
+    }
+
+    @Test
+    void testManyKeys() {
+        int size = 100000;
+        LFU cache = new LFU(size);
+        for (int i = 0; i < size; i++)
+            assertNull(cache.put("key" + i));
+        for (int i = 0; i < size; i += 2)
+            cache.access("key" + i);
+        // The keys that we never accessed are removed first, from the oldest
+        for (int i = 0; i < size / 2; i++)
+            assertEquals("key" + (2 * i + 1), cache.put("new" + i));
+    }
+
+    @Test
+    void testAging() {
+        LFU plain = new LFU(2);
+        LFU aging = new LFU(2, true);
+        for (LFU cache : new LFU[]{plain, aging}) {
+            cache.put("old");
+            for (int i = 0; i < 3; i++)
+                cache.access("old");
+        }
+        // Without aging the old hot key stays forever, the new keys replace each other
+        for (int i = 0; i < 10; i++) {
+            String removed = plain.put("key" + i);
+            assertNotEquals("old", removed);
+        }
+        assertEquals(4, plain.getFrequency("old"));
+
+        // With aging the new keys start from the frequency of the last removed key
+        boolean removedOld = false;
+        for (int i = 0; i < 10; i++) {
+            if ("old".equals(aging.put("key" + i)))
+                removedOld = true;
+            aging.access("key" + i);
+        }
+        assertTrue(removedOld);
+        assertEquals(0, aging.getFrequency("old"));
+    }
+}
@@ -0,0 +1,87 @@
+package de.tum.i13.CacheDisplacementTest;
+
+import de.tum.i13.server.CacheDisplacement.LRU;
+import de.tum.i13.server.CacheDisplacement.TinyLFU;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
+ */
+public class TestTinyLFU {
+
+    @Test
+    void testAdmission() {
+        // Window of 1 key, probation of 1 key and protected of 1 key
+        TinyLFU cache = new TinyLFU(3);
+        assertNull(cache.put("a"));
+        assertNull(cache.put("b"));
+        assertNull(cache.put("c"));
+        // c leaves the window but it was not used more than a, so c is removed
+        assertEquals("c", cache.put("d"));
+        assertEquals(1, cache.access("a"));
+        assertEquals(0, cache.access("c"));
+        cache.access("d");
+        cache.access("d");
+        // d was used more than b, the oldest key of the probation segment
+        assertEquals("b", cache.put("e"));
+        assertEquals(1, cache.access("d"));
+        assertTrue(cache.remove("a"));
+        assertFalse(cache.remove("a"));
+        assertNull(cache.put("f"));
+    }
+
+    @Test
+    void testScanResistance() {
+        int size = 100;
+        TinyLFU tinyLFU = new TinyLFU(size);
+        LRU lru = new LRU(size);
+        HashSet<String> tinyLFUKeys = new HashSet<>();
+        HashSet<String> lruKeys = new HashSet<>();
+        for (int i = 0; i < 50; i++) {
+            tinyLFU.put("hot" + i);
+            lru.put("hot" + i);
+            tinyLFUKeys.add("hot" + i);
+            lruKeys.add("hot" + i);
+        }
+        // A scan of keys that are read only once, like a rebalancing, while the hot keys are still used
+        for (int i = 0; i < 1000; i++) {
+            if (i % 100 == 0) {
+                for (int j = 0; j < 50; j++) {
+                    tinyLFU.access("hot" + j);
+                    lru.access("hot" + j);
+                }
+            }
+            tinyLFUKeys.add("scan" + i);
+            tinyLFUKeys.remove(tinyLFU.put("scan" + i));
+            lruKeys.add("scan" + i);
+            lruKeys.remove(lru.put("scan" + i));
+        }
+        assertEquals(size, tinyLFUKeys.size());
+        for (int i = 0; i < 50; i++) {
+            assertTrue(tinyLFUKeys.contains("hot" + i));
+            assertEquals(1, tinyLFU.access("hot" + i));
+            assertFalse(lruKeys.contains("hot" + i));
+        }
+    }
+
+    @Test
+    void testSketchReset() {
+        TinyLFU cache = new TinyLFU(10);
+        cache.put("hot");
+        for (int i = 0; i < 9; i++)
+            cache.access("hot");
+        assertTrue(cache.getFrequency("hot") >= 10);
+        assertEquals(0, cache.getFrequency("never"));
+        // Without a reset the counters only grow, after 10 * size increments they are halved
+        boolean halved = false;
+        for (int i = 0; i < 200 && !halved; i++) {
+            cache.put("key" + i);
+            halved = cache.getFrequency("hot") < 10;
+        }
+        assertTrue(halved);
+    }
+}
@@ -0,0 +1,79 @@
+package de.tum.i13.TestCache;
+
+import de.tum.i13.server.Cache.Cache;
+import de.tum.i13.server.kv.KVStore;
+import de.tum.i13.shared.Constants;
+import de.tum.i13.shared.InvalidPasswordException;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.logging.Logger;
+
+import static de.tum.i13.shared.LogSetup.setupLogging;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
+ */
+public class TestCacheBytes {
+    public static Logger logger = Logger.getLogger(KVStore.class.getName());
+
+    @BeforeAll
+    static void before() {
+        setupLogging("OFF", logger);
+    }
+
+    private static String value(int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++)
+            sb.append('v');
+        return sb.toString();
+    }
+
+    @Test
+    void evictByBytes() throws InvalidPasswordException {
+        for (String strategy : new String[]{Constants.FIFO, Constants.LRU, Constants.LFU, Constants.LFU_AGING,
+                Constants.CLOCK, Constants.TINYLFU, Constants.ARC}) {
+            // Many keys are allowed, the limit is the number of bytes
+            Cache cache = new Cache(1000, 300, strategy, logger);
+            assertNull(cache.put("key0", value(96)));
+            assertNull(cache.put("key1", value(96)));
+            assertNull(cache.put("key2", value(96)));
+            assertEquals(300, cache.getCurrentBytes());
+            assertNull(cache.put("key3", value(96)));
+            assertEquals(300, cache.getCurrentBytes(), strategy);
+            assertNotNull(cache.get("key3"), strategy);
+
+            // An update that makes the value bigger removes other pairs
+            assertNull(cache.put("key3", value(196)));
+            assertTrue(cache.getCurrentBytes() <= 300, strategy);
+            assertEquals(value(196), cache.get("key3"), strategy);
+        }
+    }
+
+    @Test
+    void tooBig() throws InvalidPasswordException {
+        Cache cache = new Cache(10, 100, Constants.LRU, logger);
+        assertNull(cache.put("a", "small"));
+        assertNull(cache.put("b", "small", "pwd"));
+        assertEquals(15, cache.getCurrentBytes());
+        // A pair bigger than the cache is not stored and the old value is removed
+        assertNull(cache.put("a", value(100)));
+        assertNull(cache.get("a"));
+        assertThrows(InvalidPasswordException.class, () -> cache.put("b", value(100)));
+        assertEquals("small", cache.get("b", "pwd"));
+        assertEquals(9, cache.getCurrentBytes());
+        assertEquals("small", cache.remove("b", "pwd"));
+        assertEquals(0, cache.getCurrentBytes());
+    }
+
+    @Test
+    void noLimit() throws InvalidPasswordException {
+        Cache cache = new Cache(2, Constants.LRU, logger);
+        assertNull(cache.put("a", value(100000)));
+        assertNull(cache.put("b", value(100000)));
+        assertNull(cache.put("c", value(100000)));
+        assertNull(cache.get("a"));
+        assertEquals(200002, cache.getCurrentBytes());
+    }
+}
@@ -0,0 +1,139 @@
+package de.tum.i13.TestCache;
+
+import de.tum.i13.server.Cache.Cache;
+import de.tum.i13.server.Cache.CacheSnapshot;
+import de.tum.i13.server.Cache.ShardedCache;
+import de.tum.i13.server.kv.KVStore;
+import de.tum.i13.shared.Constants;
+import de.tum.i13.shared.InvalidPasswordException;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.logging.Logger;
+
+import static de.tum.i13.shared.LogSetup.setupLogging;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
+ */
+public class TestCacheSnapshot {
+    public static Logger logger = Logger.getLogger(KVStore.class.getName());
+    private static Path path = Paths.get("data_snapshot/");
+
+    @BeforeAll
+    static void before() {
+        setupLogging("OFF", logger);
+        new File(path.toString()).mkdir();
+    }
+
+    @Test
+    void hotKeys() throws InvalidPasswordException {
+        for (String strategy : new String[]{Constants.FIFO, Constants.LRU, Constants.LFU, Constants.LFU_AGING,
+                Constants.CLOCK, Constants.TINYLFU, Constants.ARC}) {
+            Cache cache = new Cache(50, strategy, logger);
+            HashSet<String> keys = new HashSet<>();
+            for (int i = 0; i < 100; i++) {
+                cache.put("key" + i, "value");
+                cache.get("key" + (i / 2));
+            }
+            for (int i = 0; i < 100; i++) {
+                if (cache.get("key" + i) != null)
+                    keys.add("key" + i);
+            }
+            List<String> hot = cache.hotKeys();
+            assertEquals(keys.size(), hot.size(), strategy);
+            assertEquals(keys, new HashSet<>(hot), strategy);
+        }
+
+        Cache lru = new Cache(3, Constants.LRU, logger);
+        lru.put("a", "1");
+        lru.put("b", "2");
+        lru.put("c", "3");
+        lru.get("a");
+        assertEquals(List.of("a", "c", "b"), lru.hotKeys());
+
+        Cache lfu = new Cache(3, Constants.LFU, logger);
+        lfu.put("a", "1");
+        lfu.put("b", "2");
+        lfu.put("c", "3");
+        lfu.get("b");
+        lfu.get("b");
+        lfu.get("a");
+        assertEquals(List.of("b", "a", "c"), lfu.hotKeys());
+    }
+
+    @Test
+    void saveAndWarmUp() throws IOException, InvalidPasswordException {
+        HashMap<String, String> disk = new HashMap<>();
+        Cache cache = new Cache(3, Constants.LRU, logger);
+        for (String key : new String[]{"a", "b", "c", "d"}) {
+            disk.put(key, "value" + key);
+            cache.put(key, "value" + key);
+        }
+        cache.get("b");
+        assertEquals(3, CacheSnapshot.save(path, cache));
+        assertEquals(List.of("b", "d", "c"), CacheSnapshot.read(path));
+
+        // After the restart c was deleted and the client already read d
+        disk.remove("c");
+        Cache restarted = new Cache(3, Constants.LRU, logger);
+        restarted.put("d", "new");
+        assertEquals(1, CacheSnapshot.warmUp(path, restarted, disk::get));
+        assertEquals("new", restarted.get("d"));
+        assertEquals("valueb", restarted.get("b"));
+        assertNull(restarted.get("c"));
+        assertTrue(restarted.warm("a", disk::get));
+        // The cache is full, warming up never removes a pair
+        assertFalse(restarted.warm("e", key -> "e"));
+
+        Cache loading = new Cache(3, Constants.LRU, logger);
+        // The loader runs without the lock, another thread can write during the load and the loaded value is dropped
+        assertFalse(loading.warm("a", key -> {
+            Thread writer = new Thread(() -> {
+                try {
+                    loading.put("x", "1");
+                } catch (InvalidPasswordException e) {
+                    fail();
+                }
+            });
+            writer.start();
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                fail();
+            }
+            return "valuea";
+        }));
+        assertEquals("1", loading.get("x"));
+        assertNull(loading.get("a"));
+        // Without writes during the load the pair is added
+        assertTrue(loading.warm("a", disk::get));
+        assertEquals("valuea", loading.get("a"));
+
+        ShardedCache sharded = new ShardedCache(2, 10, 0, Constants.LRU, logger);
+        assertEquals(2, CacheSnapshot.warmUp(path, sharded, disk::get));
+        assertEquals(new HashSet<>(List.of("b", "d")), new HashSet<>(sharded.hotKeys()));
+    }
+
+    @Test
+    void noSnapshot() throws IOException {
+        assertTrue(CacheSnapshot.read(Paths.get("data_snapshot_missing/")).isEmpty());
+    }
+
+    @AfterAll
+    static void afterAll() {
+        File[] files = new File(path.toAbsolutePath().toString() + "/").listFiles();
+        for (File file : files)
+            file.delete();
+        new File(path.toString()).delete();
+    }
+}
@@ -0,0 +1,121 @@
+package de.tum.i13.TestCache;
+
+import de.tum.i13.server.Cache.Cache;
+import de.tum.i13.server.Cache.CacheStatistics;
+import de.tum.i13.server.Cache.ShardedCache;
+import de.tum.i13.server.kv.KVStore;
+import de.tum.i13.shared.Constants;
+import de.tum.i13.shared.InvalidPasswordException;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.logging.Logger;
+
+import static de.tum.i13.shared.LogSetup.setupLogging;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
+ */
+public class TestCacheStatistics {
+    public static Logger logger = Logger.getLogger(KVStore.class.getName());
+
+    @BeforeAll
+    static void before() {
+        setupLogging("OFF", logger);
+    }
+
+    @Test
+    void counters() throws InvalidPasswordException {
+        Cache cache = new Cache(2, Constants.LRU, logger);
+        cache.put("a", "1");
+        cache.put("b", "2", "pwd");
+        assertEquals("1", cache.get("a"));
+        cache.put("c", "3");
+        assertNull(cache.get("b", "pwd"));
+        cache.put("d", "4", "pwd");
+        assertThrows(InvalidPasswordException.class, () -> cache.get("d", "wrong"));
+        assertThrows(InvalidPasswordException.class, () -> cache.get("d"));
+
+        CacheStatistics statistics = cache.getStatistics();
+        assertEquals(Constants.LRU, statistics.getPolicy());
+        assertEquals(1, statistics.getHits());
+        assertEquals(1, statistics.getMisses());
+        assertEquals(0.5, statistics.getHitRatio());
+        assertEquals(4, statistics.getInsertions());
+        assertEquals(2, statistics.getEvictions());
+        assertEquals(2, statistics.getPasswordRejections());
+
+        statistics.recordLoad(2_000_000);
+        statistics.recordLoad(4_000_000);
+        assertEquals(2, statistics.getLoads());
+        assertEquals(3.0, statistics.getAverageLoadMillis());
+        assertTrue(statistics.toString().contains("hits=1 misses=1 hitRatio=0.500"));
+
+        statistics.reset();
+        assertEquals(0, statistics.getHits());
+        assertEquals(0.0, statistics.getHitRatio());
+        assertEquals(0.0, statistics.getAverageLoadMillis());
+    }
+
+    @Test
+    void byteEvictions() throws InvalidPasswordException {
+        Cache cache = new Cache(10, 10, Constants.FIFO, logger);
+        cache.put("a", "12345");
+        cache.put("b", "12345");
+        assertEquals(2, cache.getStatistics().getInsertions());
+        assertEquals(1, cache.getStatistics().getEvictions());
+    }
+
+    @Test
+    void shardsHaveTheirOwnCounters() throws InvalidPasswordException, JMException {
+        ShardedCache cache = new ShardedCache(4, 100, 0, Constants.LFU, logger);
+        for (int i = 0; i < 20; i++) {
+            cache.put("key" + i, "value");
+            cache.get("key" + i);
+            cache.get("missing" + i);
+        }
+        CacheStatistics statistics = cache.getStatistics();
+        assertEquals(4, statistics.getShardCount());
+        long hits = 0;
+        for (int i = 0; i < statistics.getShardCount(); i++) {
+            assertSame(cache.getShards()[i].getStatistics(), statistics.getShard(i));
+            assertNotSame(statistics, statistics.getShard(i));
+            hits += statistics.getShard(i).getHits();
+        }
+        assertEquals(20, hits);
+        assertEquals(20, statistics.getInsertions());
+        assertEquals(20, statistics.getHits());
+        assertEquals(20, statistics.getMisses());
+        assertTrue(statistics.toString().contains(" | shard3 "));
+
+        // The bean of every shard is published next to the bean of the cache
+        ObjectName name = statistics.register("127.0.0.1:5998");
+        ObjectName shard = new ObjectName(name + ",shard=2");
+        assertEquals(statistics.getShard(2).getHits(), ManagementFactory.getPlatformMBeanServer().getAttribute(shard, "Hits"));
+        CacheStatistics.unregister(name);
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(shard));
+
+        statistics.reset();
+        assertEquals(0, statistics.getShard(0).getHits());
+        assertEquals(0, statistics.getHits());
+    }
+
+    @Test
+    void jmx() throws JMException, InvalidPasswordException {
+        Cache cache = new Cache(2, Constants.ARC, logger);
+        ObjectName name = cache.getStatistics().register("127.0.0.1:5999");
+        // A second server with the same name replaces the first bean
+        assertEquals(name, new Cache(2, Constants.ARC, logger).getStatistics().register("127.0.0.1:5999"));
+        name = cache.getStatistics().register("127.0.0.1:5999");
+        cache.put("a", "1");
+        cache.get("a");
+        assertEquals(1L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Hits"));
+        assertEquals(Constants.ARC, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Policy"));
+        CacheStatistics.unregister(name);
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+}
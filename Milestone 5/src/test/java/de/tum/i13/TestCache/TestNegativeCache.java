@@ -0,0 +1,58 @@
+package de.tum.i13.TestCache;
+
+import de.tum.i13.server.Cache.NegativeCache;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
+ */
+public class TestNegativeCache {
+
+    @Test
+    void addAndInvalidate() {
+        NegativeCache cache = new NegativeCache(10);
+        cache.add("missing", cache.version());
+        assertTrue(cache.contains("missing"));
+        assertFalse(cache.contains("other"));
+        cache.invalidate("missing");
+        assertFalse(cache.contains("missing"));
+
+        cache.add("a", cache.version());
+        cache.add("b", cache.version());
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void putDuringSearch() {
+        NegativeCache cache = new NegativeCache(10);
+        // A put writes the key while we are searching it on disk
+        long version = cache.version();
+        cache.invalidate("key");
+        cache.add("key", version);
+        assertFalse(cache.contains("key"));
+        cache.add("key", cache.version());
+        assertTrue(cache.contains("key"));
+    }
+
+    @Test
+    void bounded() {
+        NegativeCache cache = new NegativeCache(3);
+        cache.add("a", cache.version());
+        cache.add("b", cache.version());
+        cache.add("c", cache.version());
+        // a was asked again, b is the least recently asked key
+        assertTrue(cache.contains("a"));
+        cache.add("d", cache.version());
+        assertEquals(3, cache.size());
+        assertFalse(cache.contains("b"));
+        assertTrue(cache.contains("a"));
+
+        NegativeCache disabled = new NegativeCache(0);
+        disabled.add("a", disabled.version());
+        assertFalse(disabled.contains("a"));
+        assertThrows(IllegalArgumentException.class, () -> new NegativeCache(-1));
+    }
+}
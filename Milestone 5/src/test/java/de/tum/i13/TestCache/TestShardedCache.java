@@ -0,0 +1,103 @@
+package de.tum.i13.TestCache;
+
+import de.tum.i13.server.Cache.Cache;
+import de.tum.i13.server.Cache.ShardedCache;
+import de.tum.i13.server.kv.KVStore;
+import de.tum.i13.shared.Constants;
+import de.tum.i13.shared.InvalidPasswordException;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.logging.Logger;
+
+import static de.tum.i13.shared.LogSetup.setupLogging;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
+ */
+public class TestShardedCache {
+    public static Logger logger = Logger.getLogger(KVStore.class.getName());
+
+    @BeforeAll
+    static void before() {
+        setupLogging("OFF", logger);
+    }
+
+    @Test
+    void putGetRemove() throws InvalidPasswordException {
+        ShardedCache cache = new ShardedCache(4, 100, 0, Constants.LRU, logger);
+        assertNull(cache.put("Hello", "World"));
+        assertNull(cache.put("HelloWorld", "World", "Pass"));
+        assertEquals("World", cache.get("Hello"));
+        assertEquals("World", cache.get("HelloWorld", "Pass"));
+        assertThrows(InvalidPasswordException.class, () -> cache.get("HelloWorld", "Wrong"));
+        assertThrows(InvalidPasswordException.class, () -> cache.remove("HelloWorld"));
+        assertEquals("World", cache.remove("HelloWorld", "Pass"));
+        assertNull(cache.get("HelloWorld", "Pass"));
+        assertNull(cache.get(null));
+        assertEquals(1, cache.getCurrentSize());
+    }
+
+    @Test
+    void globalCapacity() throws InvalidPasswordException {
+        ShardedCache cache = new ShardedCache(4, 10, 0, Constants.FIFO, logger);
+        int capacity = 0;
+        for (Cache shard : cache.getShards())
+            capacity += shard.getMaxSize();
+        assertEquals(10, capacity);
+        for (int i = 0; i < 1000; i++)
+            assertNull(cache.put("key" + i, "value"));
+        assertEquals(10, cache.getCurrentSize());
+        assertEquals(4, cache.getStatistics().getShardCount());
+
+        // There are never more shards than pairs
+        assertEquals(2, new ShardedCache(8, 2, 0, Constants.LRU, logger).getShards().length);
+        assertThrows(IllegalArgumentException.class, () -> new ShardedCache(0, 10, 0, Constants.LRU, logger));
+        assertThrows(IllegalArgumentException.class, () -> new ShardedCache(4, 10, 0, "Hello", logger));
+    }
+
+    @Test
+    void concurrentAccess() throws InterruptedException {
+        for (String strategy : new String[]{Constants.FIFO, Constants.LRU, Constants.LFU, Constants.CLOCK,
+                Constants.TINYLFU, Constants.ARC}) {
+            ShardedCache cache = new ShardedCache(8, 200, 50000, strategy, logger);
+            ArrayList<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int seed = t;
+                threads.add(new Thread(() -> {
+                    try {
+                        for (int i = 0; i < 5000; i++) {
+                            String key = "key" + ((i * 31 + seed * 7) % 1000);
+                            if (i % 3 == 0)
+                                cache.put(key, "value" + key);
+                            else if (i % 17 == 0)
+                                cache.remove(key);
+                            else {
+                                String value = cache.get(key);
+                                assertTrue(value == null || value.equals("value" + key));
+                            }
+                        }
+                    } catch (InvalidPasswordException e) {
+                        fail();
+                    }
+                }));
+            }
+            threads.forEach(Thread::start);
+            for (Thread t : threads)
+                t.join();
+            assertTrue(cache.getCurrentSize() <= 200, strategy);
+            assertTrue(cache.getCurrentBytes() <= 50000, strategy);
+            int size = 0;
+            long bytes = 0;
+            for (Cache shard : cache.getShards()) {
+                assertTrue(shard.getCurrentSize() <= shard.getMaxSize(), strategy);
+                size += shard.getCurrentSize();
+                bytes += shard.getCurrentBytes();
+            }
+            assertEquals(size, cache.getCurrentSize());
+            assertEquals(bytes, cache.getCurrentBytes());
+        }
+    }
+}
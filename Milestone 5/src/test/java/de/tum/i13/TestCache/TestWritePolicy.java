@@ -0,0 +1,77 @@
+package de.tum.i13.TestCache;
+
+import de.tum.i13.server.Cache.Cache;
+import de.tum.i13.server.Cache.CacheInterface;
+import de.tum.i13.server.Cache.ShardedCache;
+import de.tum.i13.server.kv.KVStore;
+import de.tum.i13.shared.Constants;
+import de.tum.i13.shared.InvalidPasswordException;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.logging.Logger;
+
+import static de.tum.i13.shared.LogSetup.setupLogging;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
+ */
+public class TestWritePolicy {
+    public static Logger logger = Logger.getLogger(KVStore.class.getName());
+
+    @BeforeAll
+    static void before() {
+        setupLogging("OFF", logger);
+    }
+
+    @Test
+    void writeThrough() throws InvalidPasswordException {
+        Cache cache = new Cache(3, Constants.LRU, logger);
+        assertNull(cache.write(Constants.WRITE_THROUGH, "a", "1"));
+        assertNull(cache.write(Constants.WRITE_THROUGH, "b", "2", "pwd"));
+        assertEquals("1", cache.get("a"));
+        assertEquals("2", cache.get("b", "pwd"));
+    }
+
+    @Test
+    void writeAround() throws InvalidPasswordException {
+        for (CacheInterface cache : new CacheInterface[]{new Cache(3, Constants.LRU, logger),
+                new ShardedCache(2, 3, 0, Constants.LRU, logger)}) {
+            cache.put("hot1", "1");
+            cache.put("hot2", "2");
+            cache.put("hot3", "3");
+            // A bulk write of new keys does not remove the hot keys
+            for (int i = 0; i < 100; i++)
+                assertNull(cache.write(Constants.WRITE_AROUND, "key" + i, "value"));
+            assertNull(cache.get("key0"));
+            assertEquals("1", cache.get("hot1"));
+            // The cached keys are updated, so the cache is never stale
+            assertNull(cache.write(Constants.WRITE_AROUND, "hot2", "new"));
+            assertEquals("new", cache.get("hot2"));
+            assertEquals(3, cache.hotKeys().size());
+        }
+    }
+
+    @Test
+    void invalidate() throws InvalidPasswordException {
+        Cache cache = new Cache(3, Constants.LFU, logger);
+        cache.put("a", "1", "pwd");
+        cache.put("b", "2");
+        // The write is already on disk, we remove the key also without the password
+        assertNull(cache.write(Constants.WRITE_INVALIDATE, "a", "new"));
+        assertNull(cache.write(Constants.WRITE_INVALIDATE, "c", "new"));
+        assertNull(cache.get("a", "pwd"));
+        assertNull(cache.get("c"));
+        assertEquals("2", cache.get("b"));
+        assertEquals(1, cache.getCurrentSize());
+        assertEquals(1, cache.hotKeys().size());
+    }
+
+    @Test
+    void checkWritePolicy() {
+        assertEquals(Constants.WRITE_AROUND, CacheInterface.checkWritePolicy(Constants.WRITE_AROUND));
+        assertThrows(IllegalArgumentException.class, () -> CacheInterface.checkWritePolicy("BACK"));
+        assertThrows(IllegalArgumentException.class, () -> CacheInterface.checkWritePolicy(null));
+    }
+}
@@ -0,0 +1,141 @@
+package de.tum.i13.TestFileStorage;
+
+import de.tum.i13.server.FileStorage.BlobLog;
+import de.tum.i13.server.FileStorage.Compression;
+import de.tum.i13.server.FileStorage.FileStorage;
+import de.tum.i13.server.kv.KVStore;
+import de.tum.i13.shared.Constants;
+import de.tum.i13.shared.InvalidPasswordException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
+ */
+public class TestBlobLog {
+    private static Path path = Paths.get("data_blob/");
+    public static Logger logger = Logger.getLogger(KVStore.class.getName());
+    // More keys than Constants.MAX_FILE_SIZE, so the FileMaps are split
+    private static final int KEYS = 1500;
+
+    @BeforeAll
+    static void before() {
+        if (!Files.exists(path)) {
+            File dir = new File(path.toString());
+            dir.mkdir();
+        }
+    }
+
+    private static String value(int i, int version) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(version).append('_').append(i).append('_');
+        while (sb.length() < 2000)
+            sb.append((char) ('a' + (sb.length() * 7 + i) % 26));
+        return sb.toString();
+    }
+
+    private static FileStorage open() {
+        Compression compression = Compression.NONE;
+        return new FileStorage(path, logger, Constants.FSYNC_OS, 0, compression,
+                new BlobLog(path, 1024, compression, 256 * 1024));
+    }
+
+    @Test
+    void separateLargeValues() throws InvalidPasswordException, FileNotFoundException {
+        FileStorage fs = open();
+        try {
+            for (int i = 0; i < KEYS; i++)
+                assertEquals(0, fs.put("key" + i, value(i, 0)));
+            assertEquals(0, fs.put("small", "value"));
+
+            // The values were written once, the splits moved only their pointers
+            assertTrue(size("blob") < (long) KEYS * 2100);
+            assertTrue(size("seg") < (long) KEYS * 100);
+            assertEquals("value", fs.get("small"));
+            check(fs, 0);
+        } finally {
+            fs.close();
+        }
+
+        fs = open();
+        try {
+            fs.restore();
+            check(fs, 0);
+            assertEquals("value", fs.get("small"));
+            fs.clear();
+        } finally {
+            fs.close();
+        }
+    }
+
+    @Test
+    void collectGarbage() throws InvalidPasswordException, FileNotFoundException {
+        FileStorage fs = open();
+        try {
+            for (int i = 0; i < KEYS; i++)
+                fs.put("key" + i, value(i, 0));
+            // We update half of the keys and delete a quarter of them, the first blob files become mostly garbage
+            for (int i = 0; i < KEYS; i += 2)
+                assertEquals(1, fs.put("key" + i, value(i, 1)));
+            for (int i = 1; i < KEYS; i += 4)
+                fs.checkAndDelete("key" + i);
+            long before = size("blob");
+
+            while (fs.compactOnce()) ;
+            assertTrue(size("blob") < before);
+            checkUpdated(fs);
+        } finally {
+            fs.close();
+        }
+
+        fs = open();
+        try {
+            fs.restore();
+            checkUpdated(fs);
+            fs.clear();
+        } finally {
+            fs.close();
+        }
+    }
+
+    private void check(FileStorage fs, int version) {
+        for (int i = 0; i < KEYS; i++)
+            assertEquals(value(i, version), fs.get("key" + i));
+    }
+
+    private void checkUpdated(FileStorage fs) {
+        for (int i = 0; i < KEYS; i++) {
+            if (i % 2 == 0)
+                assertEquals(value(i, 1), fs.get("key" + i));
+            else if (i % 4 == 1)
+                assertNull(fs.get("key" + i));
+            else
+                assertEquals(value(i, 0), fs.get("key" + i));
+        }
+    }
+
+    private long size(String extension) {
+        long size = 0;
+        for (File f : path.toFile().listFiles((dir, name) -> name.endsWith("." + extension)))
+            size += f.length();
+        return size;
+    }
+
+    @AfterEach
+    void afterEach() {
+        File[] files = new File(path.toAbsolutePath().toString() + "/").listFiles();
+        for (File file : files) {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package de.tum.i13.TestFileStorage;
+
+import de.tum.i13.server.FileStorage.BloomFilter;
+import de.tum.i13.server.FileStorage.FileMap;
+import de.tum.i13.shared.InvalidPasswordException;
+import de.tum.i13.shared.Pair;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
+ */
+public class TestBloomFilter {
+    private static Path path = Paths.get("data/");
+
+    @BeforeAll
+    static void before() {
+        if (!Files.exists(path)) {
+            File dir = new File(path.toString());
+            dir.mkdir();
+        }
+    }
+
+    @Test
+    void noFalseNegatives() {
+        BloomFilter filter = new BloomFilter(1000);
+        for (int i = 0; i < 1000; i++)
+            filter.add("key" + i);
+        for (int i = 0; i < 1000; i++)
+            assertTrue(filter.mightContain("key" + i));
+
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (filter.mightContain("absent" + i))
+                falsePositives++;
+        }
+        assertTrue(falsePositives < 500);
+    }
+
+    @Test
+    void writeAndRead() throws IOException {
+        String fileName = path.toAbsolutePath().toString() + "/filter.bloom";
+        BloomFilter filter = new BloomFilter(10);
+        filter.add("hello");
+        filter.write(fileName, 42);
+
+        BloomFilter read = BloomFilter.read(fileName, 42);
+        assertNotNull(read);
+        assertTrue(read.mightContain("hello"));
+        assertNull(BloomFilter.read(fileName, 43));
+        assertNull(BloomFilter.read(fileName + "2", 42));
+    }
+
+    @Test
+    void restoreFileMap() throws InvalidPasswordException, FileNotFoundException {
+        FileMap fm = new FileMap(10, "hello", new Pair<>("world", null), path);
+        assertNull(fm.addPair("ciao", new Pair<>("mondo", null)));
+        fm.close();
+        assertTrue(new File(fm.getFileName() + ".bloom").exists());
+
+        FileMap restored = new FileMap(fm.getFileName(), 10, path);
+        assertEquals("mondo", restored.getValue("ciao"));
+        assertTrue(restored.isPresent("hello"));
+        assertFalse(restored.isPresent("qqqq"));
+        assertNull(restored.addPair("qqqq", new Pair<>("eeee", null)));
+
+        // The filter saved by close() does not contain qqqq, the FileMap has to rebuild it
+        FileMap restored2 = new FileMap(fm.getFileName(), 10, path);
+        assertTrue(restored2.isPresent("qqqq"));
+    }
+
+    @AfterAll
+    static void afterAll() {
+        File[] files = new File(path.toAbsolutePath().toString() + "/").listFiles();
+        for (File file : files) {
+            file.delete();
+        }
+    }
+}
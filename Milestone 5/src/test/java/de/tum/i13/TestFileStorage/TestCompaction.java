@@ -0,0 +1,123 @@
+package de.tum.i13.TestFileStorage;
+
+import de.tum.i13.server.FileStorage.FileStorage;
+import de.tum.i13.server.kv.KVStore;
+import de.tum.i13.shared.InvalidPasswordException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
+ */
+public class TestCompaction {
+    private static Path path = Paths.get("data_compaction/");
+    public static Logger logger = Logger.getLogger(KVStore.class.getName());
+    private static final int KEYS = 3000;
+
+    @BeforeAll
+    static void before() {
+        if (!Files.exists(path)) {
+            File dir = new File(path.toString());
+            dir.mkdir();
+        }
+    }
+
+    @Test
+    void mergeUnderfilledFiles() throws InvalidPasswordException, FileNotFoundException {
+        FileStorage fs = new FileStorage(path, logger);
+        try {
+            for (int i = 0; i < KEYS; i++)
+                assertEquals(0, fs.put("key" + i, "value" + i));
+            // We keep one key every ten, every file is almost empty
+            for (int i = 0; i < KEYS; i++) {
+                if (i % 10 != 0)
+                    fs.checkAndDelete("key" + i);
+            }
+            int before = segments();
+
+            while (fs.compactOnce()) ;
+            assertTrue(segments() < before);
+            check(fs);
+        } finally {
+            fs.close();
+        }
+
+        fs = new FileStorage(path, logger);
+        try {
+            fs.restore();
+            check(fs);
+            fs.clear();
+        } finally {
+            fs.close();
+        }
+    }
+
+    @Test
+    void singleUnderfilledFile() throws InvalidPasswordException {
+        FileStorage fs = new FileStorage(path, logger);
+        try {
+            assertEquals(0, fs.put("key", "value"));
+            // The only FileMap has no neighbour to merge with
+            assertEquals(1, segments());
+            assertFalse(fs.compactOnce());
+            assertEquals(1, segments());
+            assertEquals("value", fs.get("key"));
+            fs.clear();
+        } finally {
+            fs.close();
+        }
+    }
+
+    @Test
+    void dropEmptyFiles() throws InvalidPasswordException {
+        FileStorage fs = new FileStorage(path, logger);
+        try {
+            for (int i = 0; i < KEYS; i++)
+                fs.put("key" + i, "value" + i);
+            for (int i = 0; i < KEYS; i++)
+                fs.checkAndDelete("key" + i);
+
+            while (fs.compactOnce()) ;
+            assertEquals(0, segments());
+            assertEquals(0, fs.getAll().size());
+
+            assertEquals(0, fs.put("key", "value"));
+            assertEquals("value", fs.get("key"));
+            fs.clear();
+        } finally {
+            fs.close();
+        }
+    }
+
+    private void check(FileStorage fs) {
+        for (int i = 0; i < KEYS; i++) {
+            if (i % 10 == 0)
+                assertEquals("value" + i, fs.get("key" + i));
+            else
+                assertNull(fs.get("key" + i));
+        }
+        assertEquals(KEYS / 10, fs.getAll().size());
+    }
+
+    private int segments() {
+        return path.toFile().listFiles((dir, name) -> name.endsWith(".seg")).length;
+    }
+
+    @AfterEach
+    void afterEach() {
+        File[] files = new File(path.toAbsolutePath().toString() + "/").listFiles();
+        for (File file : files) {
+            file.delete();
+        }
+    }
+}
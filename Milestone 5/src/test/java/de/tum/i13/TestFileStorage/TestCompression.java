@@ -0,0 +1,134 @@
+package de.tum.i13.TestFileStorage;
+
+import de.tum.i13.server.FileStorage.Compression;
+import de.tum.i13.server.FileStorage.DeflateCodec;
+import de.tum.i13.server.FileStorage.FileStorage;
+import de.tum.i13.server.FileStorage.IndexEntry;
+import de.tum.i13.server.FileStorage.Segment;
+import de.tum.i13.server.kv.KVStore;
+import de.tum.i13.shared.Constants;
+import de.tum.i13.shared.InvalidPasswordException;
+import de.tum.i13.shared.Pair;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
+ */
+public class TestCompression {
+    private static Path path = Paths.get("data_compression/");
+    public static Logger logger = Logger.getLogger(KVStore.class.getName());
+
+    @BeforeAll
+    static void before() {
+        if (!Files.exists(path)) {
+            File dir = new File(path.toString());
+            dir.mkdir();
+        }
+    }
+
+    private static String text(int i) {
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 5000)
+            sb.append("Message ").append(i).append(": please find attached the report of the meeting. ");
+        return sb.toString();
+    }
+
+    @Test
+    void codec() throws IOException {
+        DeflateCodec codec = new DeflateCodec();
+        byte[] data = text(1).getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = codec.compress(data);
+        assertTrue(compressed.length < data.length / 4);
+        assertEquals(text(1), new String(codec.decompress(compressed, data.length), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void blocks() throws IOException {
+        byte[] data = text(1).getBytes(StandardCharsets.UTF_8);
+        Compression deflate = Compression.of(Constants.COMPRESSION_DEFLATE, 0);
+        byte[] block = deflate.pack(data);
+        assertTrue(block.length < data.length / 4);
+
+        // With NONE the bytes are sent as they are after the header
+        byte[] raw = Compression.NONE.pack(data);
+        assertEquals(0, raw[0]);
+        assertEquals(data.length + 5, raw.length);
+
+        // Each server reads the blocks of the other
+        assertArrayEquals(data, Compression.NONE.unpack(block));
+        assertArrayEquals(data, deflate.unpack(raw));
+    }
+
+    @Test
+    void segmentThreshold() throws IOException {
+        Compression compression = Compression.of(Constants.COMPRESSION_DEFLATE, 1024);
+        String fileName = path.toAbsolutePath().toString() + "/threshold.seg";
+        Segment segment = new Segment(fileName, compression);
+        IndexEntry large = segment.appendPut("large", new Pair<>(text(1), "password"));
+        IndexEntry small = segment.appendPut("small", new Pair<>("value", null));
+
+        // Only the large value is compressed
+        assertTrue(large.getLength() < text(1).length() / 4);
+        assertEquals(text(1), segment.readValue(large).getFirst());
+        assertEquals("password", segment.readValue(large).getSecond());
+        assertEquals("value", segment.readValue(small).getFirst());
+        assertTrue(compression.getRatio() < 0.25);
+
+        // A segment without compression still reads the compressed values
+        segment.close();
+        HashMap<String, Pair<String, String>> hMap = new Segment(fileName).read();
+        assertEquals(text(1), hMap.get("large").getFirst());
+        assertEquals("value", hMap.get("small").getFirst());
+    }
+
+    @Test
+    void fileStorage() throws InvalidPasswordException, IOException {
+        Compression compression = Compression.of(Constants.COMPRESSION_DEFLATE, 1024);
+        FileStorage fs = new FileStorage(path, logger, Constants.FSYNC_OS, 0, compression);
+        try {
+            for (int i = 0; i < 100; i++)
+                assertEquals(0, fs.put("key" + i, text(i)));
+            for (int i = 0; i < 100; i++)
+                assertEquals(text(i), fs.get("key" + i));
+        } finally {
+            fs.close();
+        }
+
+        // The segments are much smaller than the values
+        long size = 0;
+        for (File f : path.toFile().listFiles((dir, name) -> name.endsWith(".seg")))
+            size += f.length();
+        assertTrue(size < 100L * text(0).length() / 4);
+
+        fs = new FileStorage(path, logger, Constants.FSYNC_OS, 0, Compression.NONE);
+        try {
+            fs.restore();
+            for (int i = 0; i < 100; i++)
+                assertEquals(text(i), fs.get("key" + i));
+            fs.clear();
+        } finally {
+            fs.close();
+        }
+    }
+
+    @AfterEach
+    void afterEach() {
+        File[] files = new File(path.toAbsolutePath().toString() + "/").listFiles();
+        for (File file : files) {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package de.tum.i13.TestFileStorage;
+
+import de.tum.i13.server.FileStorage.FileStorage;
+import de.tum.i13.server.kv.KVStore;
+import de.tum.i13.shared.InvalidPasswordException;
+import de.tum.i13.shared.Pair;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
+ */
+public class TestConcurrentFileStorage {
+    private static Path path = Paths.get("data_concurrent/");
+    public static Logger logger = Logger.getLogger(KVStore.class.getName());
+    private static final int THREADS = 4;
+    private static final int KEYS = 2000;
+
+    @BeforeAll
+    static void before() {
+        if (!Files.exists(path)) {
+            File dir = new File(path.toString());
+            dir.mkdir();
+        }
+    }
+
+    @Test
+    void concurrentPutAndGet() throws InterruptedException, FileNotFoundException {
+        FileStorage fs = new FileStorage(path, logger);
+        try {
+            ConcurrentLinkedQueue<String> errors = new ConcurrentLinkedQueue<>();
+            ArrayList<Thread> threads = new ArrayList<>();
+            // Every thread writes its own keys, the files are split while the other threads read them
+            for (int t = 0; t < THREADS; t++) {
+                int id = t;
+                threads.add(new Thread(() -> {
+                    try {
+                        for (int i = 0; i < KEYS; i++) {
+                            fs.put("key" + id + "_" + i, "value" + i);
+                            if (!("value" + i).equals(fs.get("key" + id + "_" + i)))
+                                errors.add("key" + id + "_" + i);
+                            if (i % 3 == 0)
+                                fs.checkAndDelete("key" + id + "_" + i);
+                        }
+                    } catch (InvalidPasswordException e) {
+                        errors.add(e.toString());
+                    }
+                }));
+            }
+            // A reader that scans the whole store while the files are split
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 5; i++)
+                    fs.getAll();
+            }));
+            threads.forEach(Thread::start);
+            for (Thread t : threads)
+                t.join();
+            assertTrue(errors.isEmpty(), errors.toString());
+
+            check(fs);
+        } finally {
+            fs.close();
+        }
+
+        FileStorage restored = new FileStorage(path, logger);
+        try {
+            restored.restore();
+            check(restored);
+            restored.clear();
+        } finally {
+            restored.close();
+        }
+    }
+
+    private void check(FileStorage fs) {
+        int expected = 0;
+        for (int t = 0; t < THREADS; t++) {
+            for (int i = 0; i < KEYS; i++) {
+                if (i % 3 == 0)
+                    assertNull(fs.get("key" + t + "_" + i));
+                else {
+                    assertEquals("value" + i, fs.get("key" + t + "_" + i));
+                    expected++;
+                }
+            }
+        }
+        ArrayList<Pair<String, Pair<String, String>>> all = fs.getAll();
+        assertEquals(expected, all.size());
+    }
+
+    @AfterEach
+    void afterEach() {
+        File[] files = new File(path.toAbsolutePath().toString() + "/").listFiles();
+        for (File file : files) {
+            file.delete();
+        }
+    }
+}
@@ -119,6 +119,7 @@ public class TestFileStorage {
 
     @AfterAll
     static void afterAll() {
+        fs.close();
         Path path = Paths.get("data/");
         File[] files = new File(path.toAbsolutePath().toString() + "/").listFiles();
         for (File file : files) {
@@ -0,0 +1,124 @@
+package de.tum.i13.TestFileStorage;
+
+import de.tum.i13.server.FileStorage.LSMStorage;
+import de.tum.i13.server.kv.KVStore;
+import de.tum.i13.shared.Constants;
+import de.tum.i13.shared.InvalidPasswordException;
+import de.tum.i13.shared.Pair;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
+ */
+public class TestLSMStorage {
+    private static Path path = Paths.get("data_lsm/");
+    public static Logger logger = Logger.getLogger(KVStore.class.getName());
+
+    @BeforeAll
+    static void before() {
+        if (!Files.exists(path)) {
+            File dir = new File(path.toString());
+            dir.mkdir();
+        }
+    }
+
+    @Test
+    void addGetRemove() throws InvalidPasswordException {
+        LSMStorage lsm = new LSMStorage(path, logger);
+        assertEquals(Constants.PUT_SUCCESS, lsm.put("Hello", "mondo"));
+        assertEquals(Constants.PUT_UPDATE, lsm.put("Hello", "world"));
+        assertEquals("world", lsm.get("Hello"));
+        assertTrue(lsm.isUpdate("Hello"));
+
+        assertEquals(Constants.PUT_SUCCESS, lsm.put("Hola", "mondo", "ppp"));
+        assertNull(lsm.get("Hola"));
+        assertEquals("mondo", lsm.get("Hola", "ppp"));
+        assertThrows(InvalidPasswordException.class, () -> lsm.put("Hola", "mondo2"));
+        assertThrows(InvalidPasswordException.class, () -> lsm.remove("Hola", "qqq"));
+
+        assertEquals("mondo", lsm.remove("Hola", "ppp").getFirst());
+        assertNull(lsm.get("Hola", "ppp"));
+        assertFalse(lsm.isUpdate("Hola"));
+        assertNull(lsm.remove("Hola"));
+        lsm.clear();
+        lsm.close();
+    }
+
+    @Test
+    void flushCompactAndRestore() throws InvalidPasswordException, FileNotFoundException {
+        LSMStorage lsm = new LSMStorage(path, logger);
+        int keys = 6 * Constants.MAX_FILE_SIZE;
+        for (int i = 0; i < keys; i++)
+            assertEquals(Constants.PUT_SUCCESS, lsm.put("key" + i, "value" + i));
+        for (int i = 0; i < keys; i += 3)
+            assertEquals("value" + i, lsm.remove("key" + i).getFirst());
+        for (int i = 1; i < keys; i += 3)
+            assertEquals(Constants.PUT_UPDATE, lsm.put("key" + i, "new" + i));
+        lsm.close();
+
+        LSMStorage restored = new LSMStorage(path, logger);
+        restored.restore();
+        for (int i = 0; i < keys; i++) {
+            if (i % 3 == 0)
+                assertNull(restored.get("key" + i));
+            else if (i % 3 == 1)
+                assertEquals("new" + i, restored.get("key" + i));
+            else
+                assertEquals("value" + i, restored.get("key" + i));
+        }
+        ArrayList<Pair<String, Pair<String, String>>> all = restored.getAll();
+        assertEquals(keys - keys / 3, all.size());
+        restored.clear();
+        restored.close();
+    }
+
+    @Test
+    void corruptedManifestKeepsTheRuns() throws InvalidPasswordException, IOException {
+        LSMStorage lsm = new LSMStorage(path, logger);
+        for (int i = 0; i < 2 * Constants.MAX_FILE_SIZE; i++)
+            lsm.put("key" + i, "value" + i);
+        lsm.close();
+        Path manifest = path.resolve("LSM_MANIFEST");
+        Files.write(manifest, "broken line\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        File[] runs = new File(path.toAbsolutePath().toString() + "/").listFiles((dir, name) -> name.endsWith(".run"));
+        assertTrue(runs.length > 0);
+
+        LSMStorage broken = new LSMStorage(path, logger);
+        assertThrows(IllegalStateException.class, broken::restore);
+        broken.close();
+        for (File run : runs)
+            assertTrue(run.exists());
+
+        List<String> lines = Files.readAllLines(manifest, StandardCharsets.UTF_8);
+        Files.write(manifest, lines.subList(0, lines.size() - 1), StandardCharsets.UTF_8);
+        LSMStorage restored = new LSMStorage(path, logger);
+        restored.restore();
+        assertEquals("value0", restored.get("key0"));
+        restored.clear();
+        restored.close();
+    }
+
+    @AfterAll
+    static void afterAll() {
+        File[] files = new File(path.toAbsolutePath().toString() + "/").listFiles();
+        for (File file : files) {
+            file.delete();
+        }
+    }
+}
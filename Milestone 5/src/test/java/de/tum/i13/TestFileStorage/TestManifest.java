@@ -0,0 +1,97 @@
+package de.tum.i13.TestFileStorage;
+
+import de.tum.i13.server.FileStorage.FileStorage;
+import de.tum.i13.server.kv.KVStore;
+import de.tum.i13.shared.InvalidPasswordException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
+ */
+public class TestManifest {
+    private static Path path = Paths.get("data_manifest/");
+    public static Logger logger = Logger.getLogger(KVStore.class.getName());
+
+    @BeforeEach
+    void before() throws InvalidPasswordException {
+        if (!Files.exists(path)) {
+            File dir = new File(path.toString());
+            dir.mkdir();
+        }
+        FileStorage fs = new FileStorage(path, logger);
+        try {
+            for (int i = 0; i < 3000; i++)
+                assertEquals(0, fs.put("key" + i, "value" + i));
+            assertEquals("value7", fs.remove("key7").getFirst());
+        } finally {
+            fs.close();
+        }
+        assertTrue(new File(path.toFile(), "MANIFEST").exists());
+    }
+
+    @Test
+    void restoreFromManifest() throws FileNotFoundException {
+        FileStorage fs = new FileStorage(path, logger);
+        try {
+            fs.restore();
+            check(fs);
+        } finally {
+            fs.close();
+        }
+    }
+
+    @Test
+    void restoreWithCorruptedManifest() throws IOException {
+        Files.write(new File(path.toFile(), "MANIFEST").toPath(), "garbage".getBytes(), StandardOpenOption.APPEND);
+        FileStorage fs = new FileStorage(path, logger);
+        try {
+            fs.restore();
+            check(fs);
+        } finally {
+            fs.close();
+        }
+    }
+
+    @Test
+    void restoreWithoutManifest() throws FileNotFoundException {
+        new File(path.toFile(), "MANIFEST").delete();
+        FileStorage fs = new FileStorage(path, logger);
+        try {
+            fs.restore();
+            check(fs);
+        } finally {
+            fs.close();
+        }
+    }
+
+    private void check(FileStorage fs) {
+        for (int i = 0; i < 3000; i++) {
+            if (i == 7)
+                assertNull(fs.get("key" + i));
+            else
+                assertEquals("value" + i, fs.get("key" + i));
+        }
+        assertEquals(2999, fs.getAll().size());
+    }
+
+    @AfterEach
+    void afterEach() {
+        File[] files = new File(path.toAbsolutePath().toString() + "/").listFiles();
+        for (File file : files) {
+            file.delete();
+        }
+    }
+}
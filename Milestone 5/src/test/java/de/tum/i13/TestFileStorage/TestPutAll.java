@@ -0,0 +1,98 @@
+package de.tum.i13.TestFileStorage;
+
+import de.tum.i13.server.FileStorage.FileStorage;
+import de.tum.i13.server.FileStorage.FileStorageInterface;
+import de.tum.i13.server.FileStorage.LSMStorage;
+import de.tum.i13.server.kv.KVStore;
+import de.tum.i13.shared.Constants;
+import de.tum.i13.shared.InvalidPasswordException;
+import de.tum.i13.shared.Pair;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
+ */
+public class TestPutAll {
+    private static Path path = Paths.get("data_putall/");
+    public static Logger logger = Logger.getLogger(KVStore.class.getName());
+    private static final int KEYS = 5 * Constants.MAX_FILE_SIZE;
+
+    @BeforeAll
+    static void before() {
+        if (!Files.exists(path)) {
+            File dir = new File(path.toString());
+            dir.mkdir();
+        }
+    }
+
+    @Test
+    void fileStoragePutAll() throws InvalidPasswordException, FileNotFoundException {
+        FileStorage fs = new FileStorage(path, logger);
+        try {
+            putAll(fs);
+        } finally {
+            fs.close();
+        }
+
+        // The pairs must be split over several files
+        File[] segments = path.toFile().listFiles((dir, name) -> name.endsWith(".seg"));
+        assertTrue(segments.length >= KEYS / Constants.MAX_FILE_SIZE);
+
+        fs = new FileStorage(path, logger);
+        try {
+            fs.restore();
+            check(fs);
+            fs.clear();
+        } finally {
+            fs.close();
+        }
+    }
+
+    @Test
+    void lsmStoragePutAll() throws InvalidPasswordException {
+        LSMStorage lsm = new LSMStorage(path, logger);
+        putAll(lsm);
+        lsm.clear();
+        lsm.close();
+    }
+
+    private void putAll(FileStorageInterface storage) throws InvalidPasswordException {
+        // Some keys are already stored, putAll updates them without checking the password
+        for (int i = 0; i < KEYS; i += 10)
+            storage.put("key" + i, "old" + i, "password");
+
+        ArrayList<Pair<String, Pair<String, String>>> pairs = new ArrayList<>();
+        for (int i = 0; i < KEYS; i++)
+            pairs.add(new Pair<>("key" + i, new Pair<>("value" + i, null)));
+        storage.putAll(pairs.subList(0, KEYS / 2));
+        storage.putAll(pairs.subList(KEYS / 2, KEYS));
+        check(storage);
+    }
+
+    private void check(FileStorageInterface storage) {
+        for (int i = 0; i < KEYS; i++)
+            assertEquals("value" + i, storage.get("key" + i));
+        assertEquals(KEYS, storage.getAll().size());
+    }
+
+    @AfterEach
+    void afterEach() {
+        File[] files = new File(path.toAbsolutePath().toString() + "/").listFiles();
+        for (File file : files) {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package de.tum.i13.TestFileStorage;
+
+import de.tum.i13.server.FileStorage.FileStorage;
+import de.tum.i13.server.FileStorage.FileStorageInterface;
+import de.tum.i13.server.FileStorage.LSMStorage;
+import de.tum.i13.server.FileStorage.StorageCursor;
+import de.tum.i13.server.kv.KVStore;
+import de.tum.i13.shared.Constants;
+import de.tum.i13.shared.InvalidPasswordException;
+import de.tum.i13.shared.Pair;
+import de.tum.i13.shared.Token;
+import de.tum.i13.shared.Utility;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
+ */
+public class TestRange {
+    private static Path path = Paths.get("data_range/");
+    public static Logger logger = Logger.getLogger(KVStore.class.getName());
+    private static final int KEYS = 3 * Constants.MAX_FILE_SIZE;
+    private static final String START = "40000000000000000000000000000000";
+    private static final String END = "c0000000000000000000000000000000";
+
+    @BeforeAll
+    static void before() {
+        if (!Files.exists(path)) {
+            File dir = new File(path.toString());
+            dir.mkdir();
+        }
+    }
+
+    @Test
+    void fileStorageRange() throws InvalidPasswordException {
+        FileStorage fs = new FileStorage(path, logger);
+        try {
+            checkRanges(fs);
+            fs.clear();
+        } finally {
+            fs.close();
+        }
+    }
+
+    @Test
+    void lsmStorageRange() throws InvalidPasswordException {
+        LSMStorage lsm = new LSMStorage(path, logger);
+        checkRanges(lsm);
+        lsm.clear();
+        lsm.close();
+    }
+
+    private void checkRanges(FileStorageInterface storage) throws InvalidPasswordException {
+        for (int i = 0; i < KEYS; i++)
+            storage.put("key" + i, "value" + i);
+        for (int i = 0; i < KEYS; i += 5)
+            storage.remove("key" + i);
+
+        checkRange(storage, START, END);
+        // The range wraps around the end of the ring
+        checkRange(storage, END, START);
+        checkRange(storage, Constants.HEX_START_INDEX, Constants.HEX_END_INDEX);
+
+        Pair<ArrayList<Pair<String, Pair<String, String>>>, ArrayList<Pair<String, Pair<String, String>>>> replicas =
+                storage.getReplicas(new Pair<>(START, END), new Pair<>(END, START));
+        assertEquals(expected(START, END), keys(replicas.getFirst()));
+        assertEquals(expected(END, START), keys(replicas.getSecond()));
+
+        checkCursor(storage, START, END);
+        checkCursor(storage, END, START);
+        checkCursor(storage, Constants.HEX_START_INDEX, Constants.HEX_END_INDEX);
+    }
+
+    private void checkCursor(FileStorageInterface storage, String start, String end) {
+        HashSet<String> keys = new HashSet<>();
+        int count = 0;
+        try (StorageCursor cursor = storage.cursor(Token.fromHex(start), Token.fromHex(end))) {
+            while (cursor.hasNext()) {
+                keys.add(cursor.next().getFirst());
+                count++;
+            }
+        }
+        assertEquals(count, keys.size());
+        assertEquals(expected(start, end), keys);
+    }
+
+    private void checkRange(FileStorageInterface storage, String start, String end) {
+        ArrayList<Pair<String, Pair<String, String>>> range = storage.getRange(end, start);
+        assertEquals(range.size(), keys(range).size());
+        assertEquals(expected(start, end), keys(range));
+        for (Pair<String, Pair<String, String>> p : range)
+            assertTrue(p.getSecond().getFirst().equals("value" + p.getFirst().substring(3)));
+    }
+
+    private HashSet<String> expected(String start, String end) {
+        HashSet<String> expected = new HashSet<>();
+        for (int i = 0; i < KEYS; i++) {
+            if (i % 5 != 0 && Utility.isInRange(Utility.computeHash("key" + i), start, end))
+                expected.add("key" + i);
+        }
+        return expected;
+    }
+
+    private HashSet<String> keys(ArrayList<Pair<String, Pair<String, String>>> range) {
+        HashSet<String> keys = new HashSet<>();
+        range.forEach(p -> keys.add(p.getFirst()));
+        return keys;
+    }
+
+    @AfterEach
+    void afterEach() {
+        File[] files = new File(path.toAbsolutePath().toString() + "/").listFiles();
+        for (File file : files) {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package de.tum.i13.TestFileStorage;
+
+import de.tum.i13.server.FileStorage.IndexEntry;
+import de.tum.i13.server.FileStorage.Segment;
+import de.tum.i13.shared.Constants;
+import de.tum.i13.shared.Pair;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
+ */
+public class TestSegment {
+    private static Path path = Paths.get("data/");
+
+    @BeforeAll
+    static void before() {
+        if (!Files.exists(path)) {
+            File dir = new File(path.toString());
+            dir.mkdir();
+        }
+    }
+
+    @Test
+    void appendAndRead() throws IOException {
+        Segment segment = new Segment(path.toAbsolutePath().toString() + "/appendAndRead.seg");
+        segment.appendPut("hello", new Pair<>("world", null));
+        segment.appendPut("key", new Pair<>("value", "password"));
+        segment.appendPut("hello", new Pair<>("mondo", null));
+        segment.appendDelete("key");
+
+        HashMap<String, Pair<String, String>> hMap = segment.read();
+        assertEquals(1, hMap.size());
+        assertEquals("mondo", hMap.get("hello").getFirst());
+        assertNull(hMap.get("key"));
+        assertEquals(4, segment.getRecords());
+    }
+
+    @Test
+    void rewrite() throws IOException {
+        Segment segment = new Segment(path.toAbsolutePath().toString() + "/rewrite.seg");
+        segment.appendPut("hello", new Pair<>("world", null));
+        segment.appendPut("hello", new Pair<>("mondo", null));
+        segment.appendPut("key", new Pair<>(null, "password"));
+
+        segment.rewrite(segment.read());
+        assertEquals(2, segment.getRecords());
+
+        HashMap<String, Pair<String, String>> hMap = new Segment(segment.getFileName()).read();
+        assertEquals("mondo", hMap.get("hello").getFirst());
+        assertNull(hMap.get("key").getFirst());
+        assertEquals("password", hMap.get("key").getSecond());
+    }
+
+    @Test
+    void incompleteRecord() throws IOException {
+        String fileName = path.toAbsolutePath().toString() + "/incomplete.seg";
+        Segment segment = new Segment(fileName);
+        segment.appendPut("hello", new Pair<>("world", null));
+        long length = new File(fileName).length();
+        try (FileOutputStream fos = new FileOutputStream(fileName, true)) {
+            fos.write(new byte[]{0, 0, 0, 100, 1, 2});
+        }
+
+        segment.close();
+
+        segment = new Segment(fileName);
+        assertEquals(1, segment.read().size());
+        assertEquals(1, segment.readIndex().size());
+        assertEquals(length, new File(fileName).length());
+        segment.appendPut("ciao", new Pair<>("mondo", null));
+        assertEquals("mondo", segment.read().get("ciao").getFirst());
+    }
+
+    @Test
+    void readValue() throws IOException {
+        String fileName = path.toAbsolutePath().toString() + "/readValue.seg";
+        Segment segment = new Segment(fileName);
+        IndexEntry first = segment.appendPut("hello", new Pair<>("world", null));
+        IndexEntry second = segment.appendPut("key", new Pair<>("value", "password"));
+        segment.appendPut("hello", new Pair<>("mondo", null));
+        segment.appendDelete("key");
+
+        assertEquals("world", segment.readValue(first).getFirst());
+        assertEquals("password", segment.readValue(second).getSecond());
+
+        HashMap<String, IndexEntry> index = new Segment(fileName).readIndex();
+        assertEquals(1, index.size());
+        assertEquals("mondo", segment.readValue(index.get("hello")).getFirst());
+
+        index = segment.rewrite(segment.read());
+        assertEquals("mondo", segment.readValue(index.get("hello")).getFirst());
+    }
+
+    @Test
+    void readAfterAppend() throws IOException {
+        String fileName = path.toAbsolutePath().toString() + "/readAfterAppend.seg";
+        Segment segment = new Segment(fileName);
+        ArrayList<IndexEntry> entries = new ArrayList<>();
+        // The next record is appended after the end of the mapping, we read it without mapping the file again
+        // until the file is twice as big as the mapping
+        for (int i = 0; i < 100; i++) {
+            entries.add(segment.appendPut("key" + i, new Pair<>("value" + i, i % 2 == 0 ? "password" : null)));
+            assertEquals("value" + i, segment.readValue(entries.get(i)).getFirst());
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals("value" + i, segment.readValue(entries.get(i)).getFirst());
+            assertEquals(i % 2 == 0 ? "password" : null, segment.readValue(entries.get(i)).getSecond());
+        }
+
+        // The rewrite drops the mapping of the old file
+        HashMap<String, IndexEntry> index = segment.rewrite(segment.read());
+        for (int i = 0; i < 100; i++)
+            assertEquals("value" + i, segment.readValue(index.get("key" + i)).getFirst());
+        segment.close();
+    }
+
+    @Test
+    void moreSegmentsThanOpenFiles() throws IOException {
+        // The least recently used segments are closed and opened again at their next access
+        int count = Constants.MAX_OPEN_SEGMENTS + 20;
+        ArrayList<Segment> segments = new ArrayList<>();
+        ArrayList<IndexEntry> entries = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Segment segment = new Segment(path.toAbsolutePath().toString() + "/open" + i + ".seg");
+            entries.add(segment.appendPut("key", new Pair<>("value" + i, null)));
+            assertEquals("value" + i, segment.readValue(entries.get(i)).getFirst());
+            segments.add(segment);
+        }
+        for (int i = 0; i < count; i++) {
+            assertEquals("value" + i, segments.get(i).readValue(entries.get(i)).getFirst());
+            segments.get(i).appendPut("key2", new Pair<>("value", null));
+            assertEquals(2, segments.get(i).readIndex().size());
+        }
+        segments.forEach(Segment::close);
+    }
+
+    @AfterAll
+    static void afterAll() {
+        File[] files = new File(path.toAbsolutePath().toString() + "/").listFiles();
+        for (File file : files) {
+            file.delete();
+        }
+    }
+}
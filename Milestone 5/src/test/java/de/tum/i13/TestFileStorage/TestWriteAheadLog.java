@@ -0,0 +1,124 @@
+package de.tum.i13.TestFileStorage;
+
+import de.tum.i13.server.FileStorage.FileStorage;
+import de.tum.i13.server.FileStorage.WriteAheadLog;
+import de.tum.i13.server.kv.KVStore;
+import de.tum.i13.shared.Constants;
+import de.tum.i13.shared.InvalidPasswordException;
+import de.tum.i13.shared.Pair;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
+ */
+public class TestWriteAheadLog {
+    private static Path path = Paths.get("data_wal/");
+    public static Logger logger = Logger.getLogger(KVStore.class.getName());
+
+    @BeforeAll
+    static void before() {
+        if (!Files.exists(path)) {
+            File dir = new File(path.toString());
+            dir.mkdir();
+        }
+    }
+
+    @Test
+    void groupCommit() throws IOException, InterruptedException {
+        WriteAheadLog wal = new WriteAheadLog(path.toAbsolutePath().toString() + "/group.log", Constants.FSYNC_SYNC, 0);
+        ArrayList<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            int id = t;
+            threads.add(new Thread(() -> {
+                try {
+                    for (int i = 0; i < 50; i++)
+                        wal.sync(wal.appendPut("key" + id + "_" + i, new Pair<>("value", null)));
+                } catch (IOException e) {
+                    fail();
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread t : threads)
+            t.join();
+
+        HashMap<String, Pair<String, String>> replayed = new HashMap<>();
+        wal.replay(replayed::put);
+        assertEquals(400, replayed.size());
+
+        long position = wal.appendDelete("key0_0");
+        wal.truncate();
+        // A position written before the truncate is already on disk
+        wal.sync(position);
+        replayed.clear();
+        wal.replay(replayed::put);
+        assertEquals(0, replayed.size());
+        wal.close();
+    }
+
+    @Test
+    void replayAfterCrash() throws InvalidPasswordException {
+        FileStorage fs = new FileStorage(path, logger, Constants.FSYNC_SYNC, 0);
+        try {
+            assertEquals(0, fs.put("hello", "world", "pwd"));
+            assertEquals(1, fs.put("hello", "mondo", "pwd"));
+            assertEquals(0, fs.put("ciao", "mondo"));
+            assertEquals("mondo", fs.remove("ciao").getFirst());
+            // We don't close fs before the restore, the new FileStorage finds the writes in the log
+
+            FileStorage restored = new FileStorage(path, logger, Constants.FSYNC_SYNC, 0);
+            try {
+                assertDoesNotThrow(restored::restore);
+                assertEquals("mondo", restored.get("hello", "pwd"));
+                assertNull(restored.get("ciao"));
+                assertThrows(InvalidPasswordException.class, () -> restored.put("hello", "x"));
+            } finally {
+                restored.close();
+            }
+        } finally {
+            // Stops the compactor of the crashed FileStorage
+            fs.close();
+        }
+    }
+
+    @Test
+    void missingKeysAreNotLogged() throws InvalidPasswordException, IOException {
+        FileStorage fs = new FileStorage(path, logger, Constants.FSYNC_SYNC, 0);
+        try {
+            assertEquals(0, fs.put("present", "value"));
+            Path log = path.resolve("wal.log");
+            long size = Files.size(log);
+            assertEquals("value", fs.remove("present").getFirst());
+            assertTrue(Files.size(log) > size);
+            // The key is gone, removing it again must not write a delete record
+            size = Files.size(log);
+            assertNull(fs.remove("present").getFirst());
+            fs.checkAndDelete("present");
+            assertEquals(size, Files.size(log));
+            fs.clear();
+        } finally {
+            fs.close();
+        }
+    }
+
+    @AfterAll
+    static void afterAll() {
+        File[] files = new File(path.toAbsolutePath().toString() + "/").listFiles();
+        for (File file : files) {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package de.tum.i13;
+
+import de.tum.i13.shared.Constants;
+import de.tum.i13.shared.Token;
+import de.tum.i13.shared.Utility;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @authors Yacouba Cisse, Luca Corbucci, Fabian Danisch
+ */
+public class TestToken {
+
+    @Test
+    public void hexRoundTrip() {
+        String hash = "81672900c085fd542d0e316e795528b1";
+        assertEquals(hash, Token.fromHex(hash).toHex());
+        assertEquals(hash, Token.fromHex(hash.toUpperCase()).toHex());
+        assertEquals(Token.MAX, Token.fromHex(Constants.HEX_END_INDEX));
+        assertEquals(Token.MIN, Token.fromHex(Constants.HEX_START_INDEX));
+        assertEquals(Token.fromHex("00ff"), Token.fromHex("ff"));
+        assertThrows(NumberFormatException.class, () -> Token.fromHex("1" + Constants.HEX_START_INDEX));
+        assertThrows(NumberFormatException.class, () -> Token.fromHex("xyz"));
+    }
+
+    @Test
+    public void sameHashOfUtility() {
+        assertEquals("76633d5b16aa62326cb8954aa69255af", Token.of("127.0.0.1", 9000).toHex());
+        assertEquals(Utility.computeHash("key"), Token.of("key").toHex());
+    }
+
+    @Test
+    public void compareAsUnsigned() {
+        String[] hashes = {Constants.HEX_START_INDEX, "7fffffffffffffffffffffffffffffff", "80000000000000000000000000000000",
+                "81672900c085fd542d0e316e795528b1", "8167290000000000ffffffffffffffff", Constants.HEX_END_INDEX};
+        for (String a : hashes) {
+            for (String b : hashes) {
+                int expected = new BigInteger(a, 16).compareTo(new BigInteger(b, 16));
+                assertEquals(expected, Integer.signum(Token.fromHex(a).compareTo(Token.fromHex(b))));
+            }
+        }
+    }
+
+    @Test
+    public void next() {
+        assertEquals(Token.fromHex("76633d5b16aa62326cb8954aa69255b0"), Token.fromHex("76633d5b16aa62326cb8954aa69255af").next());
+        assertEquals(Token.fromHex("10000000000000000"), Token.fromHex("ffffffffffffffff").next());
+        assertEquals(Token.MIN, Token.MAX.next());
+    }
+
+    @Test
+    public void isInRange() {
+        Token start = Token.fromHex("80000000000000000000000000000000");
+        Token end = Token.fromHex("90000000000000000000000000000000");
+        assertTrue(start.isInRange(start, end));
+        assertTrue(end.isInRange(start, end));
+        assertFalse(Token.MIN.isInRange(start, end));
+
+        // The range wraps around the end of the ring
+        assertTrue(Token.MIN.isInRange(end, start));
+        assertTrue(Token.MAX.isInRange(end, start));
+        assertFalse(Token.fromHex("85000000000000000000000000000000").isInRange(end, start));
+    }
+}